@@ -0,0 +1,96 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Construction des vues de groupes servies par l'API, sur des arbres profonds :
+ * hiérarchie (mapGroupWithChildren), liste à plat (collectGroupsRecursive), entrées du dropdown,
+ * index par label, lecture d'attributs et lignes "membres d'un groupe".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class GroupTreeBenchmark {
+
+    /** depth=4, fanOut=6 : 1 554 groupes ; depth=6, fanOut=6 : 55 986 groupes. */
+    @Param({"2", "4", "6"})
+    public int depth;
+
+    @Param({"6"})
+    public int fanOut;
+
+    @Param({"1000"})
+    public int membersPerGroup;
+
+    private List<GroupRepresentation> roots;
+    private GroupTreeCache.Snapshot snapshot;
+    private List<String> labels;
+    private List<GroupRepresentation> allGroups;
+    private List<UserRepresentation> members;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        roots = SyntheticRealm.groupTree(depth, fanOut);
+        snapshot = GroupTreeCache.Snapshot.build(roots, Instant.now());
+        labels = snapshot.flat().stream()
+                .map(g -> (String) g.get("code"))
+                .limit(1000)
+                .toList();
+        allGroups = new ArrayList<>();
+        Deque<GroupRepresentation> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            GroupRepresentation group = pending.pop();
+            allGroups.add(group);
+            group.getSubGroups().forEach(pending::push);
+        }
+        members = SyntheticRealm.generate(membersPerGroup, 1, 1, 7).users;
+    }
+
+    /** Snapshot complet : hiérarchie, liste à plat, dropdown et index, comme à chaque rechargement. */
+    @Benchmark
+    public GroupTreeCache.Snapshot buildSnapshot() {
+        return GroupTreeCache.Snapshot.build(roots, Instant.now());
+    }
+
+    @Benchmark
+    public GroupIndex buildIndex() {
+        return new GroupIndex(roots);
+    }
+
+    @Benchmark
+    public void findByLabel(Blackhole bh) {
+        GroupIndex index = snapshot.index();
+        for (String label : labels) {
+            bh.consume(index.findByLabel(label));
+        }
+    }
+
+    @Benchmark
+    public void getAttributeValue(Blackhole bh) {
+        for (GroupRepresentation group : allGroups) {
+            bh.consume(KeycloakService.getAttributeValue(group, "code", ""));
+            bh.consume(KeycloakService.getAttributeValue(group, "absent", ""));
+        }
+    }
+
+    /** Lignes renvoyées par GET /api/groupes/{id}/utilisateurs. */
+    @Benchmark
+    public List<Map<String, Object>> groupMemberRows() {
+        return KeycloakService.toGroupMemberRows(members);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.*;
+
+/**
+ * Realm généré pour les benchmarks : arbre de groupes régionaux (attributs type / code / nom)
+ * et utilisateurs aux noms accentués, répartis sur les feuilles. Déterministe pour une même graine.
+ */
+final class SyntheticRealm {
+
+    private static final String[] FIRST_NAMES = {
+            "Hélène", "Youssef", "Kholoud", "Amine", "Zoé", "François", "Inès", "Mehdi", "Léa", "Noël",
+            "Salma", "Jérôme", "Aïcha", "Karim", "Chloé", "Omar"
+    };
+    private static final String[] LAST_NAMES = {
+            "Benali", "El Amrani", "Allam", "Lefèvre", "Ouazzani", "Boucher", "Tazi", "Müller", "Haddad",
+            "Gaëtan", "Naciri", "Dupré", "Chraïbi", "Benoît"
+    };
+
+    final List<GroupRepresentation> roots;
+    final List<GroupRepresentation> leaves = new ArrayList<>();
+    final List<UserRepresentation> users;
+    final Map<String, List<GroupRepresentation>> groupsByUser;
+
+    private SyntheticRealm(List<GroupRepresentation> roots, List<UserRepresentation> users,
+                           Map<String, List<GroupRepresentation>> groupsByUser) {
+        this.roots = roots;
+        this.users = users;
+        this.groupsByUser = groupsByUser;
+    }
+
+    /** Arbre de {@code fanOut}^1 + ... + {@code fanOut}^depth groupes, sans utilisateurs. */
+    static List<GroupRepresentation> groupTree(int depth, int fanOut) {
+        List<GroupRepresentation> roots = new ArrayList<>();
+        for (int i = 0; i < fanOut; i++) {
+            roots.add(group("r" + i, 1, depth, fanOut));
+        }
+        return roots;
+    }
+
+    static SyntheticRealm generate(int userCount, int depth, int fanOut, long seed) {
+        List<GroupRepresentation> roots = groupTree(depth, fanOut);
+        Random random = new Random(seed);
+        List<UserRepresentation> users = new ArrayList<>(userCount);
+        Map<String, List<GroupRepresentation>> groupsByUser = new HashMap<>(userCount * 2);
+
+        SyntheticRealm realm = new SyntheticRealm(roots, users, groupsByUser);
+        roots.forEach(realm::collectLeaves);
+
+        for (int i = 0; i < userCount; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            UserRepresentation user = new UserRepresentation();
+            user.setId(UUID.nameUUIDFromBytes(("u" + i).getBytes()).toString());
+            user.setUsername((first.charAt(0) + last.replace(" ", "")).toLowerCase(Locale.ROOT) + i);
+            user.setEmail(user.getUsername() + "@example.com");
+            user.setFirstName(first);
+            user.setLastName(last);
+            user.setEnabled(true);
+            user.setAttributes(Map.of("phoneNumber", List.of("06" + (10_000_000 + i))));
+            users.add(user);
+
+            GroupRepresentation leaf = realm.leaves.get(random.nextInt(realm.leaves.size()));
+            groupsByUser.put(user.getId(), List.of(leaf));
+        }
+        return realm;
+    }
+
+    private void collectLeaves(GroupRepresentation group) {
+        if (group.getSubGroups() == null || group.getSubGroups().isEmpty()) {
+            leaves.add(group);
+        } else {
+            group.getSubGroups().forEach(this::collectLeaves);
+        }
+    }
+
+    private static GroupRepresentation group(String path, int level, int depth, int fanOut) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(UUID.nameUUIDFromBytes(path.getBytes()).toString());
+        group.setName("Région " + path.toUpperCase(Locale.ROOT));
+        group.setPath("/" + path.replace('.', '/'));
+        Map<String, List<String>> attributes = new HashMap<>();
+        attributes.put("type", List.of(level == depth ? "region" : "zone"));
+        attributes.put("code", List.of(path.replace(".", "")));
+        attributes.put("nom", List.of("Région " + path));
+        group.setAttributes(attributes);
+
+        List<GroupRepresentation> children = new ArrayList<>();
+        if (level < depth) {
+            for (int i = 0; i < fanOut; i++) {
+                children.add(group(path + "." + i, level + 1, depth, fanOut));
+            }
+        }
+        group.setSubGroups(children);
+        return group;
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chaîne de filtres de la recherche d'utilisateurs ({@code GET /api/utilisateurs}) :
+ * normalisation des textes, filtre texte puis filtre région sur tout le realm,
+ * comparée à la réduction par l'index de trigrammes de l'annuaire (mêmes critères nom + région).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class UserSearchBenchmark {
+
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+
+    @Param({"hélène", "el amr", "zz-absent"})
+    public String nom;
+
+    private SyntheticRealm realm;
+    private UserDirectory directory;
+    private UserSearchCriteria byNameAndRegion;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        realm = SyntheticRealm.generate(users, 3, 4, 42);
+        directory = new UserDirectory(null);
+        ReflectionTestUtils.setField(directory, "enabled", true);
+        directory.load(realm.users, realm.groupsByUser);
+
+        String region = realm.leaves.get(0).getName();
+        byNameAndRegion = new UserSearchCriteria(nom, null, null, region);
+    }
+
+    /** Parcours complet : ce que faisait la recherche avant l'annuaire, sur chaque utilisateur. */
+    @Benchmark
+    public int filterChainFullScan() {
+        int matches = 0;
+        for (UserRepresentation user : realm.users) {
+            if (!byNameAndRegion.matchesText(user)) continue;
+            List<GroupRepresentation> groups = realm.groupsByUser.getOrDefault(user.getId(), List.of());
+            if (byNameAndRegion.matchesRegion(groups)) matches++;
+        }
+        return matches;
+    }
+
+    /** Candidats réduits par l'index de trigrammes, puis mêmes filtres exacts (texte, région). */
+    @Benchmark
+    public int filterChainWithDirectory() {
+        int matches = 0;
+        for (UserRepresentation user : directory.findCandidates(byNameAndRegion)) {
+            if (!byNameAndRegion.matchesText(user)) continue;
+            if (byNameAndRegion.matchesRegion(directory.getGroupsOf(user.getId()))) matches++;
+        }
+        return matches;
+    }
+
+    /** Coût seul de la normalisation (UserSearchCriteria.norm) des champs comparés. */
+    @Benchmark
+    public void normalizeAllNames(Blackhole bh) {
+        for (UserRepresentation user : realm.users) {
+            bh.consume(UserSearchCriteria.norm(user.getFirstName()));
+            bh.consume(UserSearchCriteria.norm(user.getLastName()));
+        }
+    }
+
+    @Benchmark
+    public List<UserRepresentation> suggest() {
+        return directory.suggest(nom, 10);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.gestionutilisateur.Entities;
+
+import com.example.gestionutilisateur.Enums.StatutOperation;
+import com.example.gestionutilisateur.Enums.TypeOperation;
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Écriture Keycloak en attente (mode d'écriture asynchrone). Les écritures successives du même type sur une
+ * cible sont fusionnées dans sa dernière ligne tant qu'elle n'est pas prise en charge.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "keycloak_outbox", indexes = {
+        @Index(name = "idx_outbox_statut", columnList = "statut, prochain_essai"),
+        @Index(name = "idx_outbox_cible", columnList = "cible_id, type")
+})
+public class OperationKeycloak {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Verrou optimiste : une fusion et une prise en charge simultanées ne s'écrasent pas
+    @Version
+    private Long version;
+
+    @Enumerated(EnumType.STRING)
+    private TypeOperation type;
+
+    // keycloakId de l'utilisateur ou id du groupe
+    @Column(name = "cible_id")
+    private String cibleId;
+
+    // Champs à écrire (JSON), fusionnés à chaque nouvelle demande sur la même cible
+    @Lob
+    private String contenu;
+
+    @Enumerated(EnumType.STRING)
+    private StatutOperation statut;
+
+    private int tentatives;
+
+    // Nombre de demandes fusionnées dans cette opération
+    private int fusions;
+
+    @Column(name = "prochain_essai")
+    private Instant prochainEssai;
+    private Instant creeLe;
+    private Instant majLe;
+
+    @Column(length = 1000)
+    private String derniereErreur;
+}
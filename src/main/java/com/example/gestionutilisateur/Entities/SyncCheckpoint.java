@@ -0,0 +1,24 @@
+package com.example.gestionutilisateur.Entities;
+
+import jakarta.persistence.*;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+/**
+ * Point de reprise de la synchronisation incrémentale Keycloak → base locale.
+ */
+@Entity
+@Getter
+@Setter
+@Table(name = "sync_checkpoint")
+public class SyncCheckpoint {
+    @Id
+    private String name;
+
+    // Horodatage (ms) du dernier événement Keycloak appliqué
+    private Long lastEventTime;
+
+    private Instant updatedAt;
+}
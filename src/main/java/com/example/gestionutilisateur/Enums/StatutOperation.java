@@ -0,0 +1,8 @@
+package com.example.gestionutilisateur.Enums;
+
+public enum StatutOperation {
+    EN_ATTENTE,
+    EN_COURS,
+    APPLIQUEE,
+    ECHEC
+}
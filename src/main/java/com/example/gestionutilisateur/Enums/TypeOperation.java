@@ -0,0 +1,7 @@
+package com.example.gestionutilisateur.Enums;
+
+public enum TypeOperation {
+    MISE_A_JOUR_UTILISATEUR,
+    AFFECTATION_REGION,
+    MISE_A_JOUR_GROUPE
+}
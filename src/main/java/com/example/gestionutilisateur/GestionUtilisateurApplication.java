@@ -3,6 +3,7 @@ package com.example.gestionutilisateur;
 // import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 // import org.springframework.context.annotation.Bean;
 
 // import com.example.gestionutilisateur.Repository.UtilisateurRepository;
@@ -19,6 +20,7 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 // import java.util.List;
 
 @SpringBootApplication
+@EnableScheduling
 public class GestionUtilisateurApplication {
 
     public static void main(String[] args) {
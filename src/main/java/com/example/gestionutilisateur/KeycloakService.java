@@ -4,25 +4,49 @@ import com.example.gestionutilisateur.Entities.Groupe;
 import com.example.gestionutilisateur.Entities.Utilisateur;
 import com.example.gestionutilisateur.Repository.GroupeRepository;
 import com.example.gestionutilisateur.Repository.UtilisateurRepository;
+import com.example.gestionutilisateur.Service.AdminTokenManager;
+import com.example.gestionutilisateur.Service.GroupMembershipResolver;
+import com.example.gestionutilisateur.Service.GroupTreeCache;
+import com.example.gestionutilisateur.Service.KeycloakCallRecorder;
+import com.example.gestionutilisateur.Service.KeycloakHttpTransport;
+import com.example.gestionutilisateur.Service.KeycloakUnavailableException;
+import com.example.gestionutilisateur.Service.RemoteCallTrace;
+import com.example.gestionutilisateur.Service.SingleFlight;
+import com.example.gestionutilisateur.Service.UserWithGroups;
 import jakarta.annotation.PostConstruct;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.NotFoundException;
 import jakarta.ws.rs.core.Response;
-import org.keycloak.OAuth2Constants;
 import org.keycloak.admin.client.CreatedResponseUtil;
 import org.keycloak.admin.client.Keycloak;
 import org.keycloak.admin.client.KeycloakBuilder;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.AdminEventRepresentation;
 import org.keycloak.representations.idm.CredentialRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.keycloak.representations.idm.UserRepresentation;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
 public class KeycloakService {
 
-    private Keycloak keycloak;
+    // Client d'administration lié au jeton admin courant, reconstruit quand le jeton change
+    private volatile AdminClient adminClient;
+
+    private record AdminClient(String token, Keycloak keycloak) {
+    }
+
+    private Client adminHttpClient;
 
     @Value("${keycloak.auth-server-url}")
     private String serverUrl;
@@ -36,18 +60,48 @@ public class KeycloakService {
     @Value("${keycloak.admin.client-id}")
     private String adminClientId;
 
-    @Value("${keycloak.admin.username}")
-    private String adminUsername;
+    @Value("${keycloak.members.page-size:500}")
+    private int membersPageSize;
 
-    @Value("${keycloak.admin.password}")
-    private String adminPassword;
+    @Value("${keycloak.users.page-size:500}")
+    private int usersPageSize;
 
     private final UtilisateurRepository utilisateurRepository;
     private final GroupeRepository groupeRepository;
 
-    public KeycloakService(UtilisateurRepository utilisateurRepository, GroupeRepository groupeRepository) {
+    @Value("${keycloak.groups.cache-ttl-ms:60000}")
+    private long groupsCacheTtlMs;
+
+    private GroupTreeCache groupTreeCache;
+
+    // Appartenances de tout le realm pour les lectures directes (annuaire non prêt), vidées après chaque écriture
+    private volatile Memberships memberships;
+    private final AtomicLong membershipsVersion = new AtomicLong();
+
+    private record Memberships(Map<String, List<GroupRepresentation>> byUser, Instant loadedAt) {
+    }
+
+    // Tous les appels Keycloak passent par là (métriques keycloak.admin.calls)
+    private final KeycloakCallRecorder calls;
+
+    // Lectures identiques simultanées regroupées en un seul appel ; oubliées après chaque écriture
+    private final SingleFlight singleFlight;
+
+    // Pool de connexions et délais du client d'administration (keycloak.http.*)
+    private final KeycloakHttpTransport httpTransport;
+
+    // Jeton admin partagé, renouvelé en arrière-plan avant expiration
+    private final AdminTokenManager adminTokens;
+
+    public KeycloakService(UtilisateurRepository utilisateurRepository, GroupeRepository groupeRepository,
+                           KeycloakCallRecorder calls, SingleFlight singleFlight, KeycloakHttpTransport httpTransport,
+                           AdminTokenManager adminTokens) {
         this.utilisateurRepository = utilisateurRepository;
         this.groupeRepository = groupeRepository;
+        this.calls = calls;
+        this.singleFlight = singleFlight;
+        this.httpTransport = httpTransport;
+        this.adminTokens = adminTokens;
     }
 
     @PostConstruct
@@ -57,180 +111,529 @@ public class KeycloakService {
                 throw new IllegalStateException("❌ La propriété 'keycloak.realm' est manquante dans application.properties");
             }
 
-            this.keycloak = KeycloakBuilder.builder()
-                    .serverUrl(serverUrl)
-                    .realm(adminRealm)
-                    .clientId(adminClientId)
-                    .username(adminUsername)
-                    .password(adminPassword)
-                    .grantType(OAuth2Constants.PASSWORD)
-                    .build();
-
-            try {
-                syncUsersToLocalDatabase();
-            } catch (Exception e) {
-                System.out.println("⚠️ Sync Keycloak -> Local DB échouée au démarrage : " + e.getMessage());
-                e.printStackTrace();
-            }
+            this.adminHttpClient = httpTransport.newClient();
+            adminHttpClient.register(adminTokens.invalidateOnUnauthorized(), ClientResponseFilter.class);
+
+            this.groupTreeCache = new GroupTreeCache(this::loadGroupTree, Duration.ofMillis(groupsCacheTtlMs));
+
+            // La synchronisation initiale tourne en tâche de fond (FullSyncService) pour ne pas bloquer le démarrage
         } catch (Exception e) {
             System.out.println("❌ Erreur initialisation Keycloak client : " + e.getMessage());
             e.printStackTrace();
         }
     }
 
+    /**
+     * Realm cible, via un client portant le jeton admin courant : le jeton n'est jamais obtenu ni rafraîchi
+     * ici (voir {@link AdminTokenManager}), seul un changement de jeton recrée le client (sans appel réseau).
+     */
+    private RealmResource realm() {
+        String token = adminTokens.getAccessToken();
+        AdminClient current = adminClient;
+        if (current == null || !current.token().equals(token)) {
+            current = new AdminClient(token, KeycloakBuilder.builder()
+                    .serverUrl(serverUrl)
+                    .realm(adminRealm)
+                    .clientId(adminClientId)
+                    .authorization(token)
+                    .resteasyClient(adminHttpClient)
+                    .build());
+            adminClient = current;
+        }
+        return current.keycloak().realm(targetRealm);
+    }
+
+    /* ==================== ÉCRITURES ==================== */
+
+    // 🔹 Après une écriture, les lectures en vol (commencées avant) ne sont plus partagées
+    private <T> T write(String operation, Supplier<T> call) {
+        try {
+            return calls.call(operation, call);
+        } finally {
+            afterWrite();
+        }
+    }
+
+    private void write(String operation, Runnable call) {
+        try {
+            calls.run(operation, call);
+        } finally {
+            afterWrite();
+        }
+    }
+
+    private void afterWrite() {
+        singleFlight.forgetAll();
+        membershipsVersion.incrementAndGet();
+        memberships = null;
+    }
+
     /* ==================== GROUPES ==================== */
 
     public List<GroupRepresentation> getUserGroups(String userId) {
-        return Optional.ofNullable(keycloak.realm(targetRealm).users()
-                        .get(userId)
-                        .groups())
-                .orElse(Collections.emptyList());
+        return singleFlight.execute("users.groups", () -> Optional.ofNullable(calls.call("users.groups",
+                        () -> realm().users().get(userId).groups()))
+                .orElse(Collections.emptyList()), userId);
+    }
+
+    /** Groupes racines du realm, avec leurs sous-groupes (cache, voir {@link GroupTreeCache}). Lecture seule. */
+    public List<GroupRepresentation> getGroupTree() {
+        return groupTreeCache.get().roots();
+    }
+
+    /** Relit l'arbre des groupes dans Keycloak, sans passer par le cache. */
+    public List<GroupRepresentation> loadGroupTree() {
+        return singleFlight.execute("groups.tree", () -> Optional.ofNullable(
+                calls.call("groups.tree", () -> realm().groups().groups())
+        ).orElse(Collections.emptyList()));
+    }
+
+    public List<UserRepresentation> getGroupMembersPage(String groupId, int first, int max) {
+        return singleFlight.execute("groups.members", () -> Optional.ofNullable(
+                calls.call("groups.members", () -> realm().groups().group(groupId).members(first, max))
+        ).orElse(Collections.emptyList()), groupId, first, max);
+    }
+
+    /**
+     * Appartenances de tous les utilisateurs du realm, indexées par id utilisateur.
+     * Un seul parcours de l'arbre des groupes, membres lus par pages.
+     */
+    public Map<String, List<GroupRepresentation>> getAllUserGroups() {
+        return singleFlight.execute("users.groups.all", () -> {
+            // Synchronisation complète : arbre relu (et republié dans le cache) pour partir d'un état frais
+            List<GroupRepresentation> roots = groupTreeCache.reload().roots();
+            return new GroupMembershipResolver(membersPageSize, calls).resolve(realm(), roots);
+        });
+    }
+
+    /**
+     * Appartenances de tous les utilisateurs, relues au plus une fois par {@code keycloak.groups.cache-ttl-ms}
+     * (un parcours des membres de chaque groupe, quel que soit le nombre d'utilisateurs lus ensuite).
+     * Pour les lectures directes sur Keycloak : évite un appel users/{id}/groups par utilisateur. Lecture seule.
+     */
+    public Map<String, List<GroupRepresentation>> getCachedUserGroups() {
+        Memberships m = memberships;
+        if (m != null && m.loadedAt().plusMillis(groupsCacheTtlMs).isAfter(Instant.now())) {
+            RemoteCallTrace.servedFrom(m.loadedAt());
+            return m.byUser();
+        }
+        long version = membershipsVersion.get();
+        Memberships loaded = new Memberships(getAllUserGroups(), Instant.now());
+        // Une écriture pendant la lecture : résultat servi à l'appelant mais pas gardé
+        if (membershipsVersion.get() == version) memberships = loaded;
+        return loaded.byUser();
     }
 
     /* ==================== UTILISATEURS ==================== */
 
+    /** Tout le realm ; les téléchargements simultanés sont regroupés (résultat partagé, en lecture seule). */
     public List<UserRepresentation> getAllUsers() {
-        List<UserRepresentation> users = Optional.ofNullable(
-                keycloak.realm(targetRealm).users().list()
-        ).orElse(Collections.emptyList());
+        return singleFlight.execute("users.all", () -> getAllUsers(getAllUserGroups()));
+    }
+
+    public List<UserRepresentation> getAllUsers(Map<String, List<GroupRepresentation>> groupsByUser) {
+        // 🔹 users().list() sans bornes est plafonné côté Keycloak : on lit le realm page par page
+        List<UserRepresentation> users = new ArrayList<>();
+        int first = 0;
+        while (true) {
+            List<UserRepresentation> page = listUsersPage(first, usersPageSize);
+            users.addAll(page);
+            if (page.size() < usersPageSize) break;
+            first += usersPageSize;
+        }
 
         for (UserRepresentation user : users) {
-            List<GroupRepresentation> groups = getUserGroups(user.getId());
-            if (!groups.isEmpty()) {
-                Map<String, List<String>> attrs = user.getAttributes() != null ?
-                        new HashMap<>(user.getAttributes()) : new HashMap<>();
-                attrs.put("groups", groups.stream()
-                        .map(GroupRepresentation::getName)
-                        .collect(Collectors.toList()));
-                user.setAttributes(attrs);
-            }
+            applyGroupsAttribute(user, groupsByUser.getOrDefault(user.getId(), Collections.emptyList()));
         }
         return users;
     }
 
+    /**
+     * Une page d'utilisateurs, bornée côté Keycloak (sans l'attribut "groups").
+     */
+    public List<UserRepresentation> listUsersPage(int first, int max) {
+        return Optional.ofNullable(
+                calls.call("users.list", () -> realm().users().list(first, max))
+        ).orElse(Collections.emptyList());
+    }
+
+    /** Comme {@link #listUsersPage}, pages regroupées entre lecteurs simultanés (lecture seule). */
+    public List<UserRepresentation> listUsersPageShared(int first, int max) {
+        return singleFlight.execute("users.list", () -> listUsersPage(first, max), first, max);
+    }
+
+    /**
+     * Recherche côté Keycloak sur username et/ou email (correspondance partielle, insensible à la casse).
+     */
+    public List<UserRepresentation> searchUsers(String username, String email, int first, int max) {
+        return singleFlight.execute("users.search", () -> Optional.ofNullable(
+                calls.call("users.search", () -> realm().users().search(username, null, null, email, first, max))
+        ).orElse(Collections.emptyList()), username, email, first, max);
+    }
+
+    /**
+     * Recherche générale Keycloak (username, prénom, nom, email) ; accepte les jokers "*".
+     */
+    public List<UserRepresentation> searchUsers(String search, int first, int max) {
+        return singleFlight.execute("users.search", () -> Optional.ofNullable(
+                calls.call("users.search", () -> realm().users().search(search, first, max))
+        ).orElse(Collections.emptyList()), search, first, max);
+    }
+
+    /**
+     * Appartenances partagées si elles sont encore fraîches, sans appel à Keycloak ; {@code null} sinon.
+     */
+    public Map<String, List<GroupRepresentation>> peekCachedUserGroups() {
+        Memberships m = memberships;
+        if (m == null || !m.loadedAt().plusMillis(groupsCacheTtlMs).isAfter(Instant.now())) return null;
+        RemoteCallTrace.servedFrom(m.loadedAt());
+        return m.byUser();
+    }
+
+    /**
+     * Copie de {@code user} avec l'attribut "groups" : l'original, qui peut venir d'une lecture partagée
+     * (single-flight, lecture seule), n'est pas modifié.
+     */
+    public UserRepresentation withGroupsAttribute(UserRepresentation user, List<GroupRepresentation> groups) {
+        UserRepresentation copy = copyUser(user);
+        applyGroupsAttribute(copy, groups);
+        return copy;
+    }
+
+    /**
+     * Expose les noms de groupes dans l'attribut "groups", format attendu par le frontend.
+     */
+    public void applyGroupsAttribute(UserRepresentation user, List<GroupRepresentation> groups) {
+        if (groups == null || groups.isEmpty()) return;
+        Map<String, List<String>> attrs = user.getAttributes() != null ?
+                new HashMap<>(user.getAttributes()) : new HashMap<>();
+        attrs.put("groups", groups.stream()
+                .map(GroupRepresentation::getName)
+                .collect(Collectors.toList()));
+        user.setAttributes(attrs);
+    }
+
+    /**
+     * Lecture directe d'un seul utilisateur (avec l'attribut "groups", comme getAllUsers).
+     */
+    public Optional<UserRepresentation> getUserById(String userId) {
+        return getUserWithGroups(userId).map(UserWithGroups::user);
+    }
+
+    /**
+     * Utilisateur et ses groupes en deux appels ; vide si l'utilisateur n'existe pas (ou plus).
+     */
+    public Optional<UserWithGroups> getUserWithGroups(String userId) {
+        return singleFlight.execute("users.get", () -> readUserWithGroups(userId), userId);
+    }
+
+    private Optional<UserWithGroups> readUserWithGroups(String userId) {
+        try {
+            var userResource = realm().users().get(userId);
+            UserRepresentation user = calls.call("users.get", userResource::toRepresentation);
+            if (user == null) return Optional.empty();
+
+            List<GroupRepresentation> groups = Optional.ofNullable(calls.call("users.groups", userResource::groups))
+                    .orElse(Collections.emptyList());
+            applyGroupsAttribute(user, groups);
+            return Optional.of(new UserWithGroups(user, groups));
+        } catch (NotFoundException e) {
+            return Optional.empty();
+        }
+    }
+
     public void syncUsersToLocalDatabase() {
-        List<UserRepresentation> kcUsers = getAllUsers();
+        Map<String, List<GroupRepresentation>> groupsByUser = getAllUserGroups();
+        syncUsersToLocalDatabase(getAllUsers(groupsByUser), groupsByUser, () -> { });
+    }
 
+    /**
+     * Recopie des utilisateurs déjà lus dans Keycloak ; {@code onUserSynced} est appelé après chacun
+     * (suivi de progression).
+     */
+    public void syncUsersToLocalDatabase(List<UserRepresentation> kcUsers,
+                                         Map<String, List<GroupRepresentation>> groupsByUser,
+                                         Runnable onUserSynced) {
         for (UserRepresentation kcUser : kcUsers) {
-            try {
-                Utilisateur user = utilisateurRepository.findByKeycloakId(kcUser.getId())
-                        .orElse(new Utilisateur());
-
-                user.setKeycloakId(kcUser.getId());
-                user.setUsername(kcUser.getUsername());
-                user.setEmail(kcUser.getEmail());
-                user.setFirstName(kcUser.getFirstName());
-                user.setLastName(kcUser.getLastName());
-
-                if (kcUser.getAttributes() != null) {
-                    user.setPhoneNumber(kcUser.getAttributes()
-                            .getOrDefault("phoneNumber", List.of("")).get(0));
-                    user.setAddress(kcUser.getAttributes()
-                            .getOrDefault("address", List.of("")).get(0));
-                }
+            syncUserToLocalDatabase(kcUser, groupsByUser.getOrDefault(kcUser.getId(), Collections.emptyList()));
+            onUserSynced.run();
+        }
+    }
 
-                List<GroupRepresentation> groups = getUserGroups(kcUser.getId());
-                if (!groups.isEmpty()) {
-                    GroupRepresentation kcGroup = groups.get(0);
-                    String groupName = getAttributeValue(kcGroup, "nom", kcGroup.getName());
-                    String groupCode = getAttributeValue(kcGroup, "code", kcGroup.getId());
-
-                    Groupe groupeEntity = groupeRepository.findByLabel(groupName)
-                            .orElseGet(() -> {
-                                Groupe g = new Groupe();
-                                g.setLabel(groupName);
-                                g.setCode(groupCode); // ✅ on enregistre le code
-                                return groupeRepository.save(g);
-                            });
-
-                    // ✅ si le groupe existe déjà mais que le code est vide, on le met à jour
-                    if (groupeEntity.getCode() == null || groupeEntity.getCode().isBlank()) {
-                        groupeEntity.setCode(groupCode);
-                        groupeRepository.save(groupeEntity);
-                    }
-
-                    user.setGroupe(groupeEntity);
-                } else {
-                    user.setGroupe(null);
-                }
+    /**
+     * Recopie un utilisateur Keycloak (et son premier groupe) dans la base locale.
+     */
+    public void syncUserToLocalDatabase(UserRepresentation kcUser, List<GroupRepresentation> groups) {
+        try {
+            Utilisateur user = utilisateurRepository.findByKeycloakId(kcUser.getId())
+                    .orElse(new Utilisateur());
+
+            user.setKeycloakId(kcUser.getId());
+            user.setUsername(kcUser.getUsername());
+            user.setEmail(kcUser.getEmail());
+            user.setFirstName(kcUser.getFirstName());
+            user.setLastName(kcUser.getLastName());
+
+            if (kcUser.getAttributes() != null) {
+                user.setPhoneNumber(kcUser.getAttributes()
+                        .getOrDefault("phoneNumber", List.of("")).get(0));
+                user.setAddress(kcUser.getAttributes()
+                        .getOrDefault("address", List.of("")).get(0));
+            }
 
-                utilisateurRepository.save(user);
+            if (!groups.isEmpty()) {
+                GroupRepresentation kcGroup = groups.get(0);
+                String groupName = getAttributeValue(kcGroup, "nom", kcGroup.getName());
+                String groupCode = getAttributeValue(kcGroup, "code", kcGroup.getId());
+
+                Groupe groupeEntity = groupeRepository.findByLabel(groupName)
+                        .orElseGet(() -> {
+                            Groupe g = new Groupe();
+                            g.setLabel(groupName);
+                            g.setCode(groupCode); // ✅ on enregistre le code
+                            return groupeRepository.save(g);
+                        });
+
+                // ✅ si le groupe existe déjà mais que le code est vide, on le met à jour
+                if (groupeEntity.getCode() == null || groupeEntity.getCode().isBlank()) {
+                    groupeEntity.setCode(groupCode);
+                    groupeRepository.save(groupeEntity);
+                }
 
-            } catch (Exception e) {
-                System.out.println("❌ Erreur sync user " + kcUser.getUsername() + " : " + e.getMessage());
-                e.printStackTrace();
+                user.setGroupe(groupeEntity);
+            } else {
+                user.setGroupe(null);
             }
+
+            utilisateurRepository.save(user);
+
+        } catch (Exception e) {
+            System.out.println("❌ Erreur sync user " + kcUser.getUsername() + " : " + e.getMessage());
+            e.printStackTrace();
         }
     }
 
+    public void deleteLocalUser(String keycloakId) {
+        utilisateurRepository.findByKeycloakId(keycloakId).ifPresent(utilisateurRepository::delete);
+    }
+
+    /* ==================== ÉVÉNEMENTS ==================== */
+
+    /**
+     * Événements d'administration du realm (les plus récents d'abord).
+     * Nécessite l'enregistrement des événements admin dans le realm Keycloak.
+     */
+    public List<AdminEventRepresentation> getAdminEvents(String dateFrom, int first, int max) {
+        return Optional.ofNullable(calls.call("events.admin", () -> realm()
+                .getAdminEvents(null, null, null, null, null, null, dateFrom, null, first, max))
+        ).orElse(Collections.emptyList());
+    }
+
+    /**
+     * Événements utilisateurs du realm (les plus récents d'abord), filtrés par type.
+     */
+    public List<EventRepresentation> getUserEvents(List<String> types, String dateFrom, int first, int max) {
+        return Optional.ofNullable(calls.call("events.user", () -> realm()
+                .getEvents(types, null, null, dateFrom, null, null, first, max))
+        ).orElse(Collections.emptyList());
+    }
+
     public void updateUserInKeycloak(Utilisateur utilisateur) {
+        updateUserInKeycloak(utilisateur, null);
+    }
+
+    /**
+     * Mise à jour par différence : seuls les champs et appartenances qui changent sont écrits.
+     * Modifier un attribut coûte un seul PUT ; une mise à jour sans changement ne fait aucun appel
+     * quand l'état courant est fourni.
+     *
+     * @param cached état courant connu (annuaire) ; null pour le relire dans Keycloak
+     * @return le nouvel état si au moins une écriture a eu lieu, vide sinon ; ses groupes ne sont exacts
+     * que si {@code cached} est fourni ou qu'une région est demandée
+     */
+    public Optional<UserWithGroups> updateUserInKeycloak(Utilisateur utilisateur, UserWithGroups cached) {
         if (utilisateur.getKeycloakId() == null || utilisateur.getKeycloakId().isBlank()) {
             throw new RuntimeException("L'utilisateur n'a pas d'ID Keycloak");
         }
 
         try {
-            // Récupération de l'utilisateur dans Keycloak
-            var userResource = keycloak.realm(targetRealm).users().get(utilisateur.getKeycloakId());
-            UserRepresentation kcUser = userResource.toRepresentation();
-            if (kcUser == null) {
-                throw new RuntimeException("Utilisateur introuvable dans Keycloak avec l'ID : " + utilisateur.getKeycloakId());
+            var userResource = realm().users().get(utilisateur.getKeycloakId());
+
+            // Récupération de l'état courant (cache, ou Keycloak)
+            UserRepresentation current;
+            List<GroupRepresentation> currentGroups;
+            if (cached != null) {
+                // "groups" de l'annuaire = noms des groupes (applyGroupsAttribute), pas un attribut stocké
+                current = copyUser(cached.user());
+                if (current.getAttributes() != null && current.getAttributes().containsKey("groups")) {
+                    Map<String, List<String>> stored = new HashMap<>(current.getAttributes());
+                    stored.remove("groups");
+                    current.setAttributes(stored);
+                }
+                currentGroups = cached.groups();
+            } else {
+                current = calls.call("users.get", userResource::toRepresentation);
+                if (current == null) {
+                    throw new RuntimeException("Utilisateur introuvable dans Keycloak avec l'ID : " + utilisateur.getKeycloakId());
+                }
+                currentGroups = null;
             }
 
-            // Champs standards
-            kcUser.setUsername(utilisateur.getUsername());
-            if (utilisateur.getEmail() != null && !utilisateur.getEmail().isBlank()) kcUser.setEmail(utilisateur.getEmail());
-            if (utilisateur.getFirstName() != null) kcUser.setFirstName(utilisateur.getFirstName());
-            if (utilisateur.getLastName() != null) kcUser.setLastName(utilisateur.getLastName());
-            kcUser.setEnabled(true);
-            kcUser.setEmailVerified(true);
-
-            // Gestion attributs Keycloak
-            Map<String, List<String>> attributes = kcUser.getAttributes() != null
-                    ? new HashMap<>(kcUser.getAttributes())
-                    : new HashMap<>();
-
-            if (utilisateur.getPhoneNumber() != null && !utilisateur.getPhoneNumber().isBlank()) {
-                attributes.put("phoneNumber", List.of(utilisateur.getPhoneNumber().trim()));
+            // Gestion région/groupes : ensemble minimal de sorties et d'entrée
+            String regionLabel = utilisateur.getRegion() != null ? utilisateur.getRegion().getLabel() : null;
+            List<GroupRepresentation> toLeave = List.of();
+            GroupRepresentation toJoin = null;
+            if (regionLabel != null) {
+                if (currentGroups == null) {
+                    currentGroups = Optional.ofNullable(calls.call("users.groups", userResource::groups))
+                            .orElse(Collections.emptyList());
+                }
+                // Label inconnu : refusé avant toute écriture (sinon l'utilisateur quitterait tous ses groupes)
+                GroupRepresentation target = findGroupByLabel(regionLabel)
+                        .orElseThrow(() -> new RuntimeException("Groupe Keycloak introuvable pour le label : " + regionLabel));
+                String targetId = target.getId();
+                toLeave = currentGroups.stream().filter(g -> !g.getId().equals(targetId)).toList();
+                boolean alreadyMember = currentGroups.stream().anyMatch(g -> g.getId().equals(targetId));
+                toJoin = alreadyMember ? null : target;
             }
 
-            if (utilisateur.getAddress() != null && !utilisateur.getAddress().isBlank()) {
-                attributes.put("address", List.of(utilisateur.getAddress().trim()));
+            UserRepresentation desired = applyUserChanges(current, utilisateur);
+            int writes = 0;
+            if (!sameEditableFields(current, desired)) {
+                write("users.update", () -> userResource.update(desired));
+                writes++;
             }
 
-            // Gestion région/groupes
-            if (utilisateur.getRegion() != null && utilisateur.getRegion().getLabel() != null) {
-                attributes.put("groups", List.of(utilisateur.getRegion().getLabel()));
+            // Gestion du groupe Keycloak séparé
+            if (!toLeave.isEmpty() || toJoin != null) {
+                changeUserGroups(utilisateur.getKeycloakId(),
+                        toLeave.stream().map(GroupRepresentation::getId).toList(),
+                        toJoin != null ? toJoin.getId() : null);
+                writes += toLeave.size() + (toJoin != null ? 1 : 0);
             }
+            if (writes == 0) return Optional.empty();
+
+            List<GroupRepresentation> newGroups = new ArrayList<>(currentGroups != null ? currentGroups : List.of());
+            newGroups.removeAll(toLeave);
+            if (toJoin != null) newGroups.add(toJoin);
+            UserRepresentation updated = copyUser(current);
+            updated.setUsername(desired.getUsername());
+            updated.setEmail(desired.getEmail());
+            updated.setFirstName(desired.getFirstName());
+            updated.setLastName(desired.getLastName());
+            updated.setEnabled(desired.isEnabled());
+            updated.setEmailVerified(desired.isEmailVerified());
+            updated.setAttributes(desired.getAttributes());
+            if (currentGroups != null) applyGroupsAttribute(updated, newGroups);
+            return Optional.of(new UserWithGroups(updated, newGroups));
 
-            // Garde le mot de passe existant
-            if (attributes.containsKey("password")) {
-                attributes.put("password", attributes.get("password"));
-            }
+        } catch (Exception e) {
+            throw new RuntimeException("Erreur lors de la mise à jour de l'utilisateur dans Keycloak : " + e.getMessage(), e);
+        }
+    }
 
-            kcUser.setAttributes(attributes);
-            userResource.update(kcUser);
+    /**
+     * Représentation à envoyer (champs modifiables seulement, Keycloak ignore les champs null),
+     * calculée sans modifier {@code current}, qui peut venir du cache.
+     */
+    private UserRepresentation applyUserChanges(UserRepresentation current, Utilisateur utilisateur) {
+        UserRepresentation kcUser = new UserRepresentation();
+        kcUser.setId(current.getId());
+
+        // Champs standards
+        kcUser.setUsername(utilisateur.getUsername() != null ? utilisateur.getUsername() : current.getUsername());
+        kcUser.setEmail(utilisateur.getEmail() != null && !utilisateur.getEmail().isBlank()
+                ? utilisateur.getEmail() : current.getEmail());
+        kcUser.setFirstName(utilisateur.getFirstName() != null ? utilisateur.getFirstName() : current.getFirstName());
+        kcUser.setLastName(utilisateur.getLastName() != null ? utilisateur.getLastName() : current.getLastName());
+        kcUser.setEnabled(true);
+        kcUser.setEmailVerified(true);
+
+        // Gestion attributs Keycloak ("groups" n'est écrit que si une région est demandée, "password" est conservé)
+        Map<String, List<String>> attributes = current.getAttributes() != null
+                ? new HashMap<>(current.getAttributes())
+                : new HashMap<>();
+
+        if (utilisateur.getPhoneNumber() != null && !utilisateur.getPhoneNumber().isBlank()) {
+            attributes.put("phoneNumber", List.of(utilisateur.getPhoneNumber().trim()));
+        }
 
-            // Gestion du groupe Keycloak séparé
-            if (utilisateur.getRegion() != null && utilisateur.getRegion().getLabel() != null) {
-                List<GroupRepresentation> currentGroups = userResource.groups();
-                for (GroupRepresentation g : currentGroups) {
-                    userResource.leaveGroup(g.getId());
-                }
+        if (utilisateur.getAddress() != null && !utilisateur.getAddress().isBlank()) {
+            attributes.put("address", List.of(utilisateur.getAddress().trim()));
+        }
 
-                List<GroupRepresentation> allGroups = keycloak.realm(targetRealm).groups().groups();
-                Optional<GroupRepresentation> targetGroup = allGroups.stream()
-                        .filter(g -> g.getName().equals(utilisateur.getRegion().getLabel()))
-                        .findFirst();
+        if (utilisateur.getRegion() != null && utilisateur.getRegion().getLabel() != null) {
+            attributes.put("groups", List.of(utilisateur.getRegion().getLabel()));
+        }
 
-                targetGroup.ifPresent(group -> userResource.joinGroup(group.getId()));
-            }
+        kcUser.setAttributes(attributes);
+        return kcUser;
+    }
 
-        } catch (Exception e) {
-            throw new RuntimeException("Erreur lors de la mise à jour de l'utilisateur dans Keycloak : " + e.getMessage(), e);
-        }
+    private static boolean sameEditableFields(UserRepresentation current, UserRepresentation desired) {
+        return Objects.equals(current.getUsername(), desired.getUsername())
+                && Objects.equals(current.getEmail(), desired.getEmail())
+                && Objects.equals(current.getFirstName(), desired.getFirstName())
+                && Objects.equals(current.getLastName(), desired.getLastName())
+                && Objects.equals(current.isEnabled(), desired.isEnabled())
+                && Objects.equals(current.isEmailVerified(), desired.isEmailVerified())
+                && Objects.equals(Optional.ofNullable(current.getAttributes()).orElse(Map.of()), desired.getAttributes());
+    }
+
+    private static UserRepresentation copyUser(UserRepresentation u) {
+        UserRepresentation copy = new UserRepresentation();
+        copy.setId(u.getId());
+        copy.setUsername(u.getUsername());
+        copy.setEmail(u.getEmail());
+        copy.setFirstName(u.getFirstName());
+        copy.setLastName(u.getLastName());
+        copy.setEnabled(u.isEnabled());
+        copy.setEmailVerified(u.isEmailVerified());
+        copy.setCreatedTimestamp(u.getCreatedTimestamp());
+        copy.setAttributes(u.getAttributes());
+        copy.setRequiredActions(u.getRequiredActions());
+        return copy;
     }
 
     public String createUserInKeycloak(Utilisateur utilisateur) {
+        validateNewUser(utilisateur);
+
+        // 🔹 Vérification si l'utilisateur existe déjà dans Keycloak
+        List<UserRepresentation> existingUsers = calls.call("users.search",
+                () -> realm().users().search(utilisateur.getUsername()));
+        if (!existingUsers.isEmpty()) {
+            throw new RuntimeException("Un utilisateur avec ce username existe déjà dans Keycloak.");
+        }
+        List<UserRepresentation> existingByEmail = calls.call("users.search", () -> realm()
+                .users().search(null, null, null, utilisateur.getEmail(), 0, 1));
+        if (!existingByEmail.isEmpty()) {
+            throw new RuntimeException("Un utilisateur avec cet email existe déjà dans Keycloak.");
+        }
+
+        UserRepresentation user = buildNewUserRepresentation(utilisateur);
+
+        // 🔹 Log avant envoi (jamais le mot de passe : l'import en masse passe ici pour chaque ligne)
+        System.out.println("📤 Envoi à Keycloak : " + user.getUsername() + " / " + user.getEmail() +
+                " realm=" + targetRealm);
+
+        // 🔹 Appel Keycloak
+        Response response = write("users.create", () -> realm().users().create(user));
+
+        try {
+            System.out.println("📥 Réponse Keycloak : " + response.getStatus() + " - " + response.getStatusInfo());
+            if (response.getStatus() == 201) {
+                return CreatedResponseUtil.getCreatedId(response);
+            } else {
+                throw new RuntimeException("Erreur création utilisateur Keycloak : " +
+                        response.getStatus() + " - " + response.getStatusInfo());
+            }
+        } finally {
+            response.close();
+        }
+    }
+
+    /** Champs obligatoires d'un nouvel utilisateur ; RuntimeException avec le message à afficher sinon. */
+    public void validateNewUser(Utilisateur utilisateur) {
         // 🔹 Validation des champs obligatoires
         if (utilisateur.getUsername() == null || utilisateur.getUsername().isBlank()) {
             throw new RuntimeException("Le nom d'utilisateur (username) est obligatoire.");
@@ -244,18 +647,13 @@ public class KeycloakService {
         if (utilisateur.getLastName() == null || utilisateur.getLastName().isBlank()) {
             throw new RuntimeException("Le nom est obligatoire.");
         }
+    }
 
-        // 🔹 Vérification si l'utilisateur existe déjà dans Keycloak
-        List<UserRepresentation> existingUsers = keycloak.realm(targetRealm).users().search(utilisateur.getUsername());
-        if (!existingUsers.isEmpty()) {
-            throw new RuntimeException("Un utilisateur avec ce username existe déjà dans Keycloak.");
-        }
-        List<UserRepresentation> existingByEmail = keycloak.realm(targetRealm)
-                .users().search(null, null, null, utilisateur.getEmail(), 0, 1);
-        if (!existingByEmail.isEmpty()) {
-            throw new RuntimeException("Un utilisateur avec cet email existe déjà dans Keycloak.");
-        }
-
+    /**
+     * Représentation Keycloak d'un nouvel utilisateur (attributs, mot de passe généré si absent et
+     * recopié dans {@code utilisateur}).
+     */
+    public UserRepresentation buildNewUserRepresentation(Utilisateur utilisateur) {
         // 🔹 Préparation de l'utilisateur Keycloak
         UserRepresentation user = new UserRepresentation();
         user.setUsername(utilisateur.getUsername());
@@ -292,25 +690,22 @@ public class KeycloakService {
         credential.setType(CredentialRepresentation.PASSWORD);
         credential.setValue(password);
         user.setCredentials(List.of(credential));
+        return user;
+    }
 
-        // 🔹 Log avant envoi
-        System.out.println("📤 Envoi à Keycloak : " + user.getUsername() + " / " + user.getEmail() +
-                " realm=" + targetRealm + " | Password généré=" + password);
-
-        // 🔹 Appel Keycloak
-        Response response = keycloak.realm(targetRealm).users().create(user);
-
-        try {
-            String body = response.readEntity(String.class);
-            System.out.println("📥 Réponse Keycloak : " + response.getStatus() + " - " + response.getStatusInfo());
-            System.out.println("📥 Corps de réponse Keycloak : " + body);
-        } catch (Exception e) {
-            System.out.println("⚠ Impossible de lire le corps de la réponse Keycloak");
-        }
-
-        if (response.getStatus() == 201) {
-            return CreatedResponseUtil.getCreatedId(response);
-        } else {
+    /**
+     * Création en un seul appel, sans recherche préalable ni lecture du corps de réponse :
+     * Keycloak refuse lui-même les doublons (409), rendus ici par un Optional vide.
+     * Les groupes listés dans {@code user.getGroups()} (chemins) sont affectés dans le même appel.
+     */
+    public Optional<String> createPreparedUser(UserRepresentation user) {
+        try (Response response = write("users.create", () -> realm().users().create(user))) {
+            if (response.getStatus() == 201) {
+                return Optional.of(CreatedResponseUtil.getCreatedId(response));
+            }
+            if (response.getStatus() == 409) {
+                return Optional.empty();
+            }
             throw new RuntimeException("Erreur création utilisateur Keycloak : " +
                     response.getStatus() + " - " + response.getStatusInfo());
         }
@@ -364,25 +759,24 @@ public class KeycloakService {
 
         try {
             // 🔹 Récupération de l'utilisateur dans Keycloak
-            var userResource = keycloak.realm(targetRealm).users().get(keycloakId);
+            var userResource = realm().users().get(keycloakId);
             if (userResource == null) {
                 throw new RuntimeException("Utilisateur Keycloak introuvable pour keycloakId : " + keycloakId);
             }
             System.out.println("[INFO] Utilisateur trouvé dans Keycloak : " + keycloakId);
 
             // 🔹 Supprimer l'utilisateur des anciens groupes de type "region"
-            List<GroupRepresentation> userGroups = userResource.groups();
+            List<GroupRepresentation> userGroups = calls.call("users.groups", userResource::groups);
             for (GroupRepresentation g : userGroups) {
                 String type = getAttributeValue(g, "type", "");
                 if ("region".equalsIgnoreCase(type)) {
                     System.out.println("[INFO] Suppression de l'utilisateur du groupe existant : " + g.getName());
-                    userResource.leaveGroup(g.getId());
+                    write("users.leave-group", () -> userResource.leaveGroup(g.getId()));
                 }
             }
 
-            // 🔹 Chercher le groupe cible dans Keycloak par label (nom lisible)
-            List<GroupRepresentation> allGroups = keycloak.realm(targetRealm).groups().groups();
-            Optional<GroupRepresentation> targetGroupOpt = findGroupByLabel(allGroups, regionLabel);
+            // 🔹 Chercher le groupe cible par label (nom, attribut nom ou code) dans l'index en cache
+            Optional<GroupRepresentation> targetGroupOpt = findGroupByLabel(regionLabel);
 
             if (targetGroupOpt.isEmpty()) {
                 throw new RuntimeException("Groupe Keycloak introuvable pour le label : " + regionLabel);
@@ -392,9 +786,12 @@ public class KeycloakService {
             System.out.println("[INFO] Groupe cible trouvé : " + targetGroup.getName() + " (ID : " + targetGroup.getId() + ")");
 
             // 🔹 Affecter l'utilisateur au groupe
-            userResource.joinGroup(targetGroup.getId());
+            write("users.join-group", () -> userResource.joinGroup(targetGroup.getId()));
             System.out.println("[SUCCESS] Utilisateur " + keycloakId + " affecté au groupe " + targetGroup.getName());
 
+        } catch (KeycloakUnavailableException e) {
+            // Keycloak indisponible : 503 avec Retry-After, pas une erreur de l'appelant
+            throw e;
         } catch (Exception e) {
             System.err.println("[ERROR] Erreur lors de l'affectation de l'utilisateur au groupe region : " + e.getMessage());
             e.printStackTrace();
@@ -402,27 +799,32 @@ public class KeycloakService {
         }
     }
 
-    private Optional<GroupRepresentation> findGroupByLabel(List<GroupRepresentation> groups, String label) {
-        if (groups == null) return Optional.empty();
-        for (GroupRepresentation g : groups) {
-            if (label.equalsIgnoreCase(g.getName())) {
-                return Optional.of(g);
-            }
-            // Recherche récursive dans les sous-groupes
-            Optional<GroupRepresentation> found = findGroupByLabel(g.getSubGroups(), label);
-            if (found.isPresent()) return found;
+    /** Retire l'utilisateur des groupes {@code leaveGroupIds} puis l'ajoute à {@code joinGroupId} (si non null). */
+    public void changeUserGroups(String keycloakId, Collection<String> leaveGroupIds, String joinGroupId) {
+        var userResource = realm().users().get(keycloakId);
+        for (String groupId : leaveGroupIds) {
+            write("users.leave-group", () -> userResource.leaveGroup(groupId));
+        }
+        if (joinGroupId != null) {
+            write("users.join-group", () -> userResource.joinGroup(joinGroupId));
         }
-        return Optional.empty();
+    }
+
+    /**
+     * Groupe désigné par un libellé, cherché dans l'arbre en cache. Libellé inconnu (faute de frappe, ou groupe
+     * créé directement dans Keycloak depuis le dernier chargement) : l'arbre est relu en arrière-plan,
+     * au plus une fois par {@code keycloak.groups.cache-ttl-ms}, et l'appel suivant le trouvera.
+     */
+    public Optional<GroupRepresentation> findGroupByLabel(String label) {
+        Optional<GroupRepresentation> found = groupTreeCache.get().index().findByLabel(label);
+        if (found.isEmpty()) groupTreeCache.refreshAfterMiss();
+        return found;
     }
 
     /* ==================== GROUPES ==================== */
 
     public List<Groupe> getRootGroupsFromKeycloak() {
-        List<GroupRepresentation> kcGroups = Optional.ofNullable(
-                keycloak.realm(targetRealm).groups().groups()
-        ).orElse(Collections.emptyList());
-
-        return kcGroups.stream()
+        return getGroupTree().stream()
                 .map(g -> {
                     Groupe groupe = new Groupe();
                     groupe.setId(0L); // id interne inutilisé ici
@@ -433,7 +835,7 @@ public class KeycloakService {
                 .collect(Collectors.toList());
     }
 
-    private String getAttributeValue(GroupRepresentation group, String key, String defaultValue) {
+    public static String getAttributeValue(GroupRepresentation group, String key, String defaultValue) {
         return Optional.ofNullable(group.getAttributes())
                 .map(attrs -> attrs.get(key))
                 .filter(values -> !values.isEmpty() && values.get(0) != null && !values.get(0).isBlank())
@@ -441,30 +843,14 @@ public class KeycloakService {
                 .orElse(defaultValue);
     }
 
+    /** Tous les groupes (sous-groupes compris) à plat ; DTO précalculés et partagés, en lecture seule. */
     public List<Map<String, Object>> getAllGroupsFromKeycloak() {
-        List<Map<String, Object>> allGroups = new ArrayList<>();
-        List<GroupRepresentation> roots = Optional.ofNullable(keycloak.realm(targetRealm).groups().groups())
-                .orElse(Collections.emptyList());
-        roots.forEach(root -> collectGroupsRecursive(root, allGroups));
-        return allGroups;
-    }
-
-    private void collectGroupsRecursive(GroupRepresentation group, List<Map<String, Object>> list) {
-        list.add(mapGroupToDTO(group));
-        if (group.getSubGroups() != null) {
-            group.getSubGroups().forEach(sub -> collectGroupsRecursive(sub, list));
-        }
+        return groupTreeCache.get().flat();
     }
 
-    private Map<String, Object> mapGroupToDTO(GroupRepresentation group) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", group.getId());
-        map.put("name", group.getName());
-        map.put("code", getAttributeValue(group, "code", ""));
-        map.put("type", getAttributeValue(group, "type", ""));
-        map.put("nom", getAttributeValue(group, "nom", ""));
-        map.put("label", getAttributeValue(group, "nom", ""));
-        return map;
+    /** Entrées id / keycloakId / code / label du dropdown, sans les utilisateurs ; en lecture seule. */
+    public List<Map<String, Object>> getGroupDropdownEntries() {
+        return groupTreeCache.get().dropdownEntries();
     }
 
     public String createGroup(String name, String type, String code, String nom) {
@@ -476,9 +862,13 @@ public class KeycloakService {
                 "nom", List.of(nom == null ? "" : nom)
         ));
 
-        Response response = keycloak.realm(targetRealm).groups().add(group);
+        Response response = write("groups.create", () -> realm().groups().add(group));
         if (response.getStatus() == 201) {
-            return CreatedResponseUtil.getCreatedId(response);
+            String id = CreatedResponseUtil.getCreatedId(response);
+            group.setId(id);
+            group.setPath("/" + name);
+            groupTreeCache.addRoot(group);
+            return id;
         }
         throw new RuntimeException("Erreur création groupe : " + response.getStatus());
     }
@@ -492,17 +882,20 @@ public class KeycloakService {
                 "nom", List.of(nom == null ? "" : nom)
         ));
 
-        Response response = keycloak.realm(targetRealm).groups()
+        Response response = write("groups.add-child", () -> realm().groups()
                 .group(parentGroupId)
-                .subGroup(child);
+                .subGroup(child));
 
         if (response.getStatus() != 201) {
             throw new RuntimeException("Erreur création sous-groupe : " + response.getStatus());
         }
+        child.setId(CreatedResponseUtil.getCreatedId(response));
+        groupTreeCache.addChild(parentGroupId, child);
     }
 
     public void updateGroupAttributes(String groupId, String name, String type, String code, String nom) {
-        GroupRepresentation group = keycloak.realm(targetRealm).groups().group(groupId).toRepresentation();
+        GroupRepresentation group = calls.call("groups.get",
+                () -> realm().groups().group(groupId).toRepresentation());
         if (group == null) throw new RuntimeException("Groupe introuvable: " + groupId);
 
         if (name != null && !name.isBlank()) group.setName(name);
@@ -513,65 +906,84 @@ public class KeycloakService {
         if (nom != null) attrs.put("nom", List.of(nom));
 
         group.setAttributes(attrs);
-        keycloak.realm(targetRealm).groups().group(groupId).update(group);
+        write("groups.update", () -> realm().groups().group(groupId).update(group));
+        groupTreeCache.update(group);
     }
 
+    /** Hiérarchie code / label / enfants, précalculée dans le cache de l'arbre. */
     public List<Map<String, Object>> getGroupHierarchy() {
-        List<GroupRepresentation> roots = Optional.ofNullable(
-                keycloak.realm(targetRealm).groups().groups()
-        ).orElse(Collections.emptyList());
-
-        return roots.stream()
-                .map(this::mapGroupWithChildren)
-                .collect(Collectors.toList());
-    }
-
-    private Map<String, Object> mapGroupWithChildren(GroupRepresentation group) {
-        Map<String, Object> map = new HashMap<>();
-        map.put("id", group.getId());
-        map.put("code", getAttributeValue(group, "code", ""));
-        map.put("label", getAttributeValue(group, "nom", group.getName())); // nom lisible
-        map.put("children", group.getSubGroups() == null ? List.of() :
-                group.getSubGroups().stream()
-                        .map(this::mapGroupWithChildren)
-                        .collect(Collectors.toList()));
-        return map;
+        return groupTreeCache.get().hierarchy();
     }
 
     public List<Map<String, Object>> getUsersOfGroup(String groupId) {
-        try {
-            List<UserRepresentation> members = keycloak.realm(targetRealm)
-                    .groups().group(groupId).members();
-
-            if (members.isEmpty()) {
-                Map<String, Object> emptyUser = new HashMap<>();
-                emptyUser.put("username", "Aucun utilisateur n'est affecté");
-                return Collections.singletonList(emptyUser);
-            }
+        return singleFlight.execute("groups.members.rows", () -> readUsersOfGroup(groupId), groupId);
+    }
 
-            return members.stream().map(u -> {
-                Map<String, Object> uMap = new HashMap<>();
-                uMap.put("username", u.getUsername());
-                uMap.put("firstName", u.getFirstName());
-                uMap.put("lastName", u.getLastName());
-                uMap.put("email", u.getEmail());
-                return uMap;
-            }).collect(Collectors.toList());
+    // Une erreur Keycloak remonte à l'appelant : pas de fausse ligne "Aucun utilisateur" sur un échec
+    private List<Map<String, Object>> readUsersOfGroup(String groupId) {
+        List<UserRepresentation> members = calls.call("groups.members", () -> realm()
+                .groups().group(groupId).members());
+        return toGroupMemberRows(members == null ? List.of() : members);
+    }
 
-        } catch (Exception e) {
+    /** Lignes username / firstName / lastName / email des membres, ou la ligne "Aucun utilisateur" si vide. */
+    public static List<Map<String, Object>> toGroupMemberRows(List<UserRepresentation> members) {
+        if (members.isEmpty()) {
             Map<String, Object> emptyUser = new HashMap<>();
             emptyUser.put("username", "Aucun utilisateur n'est affecté");
             return Collections.singletonList(emptyUser);
         }
+
+        return members.stream().map(u -> {
+            Map<String, Object> uMap = new HashMap<>();
+            uMap.put("username", u.getUsername());
+            uMap.put("firstName", u.getFirstName());
+            uMap.put("lastName", u.getLastName());
+            uMap.put("email", u.getEmail());
+            return uMap;
+        }).collect(Collectors.toList());
+    }
+
+    /** Nombre de membres directs d'un groupe (pages en représentation réduite). */
+    public int countGroupMembers(String groupId) {
+        return singleFlight.execute("groups.members.count", () -> readGroupMemberCount(groupId), groupId);
+    }
+
+    private int readGroupMemberCount(String groupId) {
+        var group = realm().groups().group(groupId);
+        int count = 0;
+        int first = 0;
+        while (true) {
+            int offset = first;
+            List<UserRepresentation> page = calls.call("groups.members", () -> group.members(offset, membersPageSize, true));
+            if (page == null) break;
+            count += page.size();
+            if (page.size() < membersPageSize) break;
+            first += membersPageSize;
+        }
+        return count;
     }
 
     public Map<String, Object> getGroupById(String groupId) {
-        GroupRepresentation group = keycloak.realm(targetRealm).groups().group(groupId).toRepresentation();
+        return singleFlight.execute("groups.by-id", () -> readGroupById(groupId), groupId);
+    }
+
+    private Map<String, Object> readGroupById(String groupId) {
+        // 🔹 Groupe lu dans l'arbre en cache (servi même si Keycloak est lent), membres lus dans Keycloak
+        GroupRepresentation group = findGroupById(groupId).orElse(null);
         if (group == null) return null;
+        return toGroupDto(group, getUsersOfGroup(group.getId()));
+    }
 
-        // Récupérer les utilisateurs du groupe
-        List<Map<String, Object>> utilisateurs = getUsersOfGroup(group.getId());
+    /** Groupe par id dans l'arbre en cache ; id inconnu : relecture en arrière-plan, comme {@link #findGroupByLabel}. */
+    public Optional<GroupRepresentation> findGroupById(String groupId) {
+        Optional<GroupRepresentation> found = groupTreeCache.get().index().byId(groupId);
+        if (found.isEmpty()) groupTreeCache.refreshAfterMiss();
+        return found;
+    }
 
+    /** Réponse de GET /api/groupes/{id} : id / keycloakId / code / label / utilisateurs. */
+    public static Map<String, Object> toGroupDto(GroupRepresentation group, List<Map<String, Object>> utilisateurs) {
         Map<String, Object> dto = new HashMap<>();
         dto.put("id", group.getName());   // ou group.getId() si tu veux l’UUID
         dto.put("keycloakId", group.getId());
@@ -0,0 +1,34 @@
+package com.example.gestionutilisateur.Repository;
+
+import com.example.gestionutilisateur.Entities.OperationKeycloak;
+import com.example.gestionutilisateur.Enums.StatutOperation;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface OperationKeycloakRepository extends JpaRepository<OperationKeycloak, Long> {
+    // 🔹 Dernière opération non terminée d'une cible : seule candidate à une fusion
+    Optional<OperationKeycloak> findFirstByCibleIdAndStatutInOrderByIdDesc(String cibleId, List<StatutOperation> statuts);
+
+    List<OperationKeycloak> findByStatutAndProchainEssaiLessThanEqualOrderByIdAsc(StatutOperation statut, Instant now, Pageable pageable);
+
+    List<OperationKeycloak> findByCibleIdOrderByIdDesc(String cibleId, Pageable pageable);
+
+    // 🔹 Une opération plus ancienne sur la même cible doit passer avant (ordre des écritures)
+    boolean existsByCibleIdAndStatutInAndIdLessThan(String cibleId, List<StatutOperation> statuts, Long id);
+
+    long countByStatut(StatutOperation statut);
+
+    // 🔹 Prises en charge dont le bail a expiré (instance arrêtée) : version incrémentée, l'ancien détenteur échoue au save
+    @Modifying(clearAutomatically = true)
+    @Query("update OperationKeycloak o set o.statut = :to, o.version = o.version + 1"
+            + " where o.statut = :from and o.majLe < :before")
+    int requeueExpired(@Param("from") StatutOperation from, @Param("to") StatutOperation to,
+                       @Param("before") Instant before);
+}
@@ -0,0 +1,7 @@
+package com.example.gestionutilisateur.Repository;
+
+import com.example.gestionutilisateur.Entities.SyncCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface SyncCheckpointRepository extends JpaRepository<SyncCheckpoint, String> {
+}
@@ -0,0 +1,31 @@
+package com.example.gestionutilisateur.Security;
+
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtException;
+
+/**
+ * Décodeur JWT qui ne vérifie la signature et les claims d'un jeton qu'une fois :
+ * le client Angular renvoie le même jeton à chaque requête jusqu'à son renouvellement.
+ * Un jeton déjà accepté est resservi tel quel jusqu'à son {@code exp}, puis redécodé (et refusé s'il a expiré).
+ * Les jetons refusés ne sont pas gardés.
+ */
+public class CachingJwtDecoder implements JwtDecoder {
+
+    private final JwtDecoder delegate;
+    private final TokenCache<Jwt> decoded;
+
+    public CachingJwtDecoder(JwtDecoder delegate, int maxEntries) {
+        this.delegate = delegate;
+        this.decoded = new TokenCache<>(maxEntries);
+    }
+
+    @Override
+    public Jwt decode(String token) throws JwtException {
+        Jwt cached = decoded.get(token);
+        if (cached != null) return cached;
+        Jwt jwt = delegate.decode(token);
+        decoded.put(token, jwt, jwt.getExpiresAt());
+        return jwt;
+    }
+}
@@ -0,0 +1,89 @@
+package com.example.gestionutilisateur.Security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.source.JWKSource;
+import com.nimbusds.jose.proc.SecurityContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Clés publiques du realm (JWK set) pour la vérification des JWT, chargées dès le démarrage
+ * puis relues en arrière-plan toutes les {@code security.jwt.jwks.refresh-ms} : aucune requête
+ * ne paie la lecture de {@code jwk-set-uri}.
+ * <p>
+ * Jeton signé par une clé inconnue (rotation des clés dans Keycloak) : relecture immédiate,
+ * au plus une fois par {@code security.jwt.jwks.min-refetch-ms} pour qu'un jeton forgé ne déclenche pas
+ * un appel à Keycloak par requête. Si Keycloak ne répond pas, les clés déjà chargées restent utilisées.
+ */
+@Component
+public class JwkSetCache implements JWKSource<SecurityContext> {
+
+    private final String jwkSetUri;
+    private final int timeoutMs;
+    private final Duration minRefetch;
+
+    private volatile JWKSet jwkSet;
+    private volatile long fetchedAt;
+
+    public JwkSetCache(@Value("${spring.security.oauth2.resourceserver.jwt.jwk-set-uri}") String jwkSetUri,
+                       @Value("${security.jwt.jwks.timeout-ms:2000}") int timeoutMs,
+                       @Value("${security.jwt.jwks.min-refetch-ms:30000}") long minRefetchMs) {
+        this.jwkSetUri = jwkSetUri;
+        this.timeoutMs = timeoutMs;
+        this.minRefetch = Duration.ofMillis(minRefetchMs);
+    }
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${security.jwt.jwks.refresh-ms:300000}")
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (Exception e) {
+            System.out.println("⚠️ Lecture des clés JWK Keycloak échouée : " + e.getMessage());
+        }
+    }
+
+    @Override
+    public List<JWK> get(JWKSelector selector, SecurityContext context) throws KeySourceException {
+        JWKSet current = jwkSet;
+        if (current != null) {
+            List<JWK> keys = selector.select(current);
+            if (!keys.isEmpty()) return keys;
+        }
+        return selector.select(reload(current));
+    }
+
+    // 🔹 Clé introuvable ou clés jamais chargées : une seule relecture pour tous les threads
+    private synchronized JWKSet reload(JWKSet seen) throws KeySourceException {
+        JWKSet current = jwkSet;
+        if (current != seen) return current;
+        if (current != null && System.nanoTime() - fetchedAt < minRefetch.toNanos()) return current;
+        try {
+            return refresh();
+        } catch (IOException | ParseException e) {
+            if (current != null) return current;
+            throw new KeySourceException("Clés JWK Keycloak indisponibles : " + e.getMessage(), e);
+        }
+    }
+
+    private synchronized JWKSet refresh() throws IOException, ParseException {
+        JWKSet loaded = JWKSet.load(URI.create(jwkSetUri).toURL(), timeoutMs, timeoutMs, 0);
+        JWKSet previous = jwkSet;
+        if (previous == null || !previous.toString().equals(loaded.toString())) {
+            System.out.println("🔑 Clés JWK Keycloak chargées : "
+                    + loaded.getKeys().stream().map(JWK::getKeyID).toList());
+        }
+        jwkSet = loaded;
+        fetchedAt = System.nanoTime();
+        return loaded;
+    }
+}
@@ -1,5 +1,6 @@
 package com.example.gestionutilisateur.Security;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.convert.converter.Converter;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.core.GrantedAuthority;
@@ -20,12 +21,23 @@ public class JwtAuthConverter implements Converter<Jwt, AbstractAuthenticationTo
 
     private final JwtGrantedAuthoritiesConverter jwtGrantedAuthoritiesConverter = new JwtGrantedAuthoritiesConverter();
 
+    // Autorités par jeton, jusqu'à son exp : le même jeton revient à chaque requête du client Angular
+    private final TokenCache<Collection<GrantedAuthority>> authoritiesByToken;
+
+    public JwtAuthConverter(@Value("${security.jwt.cache.max-entries:10000}") int maxEntries) {
+        this.authoritiesByToken = new TokenCache<>(maxEntries);
+    }
+
     @Override
     public AbstractAuthenticationToken convert(Jwt jwt) {
-        Collection<GrantedAuthority> authorities = Stream.concat(
-                jwtGrantedAuthoritiesConverter.convert(jwt).stream(),
-                extractRealmRoles(jwt).stream()
-        ).collect(Collectors.toSet());
+        Collection<GrantedAuthority> authorities = authoritiesByToken.get(jwt.getTokenValue());
+        if (authorities == null) {
+            authorities = Set.copyOf(Stream.concat(
+                    jwtGrantedAuthoritiesConverter.convert(jwt).stream(),
+                    extractRealmRoles(jwt).stream()
+            ).collect(Collectors.toSet()));
+            authoritiesByToken.put(jwt.getTokenValue(), authorities, jwt.getExpiresAt());
+        }
 
         return new JwtAuthenticationToken(jwt, authorities, jwt.getClaim("preferred_username"));
     }
@@ -1,5 +1,10 @@
 package com.example.gestionutilisateur.Security;
 
+import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.proc.JWSVerificationKeySelector;
+import com.nimbusds.jose.proc.SecurityContext;
+import com.nimbusds.jwt.proc.DefaultJWTProcessor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.convert.converter.Converter;
@@ -10,6 +15,9 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.security.oauth2.jwt.JwtValidators;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
 import org.springframework.security.web.SecurityFilterChain;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.CorsConfigurationSource;
@@ -24,6 +32,10 @@ public class SecurityConfig {
 
     private final JwtAuthConverter jwtAuthConverter;
 
+    // Rôle realm exigé pour les endpoints de supervision (métriques Prometheus, metrics, info)
+    @Value("${security.actuator.role:monitoring}")
+    private String monitoringRole;
+
     public SecurityConfig(JwtAuthConverter jwtAuthConverter) {
         this.jwtAuthConverter = jwtAuthConverter;
     }
@@ -42,6 +54,12 @@ public class SecurityConfig {
                         // Autoriser console H2
                         .requestMatchers("/h2-console/**").permitAll()
 
+                        // Sondes Kubernetes (liveness / readiness) : seules publiques, statut sans détail
+                        .requestMatchers("/actuator/health/liveness", "/actuator/health/readiness").permitAll()
+                        .requestMatchers("/actuator/health", "/actuator/health/**").authenticated()
+                        // Métriques (nombre d'utilisateurs, appels Keycloak, état du pool) : compte de supervision
+                        .requestMatchers("/actuator/**").hasAuthority(monitoringRole)
+
                         // Autoriser Swagger et OpenAPI
                         .requestMatchers(
                                 "/v3/api-docs/**",
@@ -68,13 +86,31 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * Vérification des JWT Keycloak (RS256, émetteur {@code issuer-uri}) avec les clés de {@link JwkSetCache},
+     * chargées en arrière-plan ; un jeton déjà vérifié est resservi jusqu'à son exp ({@link CachingJwtDecoder}).
+     */
+    @Bean
+    public JwtDecoder cachingJwtDecoder(JwkSetCache jwkSetCache,
+                                        @Value("${spring.security.oauth2.resourceserver.jwt.issuer-uri}") String issuerUri,
+                                        @Value("${security.jwt.cache.max-entries:10000}") int maxEntries) {
+        DefaultJWTProcessor<SecurityContext> jwtProcessor = new DefaultJWTProcessor<>();
+        jwtProcessor.setJWSKeySelector(new JWSVerificationKeySelector<>(JWSAlgorithm.RS256, jwkSetCache));
+        // exp, nbf et iss sont vérifiés par les validateurs Spring ci-dessous, comme avec le décodeur par défaut
+        jwtProcessor.setJWTClaimsSetVerifier((claims, context) -> {
+        });
+        NimbusJwtDecoder decoder = new NimbusJwtDecoder(jwtProcessor);
+        decoder.setJwtValidator(JwtValidators.createDefaultWithIssuer(issuerUri));
+        return new CachingJwtDecoder(decoder, maxEntries);
+    }
+
     @Bean
     public CorsConfigurationSource corsConfigurationSource() {
         CorsConfiguration configuration = new CorsConfiguration();
         configuration.setAllowedOrigins(List.of("http://localhost:4200"));  // frontend Angular
         configuration.setAllowedMethods(List.of("GET", "POST", "PUT", "DELETE", "OPTIONS"));
         configuration.setAllowedHeaders(List.of("*"));  // inclut Authorization
-        configuration.setExposedHeaders(List.of("Authorization", "Content-Type"));
+        configuration.setExposedHeaders(List.of("Authorization", "Content-Type", "X-First", "X-Next-Cursor", "X-Partial-Result", "Server-Timing", "Age", "X-Data-Stale"));
         configuration.setAllowCredentials(true);
 
         UrlBasedCorsConfigurationSource source = new UrlBasedCorsConfigurationSource();
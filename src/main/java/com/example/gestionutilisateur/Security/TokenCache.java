@@ -0,0 +1,75 @@
+package com.example.gestionutilisateur.Security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Résultats calculés pour un jeton (JWT décodé, autorités), gardés jusqu'à l'expiration du jeton.
+ * Clé : empreinte SHA-256 du jeton, le jeton lui-même n'est pas gardé en clé ; seul un jeton identique
+ * au caractère près retrouve l'entrée.
+ * Taille bornée : cache plein, l'entrée qui expire le plus tôt (les expirées d'abord) laisse sa place au nouveau jeton.
+ */
+final class TokenCache<V> {
+
+    private record Entry<V>(String key, V value, Instant expiresAt) {
+    }
+
+    private final Map<String, Entry<V>> entries = new ConcurrentHashMap<>();
+    // 🔹 Mêmes entrées, par date d'expiration : l'éviction ne parcourt pas le cache
+    private final NavigableSet<Entry<V>> byExpiry = new ConcurrentSkipListSet<>(
+            Comparator.<Entry<V>, Instant>comparing(Entry::expiresAt).thenComparing(Entry::key));
+    private final int maxEntries;
+
+    TokenCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    V get(String token) {
+        Entry<V> entry = entries.get(keyOf(token));
+        if (entry == null) return null;
+        if (!entry.expiresAt().isAfter(Instant.now())) {
+            if (entries.remove(entry.key(), entry)) byExpiry.remove(entry);
+            return null;
+        }
+        return entry.value();
+    }
+
+    synchronized void put(String token, V value, Instant expiresAt) {
+        // Sans date d'expiration, rien ne borne la durée de vie de l'entrée : pas de cache
+        if (expiresAt == null || maxEntries <= 0 || !expiresAt.isAfter(Instant.now())) return;
+        Entry<V> entry = new Entry<>(keyOf(token), value, expiresAt);
+        Entry<V> previous = entries.put(entry.key(), entry);
+        if (previous != null) byExpiry.remove(previous);
+        byExpiry.add(entry);
+
+        Iterator<Entry<V>> oldest = byExpiry.iterator();
+        while (entries.size() > maxEntries && oldest.hasNext()) {
+            Entry<V> evicted = oldest.next();
+            if (evicted == entry) continue;
+            oldest.remove();
+            entries.remove(evicted.key(), evicted);
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    static String keyOf(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+}
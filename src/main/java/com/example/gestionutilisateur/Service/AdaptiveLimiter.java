@@ -0,0 +1,127 @@
+package com.example.gestionutilisateur.Service;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limite adaptative du nombre d'appels simultanés (AIMD), avec file d'attente par priorité.
+ * <ul>
+ *     <li>Un appel réussi en moins de {@code latencyTarget} alors que la limite est au moins à moitié utilisée
+ *     la relève d'environ 1 par « tour » ({@code +1/limite} par appel), jusqu'à {@code maxLimit}.</li>
+ *     <li>Un appel en échec ou plus lent que {@code latencyTarget} la multiplie par {@code backoff}
+ *     (au plus une fois par {@code latencyTarget}, pour ne pas s'effondrer sur une rafale), jusqu'à {@code minLimit}.</li>
+ *     <li>Une classe de priorité ne démarre un appel que si le total en cours reste sous sa part de la limite
+ *     ({@link KeycloakPriority#share()}) : les jobs de fond laissent toujours de la place aux requêtes interactives.</li>
+ *     <li>À la libération d'une place, le premier appel en attente de la classe la plus prioritaire passe
+ *     (ordre d'arrivée dans une même classe).</li>
+ * </ul>
+ */
+public class AdaptiveLimiter {
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoff;
+
+    // 🔹 État protégé par "this"
+    private double limit;
+    private int inFlight;
+    private long lastDecreaseAt;
+    private long sequence;
+    private final TreeSet<Waiter> waiters = new TreeSet<>(
+            Comparator.comparing(Waiter::priority).thenComparingLong(Waiter::sequence));
+    private final int[] queued = new int[KeycloakPriority.values().length];
+
+    private record Waiter(KeycloakPriority priority, long sequence) {
+    }
+
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit, Duration latencyTarget, double backoff) {
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+        this.latencyTargetNanos = latencyTarget.toNanos();
+        this.backoff = Math.min(0.99, Math.max(0.1, backoff));
+        this.lastDecreaseAt = System.nanoTime() - latencyTargetNanos;
+    }
+
+    /** Limite fixe : ni hausse ni baisse, seules les priorités s'appliquent. */
+    public static AdaptiveLimiter fixed(int limit) {
+        return new AdaptiveLimiter(limit, limit, limit, Duration.ofDays(1), 0.9);
+    }
+
+    /**
+     * Attend une place au plus {@code maxWait} ; {@code false} si aucune ne s'est libérée à temps
+     * pour cette priorité. Une place obtenue est à rendre par {@link #release}.
+     */
+    public synchronized boolean acquire(KeycloakPriority priority, Duration maxWait) throws InterruptedException {
+        Waiter me = new Waiter(priority, sequence++);
+        waiters.add(me);
+        queued[priority.ordinal()]++;
+        long deadline = System.nanoTime() + maxWait.toNanos();
+        try {
+            while (true) {
+                if (firstEligible() == me) {
+                    inFlight++;
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        } finally {
+            waiters.remove(me);
+            queued[priority.ordinal()]--;
+            // La place a pu rester libre (limite relevée, abandon) : le suivant vérifie s'il peut passer
+            notifyAll();
+        }
+    }
+
+    /** Rend une place et ajuste la limite selon la durée et l'issue de l'appel. */
+    public synchronized void release(long latencyNanos, boolean failed) {
+        boolean saturated = inFlight * 2 >= currentLimit();
+        inFlight = Math.max(0, inFlight - 1);
+        long now = System.nanoTime();
+        if (failed || latencyNanos > latencyTargetNanos) {
+            if (now - lastDecreaseAt >= latencyTargetNanos) {
+                limit = Math.max(minLimit, limit * backoff);
+                lastDecreaseAt = now;
+            }
+        } else if (saturated) {
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+        notifyAll();
+    }
+
+    private Waiter firstEligible() {
+        for (Waiter w : waiters) {
+            if (inFlight < capacity(w.priority())) return w;
+        }
+        return null;
+    }
+
+    private int capacity(KeycloakPriority priority) {
+        return Math.max(1, (int) (currentLimit() * priority.share()));
+    }
+
+    private int currentLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getLimit() {
+        return currentLimit();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getQueued(KeycloakPriority priority) {
+        return queued[priority.ordinal()];
+    }
+
+    public synchronized int getAvailable() {
+        return Math.max(0, currentLimit() - inFlight);
+    }
+}
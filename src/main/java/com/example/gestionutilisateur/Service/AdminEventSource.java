@@ -0,0 +1,103 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import org.keycloak.representations.idm.AdminEventRepresentation;
+import org.keycloak.representations.idm.EventRepresentation;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Lit les événements d'administration (users/..., groups/...) et les événements utilisateurs
+ * (inscription, mise à jour du profil, suppression du compte) via l'API admin Keycloak.
+ * Les deux types d'événements doivent être enregistrés dans la configuration du realm.
+ */
+@Component
+@ConditionalOnProperty(name = "keycloak.sync.event-source", havingValue = "admin-events", matchIfMissing = true)
+public class AdminEventSource implements KeycloakEventSource {
+
+    private static final int PAGE_SIZE = 200;
+    private static final DateTimeFormatter DAY = DateTimeFormatter.ofPattern("yyyy-MM-dd").withZone(ZoneOffset.UTC);
+    private static final List<String> USER_EVENT_TYPES =
+            List.of("REGISTER", "UPDATE_PROFILE", "UPDATE_EMAIL", "VERIFY_EMAIL", "DELETE_ACCOUNT");
+
+    private final KeycloakService keycloakService;
+
+    public AdminEventSource(KeycloakService keycloakService) {
+        this.keycloakService = keycloakService;
+    }
+
+    @Override
+    public EventBatch poll(long sinceMillis, int maxEvents) {
+        // 🔹 dateFrom est à la journée : on lit à partir du jour du point de reprise puis on filtre à la milliseconde
+        String dateFrom = DAY.format(Instant.ofEpochMilli(sinceMillis));
+        List<KeycloakChangeEvent> events = new ArrayList<>();
+        boolean complete = readAdminEvents(dateFrom, sinceMillis, maxEvents, events)
+                && readUserEvents(dateFrom, sinceMillis, maxEvents, events);
+
+        events.sort(Comparator.comparingLong(KeycloakChangeEvent::time));
+        return new EventBatch(events, complete);
+    }
+
+    /** Les événements arrivent du plus récent au plus ancien : on s'arrête au premier antérieur au point de reprise. */
+    private boolean readAdminEvents(String dateFrom, long sinceMillis, int maxEvents, List<KeycloakChangeEvent> out) {
+        int first = 0;
+        while (true) {
+            List<AdminEventRepresentation> page = keycloakService.getAdminEvents(dateFrom, first, PAGE_SIZE);
+            for (AdminEventRepresentation e : page) {
+                if (e.getTime() < sinceMillis) return true;
+                KeycloakChangeEvent change = toChange(e);
+                if (change != null) out.add(change);
+                if (out.size() > maxEvents) return false;
+            }
+            if (page.size() < PAGE_SIZE) return true;
+            first += PAGE_SIZE;
+        }
+    }
+
+    private boolean readUserEvents(String dateFrom, long sinceMillis, int maxEvents, List<KeycloakChangeEvent> out) {
+        int first = 0;
+        while (true) {
+            List<EventRepresentation> page = keycloakService.getUserEvents(USER_EVENT_TYPES, dateFrom, first, PAGE_SIZE);
+            for (EventRepresentation e : page) {
+                if (e.getTime() < sinceMillis) return true;
+                if (e.getUserId() == null) continue;
+                KeycloakChangeEvent.Type type = "DELETE_ACCOUNT".equals(e.getType())
+                        ? KeycloakChangeEvent.Type.USER_DELETE
+                        : KeycloakChangeEvent.Type.USER_UPSERT;
+                out.add(new KeycloakChangeEvent(e.getTime(), type, e.getUserId(), e.getType()));
+                if (out.size() > maxEvents) return false;
+            }
+            if (page.size() < PAGE_SIZE) return true;
+            first += PAGE_SIZE;
+        }
+    }
+
+    /**
+     * users/{id} (DELETE = suppression), users/{id}/groups/{gid}, users/{id}/... → utilisateur ;
+     * groups/{id}, groups/{id}/children → groupe. Les autres ressources sont ignorées.
+     */
+    static KeycloakChangeEvent toChange(AdminEventRepresentation e) {
+        String path = e.getResourcePath();
+        if (path == null) return null;
+        String[] parts = path.split("/");
+        if (parts.length < 2) return null;
+
+        if ("users".equals(parts[0])) {
+            boolean deleted = parts.length == 2 && "DELETE".equals(e.getOperationType());
+            return new KeycloakChangeEvent(e.getTime(),
+                    deleted ? KeycloakChangeEvent.Type.USER_DELETE : KeycloakChangeEvent.Type.USER_UPSERT,
+                    parts[1], path);
+        }
+        if ("groups".equals(parts[0])) {
+            return new KeycloakChangeEvent(e.getTime(), KeycloakChangeEvent.Type.GROUP_CHANGE, parts[1], path);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,261 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientResponseFilter;
+import jakarta.ws.rs.client.Entity;
+import jakarta.ws.rs.core.Form;
+import jakarta.ws.rs.core.HttpHeaders;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import org.keycloak.OAuth2Constants;
+import org.keycloak.representations.AccessTokenResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jeton d'accès du client d'administration Keycloak, partagé par tous les appels.
+ * <p>
+ * Le jeton est renouvelé en arrière-plan avant son expiration ({@code keycloak.admin.token.refresh-ahead-ms}) :
+ * les requêtes ne paient plus l'aller-retour vers l'endpoint token. Seul un appel sans jeton valide
+ * (démarrage, Keycloak injoignable pendant toute la marge) attend, et un seul appel part pour tous.
+ * Un échec est renvoyé tel quel aux appelants suivants pendant {@code keycloak.admin.token.retry-ms} :
+ * Keycloak injoignable ne reçoit pas une demande de jeton par thread en attente.
+ * <p>
+ * Grants : {@code client_credentials} (client confidentiel, {@code keycloak.admin.client-secret})
+ * ou {@code password} ({@code keycloak.admin.username/password}) ; le refresh token est utilisé s'il y en a un.
+ * Métriques : {@code keycloak.admin.token.refresh} (timer, grant / outcome) et {@code keycloak.admin.token.expires-in}.
+ */
+@Component
+public class AdminTokenManager {
+
+    // Un jeton à moins de cette durée de son expiration n'est plus servi
+    private static final Duration EXPIRY_SKEW = Duration.ofSeconds(5);
+
+    private final Client client;
+    private final MeterRegistry meterRegistry;
+    private final String tokenUrl;
+    private final String grantType;
+    private final String clientId;
+    private final String clientSecret;
+    private final String username;
+    private final String password;
+    private final Duration refreshAhead;
+    private final Duration retryDelay;
+
+    private final Object fetchLock = new Object();
+    private final ScheduledExecutorService refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "keycloak-admin-token");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Token token;
+    private volatile Failure lastFailure;
+    private ScheduledFuture<?> nextRefresh;
+
+    private record Failure(RuntimeException error, Instant at) {
+    }
+
+    private record Token(String accessToken, Instant expiresAt, String refreshToken, Instant refreshExpiresAt) {
+
+        boolean isUsable(Instant now) {
+            return now.plus(EXPIRY_SKEW).isBefore(expiresAt);
+        }
+
+        boolean canRefresh(Instant now) {
+            return refreshToken != null && (refreshExpiresAt == null || now.plus(EXPIRY_SKEW).isBefore(refreshExpiresAt));
+        }
+    }
+
+    public AdminTokenManager(KeycloakHttpTransport transport, MeterRegistry meterRegistry,
+                             @Value("${keycloak.auth-server-url}") String serverUrl,
+                             @Value("${keycloak.admin.realm}") String adminRealm,
+                             @Value("${keycloak.admin.grant-type:password}") String grantType,
+                             @Value("${keycloak.admin.client-id}") String clientId,
+                             @Value("${keycloak.admin.client-secret:}") String clientSecret,
+                             @Value("${keycloak.admin.username:}") String username,
+                             @Value("${keycloak.admin.password:}") String password,
+                             @Value("${keycloak.admin.token.refresh-ahead-ms:15000}") long refreshAheadMs,
+                             @Value("${keycloak.admin.token.retry-ms:5000}") long retryMs) {
+        this.client = transport.newClient();
+        this.meterRegistry = meterRegistry;
+        this.tokenUrl = serverUrl.replaceAll("/+$", "") + "/realms/" + adminRealm + "/protocol/openid-connect/token";
+        this.grantType = grantType;
+        this.clientId = clientId;
+        this.clientSecret = clientSecret;
+        this.username = username;
+        this.password = password;
+        this.refreshAhead = Duration.ofMillis(refreshAheadMs);
+        this.retryDelay = Duration.ofMillis(retryMs);
+        if (!OAuth2Constants.CLIENT_CREDENTIALS.equals(grantType) && !OAuth2Constants.PASSWORD.equals(grantType)) {
+            throw new IllegalStateException("❌ keycloak.admin.grant-type doit valoir client_credentials ou password : " + grantType);
+        }
+
+        Gauge.builder("keycloak.admin.token.expires-in", this, AdminTokenManager::expiresInSeconds)
+                .description("Secondes avant l'expiration du jeton admin Keycloak courant")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    /** Premier jeton demandé en tâche de fond : le démarrage n'attend pas Keycloak. */
+    @EventListener(ApplicationStartedEvent.class)
+    public void start() {
+        schedule(Duration.ZERO);
+    }
+
+    /** Jeton valide ; n'attend que si aucun jeton utilisable n'est disponible. */
+    public String getAccessToken() {
+        Token t = token;
+        if (t != null && t.isUsable(Instant.now())) return t.accessToken();
+        synchronized (fetchLock) {
+            t = token;
+            if (t != null && t.isUsable(Instant.now())) return t.accessToken();
+            Failure failure = lastFailure;
+            if (failure != null && Instant.now().isBefore(failure.at().plus(retryDelay))) throw failure.error();
+            return fetch().accessToken();
+        }
+    }
+
+    /** Keycloak a refusé ce jeton (401 : session admin perdue, redémarrage) : le prochain appel en redemande un. */
+    public void invalidate(String rejectedToken) {
+        synchronized (fetchLock) {
+            Token t = token;
+            if (t != null && t.accessToken().equals(rejectedToken)) token = null;
+        }
+    }
+
+    /** Filtre du client d'administration : un 401 sur l'API admin invalide le jeton utilisé. */
+    public ClientResponseFilter invalidateOnUnauthorized() {
+        return (request, response) -> {
+            if (response.getStatus() != Response.Status.UNAUTHORIZED.getStatusCode()) return;
+            String authorization = request.getHeaderString(HttpHeaders.AUTHORIZATION);
+            if (authorization != null && authorization.startsWith("Bearer ")) {
+                invalidate(authorization.substring("Bearer ".length()));
+            }
+        };
+    }
+
+    // 🔹 Appelé sous fetchLock : un seul appel à l'endpoint token à la fois, pour tous les threads
+    private Token fetch() {
+        Instant now = Instant.now();
+        Token current = token;
+        Token next = null;
+        if (current != null && current.canRefresh(now)) {
+            try {
+                next = request(OAuth2Constants.REFRESH_TOKEN, refreshTokenForm(current.refreshToken()));
+            } catch (RuntimeException e) {
+                // Session expirée côté Keycloak : on repart des identifiants
+                System.out.println("⚠️ Refresh du jeton admin Keycloak refusé, nouvelle authentification : " + e.getMessage());
+            }
+        }
+        if (next == null) {
+            try {
+                next = request(grantType, credentialsForm());
+            } catch (RuntimeException e) {
+                lastFailure = new Failure(e, Instant.now());
+                throw e;
+            }
+        }
+        token = next;
+        lastFailure = null;
+        Duration lifetime = Duration.between(now, next.expiresAt());
+        Duration ahead = refreshAhead.compareTo(lifetime.dividedBy(2)) < 0 ? refreshAhead : lifetime.dividedBy(2);
+        schedule(lifetime.minus(ahead));
+        return next;
+    }
+
+    private Token request(String grant, Form form) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        Response response = null;
+        try {
+            response = client.target(tokenUrl).request(MediaType.APPLICATION_JSON_TYPE).post(Entity.form(form));
+            if (response.getStatus() != Response.Status.OK.getStatusCode()) {
+                throw new IllegalStateException("Endpoint token Keycloak : HTTP " + response.getStatus());
+            }
+            AccessTokenResponse body = response.readEntity(AccessTokenResponse.class);
+            Instant now = Instant.now();
+            Token t = new Token(body.getToken(), now.plusSeconds(body.getExpiresIn()), body.getRefreshToken(),
+                    body.getRefreshExpiresIn() > 0 ? now.plusSeconds(body.getRefreshExpiresIn()) : null);
+            outcome = "success";
+            return t;
+        } finally {
+            if (response != null) response.close();
+            sample.stop(Timer.builder("keycloak.admin.token.refresh")
+                    .description("Obtentions du jeton admin Keycloak")
+                    .tag("grant", grant)
+                    .tag("outcome", outcome)
+                    .register(meterRegistry));
+        }
+    }
+
+    private Form credentialsForm() {
+        Form form = new Form()
+                .param(OAuth2Constants.GRANT_TYPE, grantType)
+                .param(OAuth2Constants.CLIENT_ID, clientId);
+        if (!clientSecret.isBlank()) form.param(OAuth2Constants.CLIENT_SECRET, clientSecret);
+        if (OAuth2Constants.PASSWORD.equals(grantType)) {
+            form.param(OAuth2Constants.USERNAME, username).param(OAuth2Constants.PASSWORD, password);
+        }
+        return form;
+    }
+
+    private Form refreshTokenForm(String refreshToken) {
+        Form form = new Form()
+                .param(OAuth2Constants.GRANT_TYPE, OAuth2Constants.REFRESH_TOKEN)
+                .param(OAuth2Constants.CLIENT_ID, clientId)
+                .param(OAuth2Constants.REFRESH_TOKEN, refreshToken);
+        if (!clientSecret.isBlank()) form.param(OAuth2Constants.CLIENT_SECRET, clientSecret);
+        return form;
+    }
+
+    private void schedule(Duration delay) {
+        synchronized (fetchLock) {
+            if (nextRefresh != null) nextRefresh.cancel(false);
+            nextRefresh = refresher.schedule(this::refreshInBackground, Math.max(0, delay.toMillis()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // Délai avant le prochain renouvellement planifié (tests)
+    Duration nextRefreshDelay() {
+        synchronized (fetchLock) {
+            return nextRefresh == null ? null : Duration.ofMillis(nextRefresh.getDelay(TimeUnit.MILLISECONDS));
+        }
+    }
+
+    private void refreshInBackground() {
+        try {
+            synchronized (fetchLock) {
+                fetch();
+            }
+        } catch (Exception e) {
+            System.out.println("⚠️ Renouvellement du jeton admin Keycloak échoué, nouvel essai dans "
+                    + retryDelay.toMillis() + " ms : " + e.getMessage());
+            schedule(retryDelay);
+        }
+    }
+
+    private double expiresInSeconds() {
+        Token t = token;
+        return t == null ? 0 : Math.max(0, Duration.between(Instant.now(), t.expiresAt()).toSeconds());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refresher.shutdownNow();
+        client.close();
+    }
+}
@@ -0,0 +1,182 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.Groupe;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Repository.GroupeRepository;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+
+/**
+ * Recopie par lots des utilisateurs Keycloak dans la table {@code utilisateurs}.
+ * <p>
+ * Par lot : une requête {@code IN} pour retrouver les lignes existantes, puis un batch JDBC d'insertions et un
+ * batch de mises à jour, dans une seule transaction. Les groupes sont résolus depuis une table en mémoire
+ * chargée une fois ; les lignes identiques à Keycloak ne sont pas réécrites.
+ * Même résultat que {@link KeycloakService#syncUserToLocalDatabase} (premier groupe, attributs
+ * phoneNumber / address conservés quand Keycloak n'en renvoie aucun).
+ */
+@Component
+public class BatchedSyncWriter {
+
+    private static final String SELECT_EXISTING =
+            "select id, keycloak_id, username, email, first_name, last_name, phone_number, address, groupe_id"
+                    + " from utilisateurs where keycloak_id in (:ids)";
+    private static final String INSERT =
+            "insert into utilisateurs (keycloak_id, username, email, first_name, last_name, phone_number, address, groupe_id)"
+                    + " values (:keycloakId, :username, :email, :firstName, :lastName, :phoneNumber, :address, :groupeId)";
+    private static final String UPDATE =
+            "update utilisateurs set username = :username, email = :email, first_name = :firstName,"
+                    + " last_name = :lastName, phone_number = :phoneNumber, address = :address, groupe_id = :groupeId"
+                    + " where id = :id";
+
+    private final NamedParameterJdbcTemplate jdbc;
+    private final TransactionTemplate transactionTemplate;
+    private final GroupeRepository groupeRepository;
+
+    @Value("${keycloak.sync.batch-size:500}")
+    private int batchSize;
+
+    public BatchedSyncWriter(NamedParameterJdbcTemplate jdbc, TransactionTemplate transactionTemplate,
+                             GroupeRepository groupeRepository) {
+        this.jdbc = jdbc;
+        this.transactionTemplate = transactionTemplate;
+        this.groupeRepository = groupeRepository;
+    }
+
+    public record WriteStats(int inserted, int updated, int unchanged, long elapsedMs) {
+        public int total() {
+            return inserted + updated + unchanged;
+        }
+
+        public double rowsPerSecond() {
+            return elapsedMs == 0 ? total() : total() * 1000.0 / elapsedMs;
+        }
+    }
+
+    /** {@code onChunkWritten} reçoit le nombre d'utilisateurs traités par lot (suivi de progression). */
+    public WriteStats write(List<UserRepresentation> kcUsers, Map<String, List<GroupRepresentation>> groupsByUser,
+                            IntConsumer onChunkWritten) {
+        long start = System.nanoTime();
+        Map<String, Long> groupeIds = resolveGroupes(kcUsers, groupsByUser);
+
+        int[] counts = new int[3];
+        int size = Math.max(1, batchSize);
+        for (int from = 0; from < kcUsers.size(); from += size) {
+            List<UserRepresentation> chunk = kcUsers.subList(from, Math.min(from + size, kcUsers.size()));
+            int[] chunkCounts = transactionTemplate.execute(status -> writeChunk(chunk, groupsByUser, groupeIds));
+            for (int i = 0; i < counts.length; i++) counts[i] += chunkCounts[i];
+            onChunkWritten.accept(chunk.size());
+        }
+        return new WriteStats(counts[0], counts[1], counts[2], (System.nanoTime() - start) / 1_000_000);
+    }
+
+    /** [insérés, mis à jour, inchangés] */
+    private int[] writeChunk(List<UserRepresentation> chunk, Map<String, List<GroupRepresentation>> groupsByUser,
+                             Map<String, Long> groupeIds) {
+        Map<String, LocalRow> existing = new HashMap<>();
+        List<String> ids = chunk.stream().map(UserRepresentation::getId).toList();
+        jdbc.query(SELECT_EXISTING, Map.of("ids", ids), rs -> {
+            existing.put(rs.getString("keycloak_id"), new LocalRow(
+                    rs.getLong("id"), rs.getString("username"), rs.getString("email"),
+                    rs.getString("first_name"), rs.getString("last_name"),
+                    rs.getString("phone_number"), rs.getString("address"),
+                    rs.getObject("groupe_id", Long.class)));
+        });
+
+        List<MapSqlParameterSource> inserts = new ArrayList<>();
+        List<MapSqlParameterSource> updates = new ArrayList<>();
+        int unchanged = 0;
+        for (UserRepresentation kcUser : chunk) {
+            LocalRow current = existing.get(kcUser.getId());
+            LocalRow target = toRow(kcUser, current,
+                    groupsByUser.getOrDefault(kcUser.getId(), Collections.emptyList()), groupeIds);
+            if (current == null) {
+                inserts.add(params(kcUser.getId(), target));
+            } else if (!target.equals(current)) {
+                updates.add(params(kcUser.getId(), target));
+            } else {
+                unchanged++;
+            }
+        }
+
+        if (!inserts.isEmpty()) jdbc.batchUpdate(INSERT, inserts.toArray(MapSqlParameterSource[]::new));
+        if (!updates.isEmpty()) jdbc.batchUpdate(UPDATE, updates.toArray(MapSqlParameterSource[]::new));
+        return new int[]{inserts.size(), updates.size(), unchanged};
+    }
+
+    private LocalRow toRow(UserRepresentation kcUser, LocalRow current, List<GroupRepresentation> groups,
+                           Map<String, Long> groupeIds) {
+        String phoneNumber = current != null ? current.phoneNumber() : null;
+        String address = current != null ? current.address() : null;
+        if (kcUser.getAttributes() != null) {
+            phoneNumber = kcUser.getAttributes().getOrDefault("phoneNumber", List.of("")).get(0);
+            address = kcUser.getAttributes().getOrDefault("address", List.of("")).get(0);
+        }
+        Long groupeId = groups.isEmpty() ? null : groupeIds.get(groupLabel(groups.get(0)));
+        return new LocalRow(current != null ? current.id() : null, kcUser.getUsername(), kcUser.getEmail(),
+                kcUser.getFirstName(), kcUser.getLastName(), phoneNumber, address, groupeId);
+    }
+
+    private MapSqlParameterSource params(String keycloakId, LocalRow row) {
+        return new MapSqlParameterSource()
+                .addValue("id", row.id())
+                .addValue("keycloakId", keycloakId)
+                .addValue("username", row.username())
+                .addValue("email", row.email())
+                .addValue("firstName", row.firstName())
+                .addValue("lastName", row.lastName())
+                .addValue("phoneNumber", row.phoneNumber())
+                .addValue("address", row.address())
+                .addValue("groupeId", row.groupeId());
+    }
+
+    /**
+     * Label → id des groupes locaux, en créant ceux qui manquent (peu nombreux : un par groupe Keycloak utilisé).
+     */
+    private Map<String, Long> resolveGroupes(List<UserRepresentation> kcUsers,
+                                             Map<String, List<GroupRepresentation>> groupsByUser) {
+        Map<String, Groupe> byLabel = new HashMap<>();
+        for (Groupe g : groupeRepository.findAll()) {
+            byLabel.putIfAbsent(g.getLabel(), g);
+        }
+
+        Map<String, Long> ids = new HashMap<>();
+        for (UserRepresentation kcUser : kcUsers) {
+            List<GroupRepresentation> groups = groupsByUser.getOrDefault(kcUser.getId(), Collections.emptyList());
+            if (groups.isEmpty()) continue;
+            GroupRepresentation kcGroup = groups.get(0);
+            String label = groupLabel(kcGroup);
+            if (ids.containsKey(label)) continue;
+
+            String code = KeycloakService.getAttributeValue(kcGroup, "code", kcGroup.getId());
+            Groupe groupe = byLabel.get(label);
+            if (groupe == null) {
+                groupe = new Groupe();
+                groupe.setLabel(label);
+                groupe.setCode(code);
+                groupe = groupeRepository.save(groupe);
+            } else if (groupe.getCode() == null || groupe.getCode().isBlank()) {
+                groupe.setCode(code);
+                groupe = groupeRepository.save(groupe);
+            }
+            ids.put(label, groupe.getId());
+        }
+        return ids;
+    }
+
+    private static String groupLabel(GroupRepresentation kcGroup) {
+        return KeycloakService.getAttributeValue(kcGroup, "nom", kcGroup.getName());
+    }
+
+    private record LocalRow(Long id, String username, String email, String firstName, String lastName,
+                            String phoneNumber, String address, Long groupeId) {
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.Utilisateur;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Service.ImportRowReader.ImportRow;
+import jakarta.annotation.PreDestroy;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Import en masse d'utilisateurs dans Keycloak.
+ * <p>
+ * Toutes les lignes sont d'abord validées : champs obligatoires, email, région connue de l'index des groupes,
+ * doublons dans le fichier et utilisateurs déjà présents dans l'annuaire. Seules les lignes valides sont créées,
+ * en parallèle borné, à raison d'un appel Keycloak par utilisateur (région affectée dans la même requête,
+ * doublon détecté par le 409 de Keycloak au lieu de deux recherches préalables).
+ * <p>
+ * L'import réel s'exécute en tâche de fond, suivi par identifiant de tâche comme la réaffectation de région ;
+ * une simple validation ({@code dryRun}) répond directement, elle ne fait aucun appel d'écriture.
+ */
+@Service
+public class BulkImportService {
+
+    private static final int MAX_KEPT_JOBS = 100;
+    private static final Pattern EMAIL = Pattern.compile("^[^@\\s]+@[^@\\s]+\\.[^@\\s]+$");
+
+    public enum RowStatus { CREE, VALIDE, EXISTANT, DOUBLON, ERREUR }
+
+    public enum JobStatus { EN_COURS, TERMINEE, ECHEC }
+
+    public record RowResult(int ligne, String username, RowStatus statut, String keycloakId, String erreur) {
+    }
+
+    public record ImportReport(int total, Map<RowStatus, Integer> parStatut, long dureeMs, long dureeCreationMs,
+                               double utilisateursParSeconde, List<RowResult> lignes) {
+    }
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final FanOutExecutor creationPipeline;
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "keycloak-import-job");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, ImportJob> jobs = new ConcurrentHashMap<>();
+
+    public BulkImportService(KeycloakService keycloakService, UserDirectory userDirectory,
+                             @Value("${keycloak.import.concurrency:4}") int concurrency,
+                             @Value("${keycloak.import.call-timeout-ms:30000}") long callTimeoutMs,
+                             @Value("${keycloak.import.overall-timeout-ms:7200000}") long overallTimeoutMs) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.creationPipeline = new FanOutExecutor(concurrency, Duration.ofMillis(callTimeoutMs),
+                Duration.ofMillis(overallTimeoutMs), "keycloak-import");
+    }
+
+    /** Validation seule, aucune création : rapport immédiat. */
+    public ImportReport validateUsers(List<ImportRow> rows) {
+        return KeycloakPriority.with(KeycloakPriority.MASSE, () -> importRows(rows, true, null));
+    }
+
+    /** Lance l'import en tâche de fond ; avancement et rapport via {@link #getJob(String)}. */
+    public ImportJob startImport(List<ImportRow> rows) {
+        if (rows.isEmpty()) throw new IllegalArgumentException("Le fichier ne contient aucune ligne");
+        ImportJob job = new ImportJob(UUID.randomUUID().toString(), rows.size());
+        jobs.put(job.getId(), job);
+        evictOldJobs();
+        // Appels Keycloak de l'import en priorité basse : les requêtes interactives passent devant
+        jobRunner.submit(() -> KeycloakPriority.run(KeycloakPriority.MASSE, () -> run(job, rows)));
+        return job;
+    }
+
+    public Optional<ImportJob> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private void run(ImportJob job, List<ImportRow> rows) {
+        try {
+            job.finish(JobStatus.TERMINEE, importRows(rows, false, job), null);
+        } catch (Exception e) {
+            System.out.println("⚠️ Import utilisateurs " + job.getId() + " interrompu : " + e.getMessage());
+            job.finish(JobStatus.ECHEC, null, e.getMessage());
+        }
+    }
+
+    private ImportReport importRows(List<ImportRow> rows, boolean dryRun, ImportJob job) {
+        long start = System.nanoTime();
+        RowResult[] results = new RowResult[rows.size()];
+        Map<Integer, UserRepresentation> toCreate = new LinkedHashMap<>();
+
+        // 🔹 1. Validation de toutes les lignes avant le premier appel Keycloak
+        Set<String> seenUsernames = new HashSet<>();
+        Set<String> seenEmails = new HashSet<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ImportRow row = rows.get(i);
+            String error = validate(row);
+            if (error != null) {
+                results[i] = result(row, RowStatus.ERREUR, null, error);
+                continue;
+            }
+            String usernameKey = key(row.username());
+            String emailKey = key(row.email());
+            if (seenUsernames.contains(usernameKey) || seenEmails.contains(emailKey)) {
+                results[i] = result(row, RowStatus.DOUBLON, null, "Username ou email déjà présent plus haut dans le fichier");
+                continue;
+            }
+            seenUsernames.add(usernameKey);
+            seenEmails.add(emailKey);
+            Optional<UserRepresentation> existing = findExisting(row);
+            if (existing.isPresent()) {
+                results[i] = result(row, RowStatus.EXISTANT, existing.get().getId(), "Utilisateur déjà présent");
+                continue;
+            }
+
+            Optional<GroupRepresentation> region = Optional.empty();
+            if (row.region() != null) {
+                region = keycloakService.findGroupByLabel(row.region());
+                if (region.isEmpty()) {
+                    results[i] = result(row, RowStatus.ERREUR, null, "Région inconnue : " + row.region());
+                    continue;
+                }
+            }
+
+            UserRepresentation user = keycloakService.buildNewUserRepresentation(toUtilisateur(row));
+            region.ifPresent(g -> user.setGroups(List.of(groupPath(g))));
+            toCreate.put(i, user);
+            results[i] = result(row, RowStatus.VALIDE, null, null);
+        }
+        if (job != null) job.toCreate = toCreate.size();
+
+        // 🔹 2. Création en parallèle borné
+        long creationStart = System.nanoTime();
+        if (!dryRun && !toCreate.isEmpty()) {
+            FanOutExecutor.Result<Integer, Optional<String>> created =
+                    creationPipeline.invokeAll(toCreate.keySet(), i -> {
+                        Optional<String> id = keycloakService.createPreparedUser(toCreate.get(i));
+                        if (job != null) job.created.incrementAndGet();
+                        return id;
+                    });
+            created.values().forEach((i, id) -> results[i] = id
+                    .map(kcId -> result(rows.get(i), RowStatus.CREE, kcId, null))
+                    .orElseGet(() -> result(rows.get(i), RowStatus.EXISTANT, null, "Username ou email déjà utilisé dans Keycloak")));
+            created.failures().forEach((i, error) -> results[i] = result(rows.get(i), RowStatus.ERREUR, null, error));
+        }
+        long end = System.nanoTime();
+
+        Map<RowStatus, Integer> byStatus = new EnumMap<>(RowStatus.class);
+        for (RowResult r : results) byStatus.merge(r.statut(), 1, Integer::sum);
+        long creationMs = (end - creationStart) / 1_000_000;
+        int createdCount = byStatus.getOrDefault(RowStatus.CREE, 0);
+        double perSecond = creationMs == 0 ? createdCount : createdCount * 1000.0 / creationMs;
+
+        System.out.printf("[INFO] Import utilisateurs : %d lignes, %s, %.1f créations/s%n",
+                rows.size(), byStatus, perSecond);
+        return new ImportReport(rows.size(), byStatus, (end - start) / 1_000_000, creationMs,
+                Math.round(perSecond * 10) / 10.0, Arrays.asList(results));
+    }
+
+    private String validate(ImportRow row) {
+        if (row.error() != null) return row.error();
+        try {
+            keycloakService.validateNewUser(toUtilisateur(row));
+        } catch (RuntimeException e) {
+            return e.getMessage();
+        }
+        if (!EMAIL.matcher(row.email()).matches()) return "Adresse email invalide : " + row.email();
+        return null;
+    }
+
+    /** Présence dans l'annuaire local (s'il est chargé) ; Keycloak tranche de toute façon à la création. */
+    private Optional<UserRepresentation> findExisting(ImportRow row) {
+        if (!userDirectory.isReady()) return Optional.empty();
+        return userDirectory.findByUsername(row.username()).or(() -> userDirectory.findByEmail(row.email()));
+    }
+
+    private static Utilisateur toUtilisateur(ImportRow row) {
+        Utilisateur u = new Utilisateur();
+        u.setUsername(row.username());
+        u.setEmail(row.email());
+        u.setFirstName(row.firstName());
+        u.setLastName(row.lastName());
+        u.setPhoneNumber(row.phoneNumber());
+        u.setAddress(row.address());
+        u.setPassword(row.password());
+        return u;
+    }
+
+    private static String groupPath(GroupRepresentation g) {
+        return g.getPath() != null ? g.getPath() : "/" + g.getName();
+    }
+
+    private static String key(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static RowResult result(ImportRow row, RowStatus status, String keycloakId, String error) {
+        return new RowResult(row.line(), row.username(), status, keycloakId, error);
+    }
+
+    private void evictOldJobs() {
+        if (jobs.size() <= MAX_KEPT_JOBS) return;
+        jobs.values().stream()
+                .filter(j -> j.getStatus() != JobStatus.EN_COURS)
+                .sorted(Comparator.comparing(ImportJob::getStartedAt))
+                .limit(jobs.size() - MAX_KEPT_JOBS)
+                .forEach(j -> jobs.remove(j.getId()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        creationPipeline.shutdown();
+    }
+
+    /** Avancement d'un import ; sérialisé tel quel par GET /api/utilisateurs/import/{jobId}. */
+    public static class ImportJob {
+        private final String id;
+        private final int total;
+        private final Instant startedAt = Instant.now();
+        private final AtomicInteger created = new AtomicInteger();
+        private volatile int toCreate = -1;
+        private volatile JobStatus status = JobStatus.EN_COURS;
+        private volatile Instant finishedAt;
+        private volatile ImportReport report;
+        private volatile String error;
+
+        ImportJob(String id, int total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        void finish(JobStatus status, ImportReport report, String error) {
+            this.report = report;
+            this.error = error;
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public JobStatus getStatus() {
+            return status;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /** Lignes valides à créer ; -1 tant que la validation n'est pas terminée. */
+        public int getToCreate() {
+            return toCreate;
+        }
+
+        /** Appels de création terminés (créés ou déjà présents dans Keycloak). */
+        public int getCreated() {
+            return created.get();
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        /** Rapport ligne par ligne, disponible une fois la tâche terminée. */
+        public ImportReport getReport() {
+            return report;
+        }
+
+        public String getError() {
+            return error;
+        }
+    }
+}
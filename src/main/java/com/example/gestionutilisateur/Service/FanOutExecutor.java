@@ -0,0 +1,139 @@
+package com.example.gestionutilisateur.Service;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Exécute en parallèle un appel Keycloak par clé (ex. membres de chaque groupe), sur un pool dédié.
+ * <p>
+ * Au plus {@code keycloak.fanout.concurrency} appels en vol : un appel dépassant son délai n'est plus attendu
+ * mais garde sa place jusqu'à sa fin réelle, Keycloak ne voit donc jamais plus d'appels simultanés.
+ * Les clés en échec, hors délai ou non lancées avant l'échéance globale sont rendues à part :
+ * l'appelant décide comment présenter un résultat partiel.
+ */
+@Component
+public class FanOutExecutor {
+
+    private final int concurrency;
+    private final Semaphore permits;
+    private final ExecutorService pool;
+    private final Duration callTimeout;
+    private final Duration overallTimeout;
+
+    @Autowired
+    public FanOutExecutor(@Value("${keycloak.fanout.concurrency:4}") int concurrency,
+                          @Value("${keycloak.fanout.call-timeout-ms:5000}") long callTimeoutMs,
+                          @Value("${keycloak.fanout.overall-timeout-ms:20000}") long overallTimeoutMs) {
+        this(concurrency, Duration.ofMillis(callTimeoutMs), Duration.ofMillis(overallTimeoutMs), "keycloak-fanout");
+    }
+
+    /** Pool distinct (ex. import en masse), à fermer par son propriétaire via {@link #shutdown()}. */
+    public FanOutExecutor(int concurrency, Duration callTimeout, Duration overallTimeout, String threadPrefix) {
+        this.concurrency = Math.max(1, concurrency);
+        this.callTimeout = callTimeout;
+        this.overallTimeout = overallTimeout;
+        this.permits = new Semaphore(this.concurrency);
+        AtomicInteger threadCount = new AtomicInteger();
+        this.pool = Executors.newFixedThreadPool(this.concurrency, r -> {
+            Thread t = new Thread(r, threadPrefix + "-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public record Result<K, V>(Map<K, V> values, Map<K, String> failures) {
+        public boolean isComplete() {
+            return failures.isEmpty();
+        }
+    }
+
+    public <K, V> Result<K, V> invokeAll(Collection<K> keys, Function<K, V> call) {
+        return invokeAll(keys, call, callTimeout, overallTimeout);
+    }
+
+    public <K, V> Result<K, V> invokeAll(Collection<K> keys, Function<K, V> call,
+                                         Duration callTimeout, Duration overallTimeout) {
+        long deadline = System.nanoTime() + overallTimeout.toNanos();
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        Map<K, Long> startedAt = new HashMap<>();
+        Map<K, String> failures = new LinkedHashMap<>();
+        // Les appels faits dans le pool restent comptés dans la requête appelante, avec sa priorité
+        RemoteCallTrace trace = RemoteCallTrace.current();
+        KeycloakPriority priority = KeycloakPriority.current();
+
+        for (K key : keys) {
+            // 🔹 Le lancement attend une place libre : le délai d'un appel court à partir de son départ réel
+            if (!acquire(deadline)) {
+                failures.put(key, "non lancé avant l'échéance globale");
+                continue;
+            }
+            try {
+                CompletableFuture<V> future = new CompletableFuture<>();
+                startedAt.put(key, System.nanoTime());
+                pool.execute(() -> {
+                    // La place n'est rendue qu'à la fin réelle de l'appel, même abandonné par l'appelant
+                    try {
+                        future.complete(KeycloakPriority.with(priority,
+                                () -> RemoteCallTrace.within(trace, () -> call.apply(key))));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    } finally {
+                        permits.release();
+                    }
+                });
+                futures.put(key, future);
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                failures.put(key, "refusé : " + e.getMessage());
+            }
+        }
+
+        Map<K, V> values = new LinkedHashMap<>();
+        for (Map.Entry<K, CompletableFuture<V>> entry : futures.entrySet()) {
+            K key = entry.getKey();
+            long callDeadline = Math.min(deadline, startedAt.get(key) + callTimeout.toNanos());
+            try {
+                values.put(key, entry.getValue().get(Math.max(0, callDeadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+            } catch (TimeoutException e) {
+                failures.put(key, "délai dépassé");
+            } catch (ExecutionException e) {
+                failures.put(key, String.valueOf(e.getCause().getMessage()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.put(key, "interrompu");
+                break;
+            }
+        }
+        // Clés non attendues après une interruption
+        futures.keySet().forEach(k -> {
+            if (!values.containsKey(k)) failures.putIfAbsent(k, "interrompu");
+        });
+        return new Result<>(values, failures);
+    }
+
+    private boolean acquire(long deadline) {
+        try {
+            return permits.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,150 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import jakarta.annotation.PreDestroy;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronisation complète Keycloak → annuaire et base locale, en une seule lecture du realm.
+ * <p>
+ * La première synchronisation est lancée en tâche de fond une fois le contexte démarré (réessayée jusqu'à
+ * réussite) : le démarrage ne dépend plus de la taille du realm ni de la disponibilité de Keycloak.
+ * En attendant, les endpoints lisent directement Keycloak et la sonde de disponibilité reste à OUT_OF_SERVICE.
+ */
+@Service
+public class FullSyncService {
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final BatchedSyncWriter batchedSyncWriter;
+    private final ReentrantLock runLock = new ReentrantLock();
+    private final ExecutorService initialSyncExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "keycloak-initial-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile SyncProgress progress = SyncProgress.pending();
+    private volatile boolean initialSyncCompleted;
+    private volatile Instant lastFullSyncStartedAt;
+
+    @Value("${keycloak.sync.initial.enabled:true}")
+    private boolean initialSyncEnabled;
+
+    @Value("${keycloak.sync.initial.retry-ms:30000}")
+    private long retryMs;
+
+    @Value("${keycloak.sync.initial.log-every:1000}")
+    private int logEvery;
+
+    // batch : BatchedSyncWriter (JDBC par lots) ; jpa : un findByKeycloakId + save par utilisateur
+    @Value("${keycloak.sync.writer:batch}")
+    private String writer;
+
+    public FullSyncService(KeycloakService keycloakService, UserDirectory userDirectory,
+                           BatchedSyncWriter batchedSyncWriter) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.batchedSyncWriter = batchedSyncWriter;
+    }
+
+    @EventListener(ApplicationStartedEvent.class)
+    public void startInitialSync() {
+        if (!initialSyncEnabled) {
+            initialSyncCompleted = true;
+            return;
+        }
+        initialSyncExecutor.submit(this::runInitialSync);
+    }
+
+    private void runInitialSync() {
+        while (!initialSyncCompleted) {
+            try {
+                KeycloakPriority.run(KeycloakPriority.ARRIERE_PLAN, this::run);
+                initialSyncCompleted = true;
+                System.out.println("✅ Synchronisation initiale Keycloak terminée : " + progress);
+            } catch (Exception e) {
+                System.out.println("⚠️ Synchronisation initiale Keycloak échouée, nouvel essai dans "
+                        + retryMs + " ms : " + e.getMessage());
+                try {
+                    Thread.sleep(retryMs);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Relit tout le realm, recharge l'annuaire puis recopie les utilisateurs dans la base locale. */
+    public void run() {
+        runLock.lock();
+        try {
+            SyncProgress p = SyncProgress.start();
+            progress = p;
+            try {
+                Map<String, List<GroupRepresentation>> groupsByUser = keycloakService.getAllUserGroups();
+                List<UserRepresentation> users = keycloakService.getAllUsers(groupsByUser);
+                p.usersLoaded(users.size());
+
+                // 🔹 L'annuaire sert les lectures dès que le realm est lu, sans attendre la recopie en base
+                userDirectory.load(users, groupsByUser);
+
+                if ("jpa".equalsIgnoreCase(writer)) {
+                    keycloakService.syncUsersToLocalDatabase(users, groupsByUser, () -> reportProgress(p, 1));
+                } else {
+                    BatchedSyncWriter.WriteStats stats =
+                            batchedSyncWriter.write(users, groupsByUser, count -> reportProgress(p, count));
+                    System.out.println("[INFO] Recopie par lots : " + stats.inserted() + " insérés, "
+                            + stats.updated() + " mis à jour, " + stats.unchanged() + " inchangés");
+                }
+                p.complete();
+                System.out.printf("[INFO] Synchronisation complète (writer=%s) : %d utilisateurs, %.0f lignes/s%n",
+                        writer, p.getProcessed(), p.getRowsPerSecond());
+                lastFullSyncStartedAt = p.getStartedAt();
+            } catch (RuntimeException e) {
+                p.fail(e);
+                throw e;
+            }
+        } finally {
+            runLock.unlock();
+        }
+    }
+
+    private void reportProgress(SyncProgress p, int count) {
+        int done = p.add(count);
+        if (logEvery > 0 && done / logEvery != (done - count) / logEvery) {
+            System.out.println("🔄 Synchronisation Keycloak -> base locale : " + p);
+        }
+    }
+
+    public SyncProgress getProgress() {
+        return progress;
+    }
+
+    public boolean isInitialSyncCompleted() {
+        return initialSyncCompleted;
+    }
+
+    /** Début de la dernière synchronisation complète réussie, null s'il n'y en a pas eu. */
+    public Instant getLastFullSyncStartedAt() {
+        return lastFullSyncStartedAt;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        initialSyncExecutor.shutdownNow();
+    }
+}
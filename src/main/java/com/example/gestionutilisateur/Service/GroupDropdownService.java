@@ -0,0 +1,71 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Contenu de /api/groupes/dropdown : entrées du cache de l'arbre des groupes, complétées par les membres
+ * (ou leur nombre) de chaque groupe.
+ * <p>
+ * Annuaire prêt : membres lus dans son index par groupe, sans appel Keycloak. Sinon : un appel par groupe,
+ * en parallèle via {@link FanOutExecutor} ; les groupes sans réponse sont marqués {@code incomplet}.
+ */
+@Service
+public class GroupDropdownService {
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final FanOutExecutor fanOutExecutor;
+
+    public GroupDropdownService(KeycloakService keycloakService, UserDirectory userDirectory,
+                                FanOutExecutor fanOutExecutor) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.fanOutExecutor = fanOutExecutor;
+    }
+
+    public record Dropdown(List<Map<String, Object>> groups, boolean partial) {
+    }
+
+    /** @param countsOnly nombre de membres ({@code nombreUtilisateurs}) au lieu de la liste des utilisateurs */
+    public Dropdown build(boolean countsOnly) {
+        List<Map<String, Object>> entries = keycloakService.getGroupDropdownEntries();
+        List<String> groupIds = entries.stream().map(e -> (String) e.get("keycloakId")).toList();
+
+        Map<String, Object> membersByGroup;
+        Map<String, String> failures;
+        if (userDirectory.isReady()) {
+            membersByGroup = new HashMap<>();
+            for (String id : groupIds) {
+                var members = userDirectory.getMembersOfGroup(id);
+                membersByGroup.put(id, countsOnly ? members.size() : KeycloakService.toGroupMemberRows(members));
+            }
+            failures = Map.of();
+        } else {
+            Function<String, Object> call = countsOnly
+                    ? keycloakService::countGroupMembers
+                    : keycloakService::getUsersOfGroup;
+            FanOutExecutor.Result<String, Object> result = fanOutExecutor.invokeAll(groupIds, call);
+            membersByGroup = result.values();
+            failures = result.failures();
+        }
+
+        String field = countsOnly ? "nombreUtilisateurs" : "utilisateurs";
+        List<Map<String, Object>> groups = new ArrayList<>(entries.size());
+        for (Map<String, Object> entry : entries) {
+            Map<String, Object> map = new HashMap<>(entry);
+            String id = (String) entry.get("keycloakId");
+            if (failures.containsKey(id)) {
+                map.put(field, countsOnly ? null : List.of());
+                map.put("incomplet", true);
+            } else {
+                map.put(field, membersByGroup.get(id));
+            }
+            groups.add(map);
+        }
+        return new Dropdown(groups, !failures.isEmpty());
+    }
+}
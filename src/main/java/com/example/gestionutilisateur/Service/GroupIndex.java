@@ -0,0 +1,81 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+
+import java.util.*;
+
+import static com.example.gestionutilisateur.KeycloakService.getAttributeValue;
+
+/**
+ * Index des groupes Keycloak (sous-groupes compris) par id, par nom sans casse et par attributs
+ * {@code nom} et {@code code}. En cas de doublon, le premier groupe rencontré dans l'ordre de l'arbre
+ * (parent avant ses sous-groupes) l'emporte, comme l'ancienne recherche récursive.
+ */
+public final class GroupIndex {
+
+    public static final GroupIndex EMPTY = new GroupIndex(List.of());
+
+    private final Map<String, GroupRepresentation> byId = new HashMap<>();
+    private final Map<String, GroupRepresentation> byName = new HashMap<>();
+    private final Map<String, GroupRepresentation> byNom = new HashMap<>();
+    private final Map<String, GroupRepresentation> byCode = new HashMap<>();
+
+    public GroupIndex(List<GroupRepresentation> roots) {
+        Deque<GroupRepresentation> pending = new ArrayDeque<>();
+        for (int i = roots.size() - 1; i >= 0; i--) pending.push(roots.get(i));
+        while (!pending.isEmpty()) {
+            GroupRepresentation g = pending.pop();
+            byId.putIfAbsent(g.getId(), g);
+            putIfPresent(byName, g.getName(), g);
+            putIfPresent(byNom, getAttributeValue(g, "nom", null), g);
+            putIfPresent(byCode, getAttributeValue(g, "code", null), g);
+
+            List<GroupRepresentation> children = g.getSubGroups();
+            if (children != null) {
+                for (int i = children.size() - 1; i >= 0; i--) pending.push(children.get(i));
+            }
+        }
+    }
+
+    private static void putIfPresent(Map<String, GroupRepresentation> map, String key, GroupRepresentation g) {
+        if (key != null && !key.isBlank()) map.putIfAbsent(key(key), g);
+    }
+
+    private static String key(String s) {
+        return s.trim().toLowerCase(Locale.ROOT);
+    }
+
+    public Optional<GroupRepresentation> byId(String id) {
+        return Optional.ofNullable(id == null ? null : byId.get(id));
+    }
+
+    /** Nom Keycloak du groupe, sans tenir compte de la casse. */
+    public Optional<GroupRepresentation> byName(String name) {
+        return lookup(byName, name);
+    }
+
+    public Optional<GroupRepresentation> byNom(String nom) {
+        return lookup(byNom, nom);
+    }
+
+    public Optional<GroupRepresentation> byCode(String code) {
+        return lookup(byCode, code);
+    }
+
+    /** Libellé saisi par l'utilisateur : nom Keycloak, puis attribut nom, puis code, puis id. */
+    public Optional<GroupRepresentation> findByLabel(String label) {
+        return byName(label)
+                .or(() -> byNom(label))
+                .or(() -> byCode(label))
+                .or(() -> byId(label));
+    }
+
+    public int size() {
+        return byId.size();
+    }
+
+    private static Optional<GroupRepresentation> lookup(Map<String, GroupRepresentation> map, String key) {
+        if (key == null || key.isBlank()) return Optional.empty();
+        return Optional.ofNullable(map.get(key(key)));
+    }
+}
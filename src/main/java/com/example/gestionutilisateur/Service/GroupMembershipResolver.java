@@ -0,0 +1,69 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.admin.client.resource.GroupResource;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.*;
+
+/**
+ * Construit la table utilisateur → groupes en parcourant une seule fois l'arbre des groupes
+ * et en lisant les membres de chaque groupe par pages.
+ * Le nombre d'appels Keycloak dépend du nombre de groupes et de pages, plus du nombre d'utilisateurs.
+ */
+public class GroupMembershipResolver {
+
+    private final int pageSize;
+    private final KeycloakCallRecorder calls;
+
+    public GroupMembershipResolver(int pageSize, KeycloakCallRecorder calls) {
+        if (pageSize <= 0) {
+            throw new IllegalArgumentException("La taille de page des membres doit être positive");
+        }
+        this.pageSize = pageSize;
+        this.calls = calls;
+    }
+
+    public Map<String, List<GroupRepresentation>> resolve(RealmResource realm, List<GroupRepresentation> roots) {
+        Map<String, List<GroupRepresentation>> groupsByUser = new HashMap<>();
+        if (roots == null || roots.isEmpty()) {
+            return groupsByUser;
+        }
+
+        Deque<GroupRepresentation> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            GroupRepresentation group = pending.pop();
+            collectMembers(realm.groups().group(group.getId()), group, groupsByUser);
+
+            if (group.getSubGroups() != null) {
+                group.getSubGroups().forEach(pending::push);
+            }
+        }
+
+        // 🔹 Même ordre que users().get(id).groups() : tri par nom de groupe
+        Comparator<GroupRepresentation> byName = Comparator.comparing(
+                GroupRepresentation::getName, Comparator.nullsLast(String.CASE_INSENSITIVE_ORDER));
+        groupsByUser.values().forEach(groups -> groups.sort(byName));
+        return groupsByUser;
+    }
+
+    private void collectMembers(GroupResource groupResource, GroupRepresentation group,
+                                Map<String, List<GroupRepresentation>> groupsByUser) {
+        int first = 0;
+        while (true) {
+            int offset = first;
+            List<UserRepresentation> page = calls.call("groups.members", () -> groupResource.members(offset, pageSize));
+            if (page == null || page.isEmpty()) {
+                return;
+            }
+            for (UserRepresentation member : page) {
+                groupsByUser.computeIfAbsent(member.getId(), id -> new ArrayList<>()).add(group);
+            }
+            if (page.size() < pageSize) {
+                return;
+            }
+            first += pageSize;
+        }
+    }
+}
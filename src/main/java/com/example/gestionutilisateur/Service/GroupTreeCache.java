@@ -0,0 +1,301 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.example.gestionutilisateur.KeycloakService.getAttributeValue;
+
+/**
+ * Arbre des groupes Keycloak en cache : instantané immuable, durée de vie limitée, rechargé en tâche de fond.
+ * <p>
+ * Les lecteurs ne bloquent jamais sur un rechargement : l'ancien instantané sert jusqu'au remplacement
+ * (seul le tout premier chargement est attendu). Les écritures faites par l'application (création,
+ * sous-groupe, modification) sont appliquées directement à l'instantané, sans relire l'arbre.
+ * Les arbres et DTO exposés sont partagés : ils ne doivent pas être modifiés par l'appelant.
+ */
+public class GroupTreeCache {
+
+    private final Supplier<List<GroupRepresentation>> loader;
+    private final Duration ttl;
+    private final Object firstLoadLock = new Object();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // Incrémenté à chaque correctif : un rechargement commencé avant ne doit pas l'écraser
+    private final AtomicLong writeVersion = new AtomicLong();
+    // Dernier rechargement demandé par un libellé inconnu (System.nanoTime) : au plus un par durée de vie
+    private final AtomicLong lastMissRefresh = new AtomicLong(System.nanoTime() - Long.MAX_VALUE / 2);
+    private final ExecutorService refresher = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "keycloak-group-tree-refresh");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile Snapshot snapshot;
+
+    public GroupTreeCache(Supplier<List<GroupRepresentation>> loader, Duration ttl) {
+        this.loader = loader;
+        this.ttl = ttl;
+    }
+
+    /** Instantané courant ; déclenche un rechargement en arrière-plan s'il a expiré. */
+    public Snapshot get() {
+        Snapshot s = snapshot;
+        if (s == null) {
+            synchronized (firstLoadLock) {
+                if (snapshot == null) reload();
+                return snapshot;
+            }
+        }
+        if (s.isExpired(ttl)) refreshAsync();
+        // Instant.EPOCH = invalidé, rechargement en cours : pas de date de données significative
+        if (!Instant.EPOCH.equals(s.loadedAt())) RemoteCallTrace.servedFrom(s.loadedAt());
+        return s;
+    }
+
+    /** Relit l'arbre immédiatement (appelant bloqué) et publie le résultat. */
+    public Snapshot reload() {
+        long version = writeVersion.get();
+        Snapshot next = Snapshot.build(loader.get(), Instant.now());
+        publish(next, version);
+        return next;
+    }
+
+    /** Force un rechargement au prochain accès, sans vider l'instantané courant. */
+    public void invalidate() {
+        Snapshot s = snapshot;
+        if (s != null) snapshot = s.withLoadedAt(Instant.EPOCH);
+    }
+
+    /**
+     * Un libellé ou un id est absent de l'instantané (groupe créé directement dans Keycloak) :
+     * rechargement en arrière-plan, au plus un par durée de vie quel que soit le nombre d'absents demandés.
+     */
+    public void refreshAfterMiss() {
+        long last = lastMissRefresh.get();
+        long now = System.nanoTime();
+        if (now - last < ttl.toNanos() || !lastMissRefresh.compareAndSet(last, now)) return;
+        refreshAsync();
+    }
+
+    private void refreshAsync() {
+        if (!refreshing.compareAndSet(false, true)) return;
+        refresher.submit(() -> {
+            try {
+                KeycloakPriority.run(KeycloakPriority.ARRIERE_PLAN, this::reload);
+            } catch (Exception e) {
+                System.out.println("⚠️ Rechargement de l'arbre des groupes échoué : " + e.getMessage());
+            } finally {
+                refreshing.set(false);
+            }
+        });
+    }
+
+    private synchronized void publish(Snapshot next, long versionAtLoadStart) {
+        if (writeVersion.get() != versionAtLoadStart && snapshot != null) {
+            // Un correctif a été appliqué pendant la lecture : on garde l'instantané corrigé, à relire plus tard
+            return;
+        }
+        snapshot = next;
+    }
+
+    /* ==================== CORRECTIFS (écritures de l'application) ==================== */
+
+    public synchronized void addRoot(GroupRepresentation group) {
+        Snapshot s = snapshot;
+        if (s == null) return;
+        List<GroupRepresentation> roots = copyTree(s.roots());
+        roots.add(copyNode(group));
+        applyPatch(roots, s.loadedAt());
+    }
+
+    public synchronized void addChild(String parentId, GroupRepresentation child) {
+        Snapshot s = snapshot;
+        if (s == null) return;
+        List<GroupRepresentation> roots = copyTree(s.roots());
+        GroupRepresentation parent = findById(roots, parentId);
+        if (parent == null) {
+            invalidate();
+            return;
+        }
+        GroupRepresentation copy = copyNode(child);
+        if (copy.getPath() == null) copy.setPath(parent.getPath() + "/" + copy.getName());
+        parent.getSubGroups().add(copy);
+        applyPatch(roots, s.loadedAt());
+    }
+
+    /** Remplace nom et attributs d'un groupe ; ses sous-groupes en cache sont conservés, leurs chemins recalculés. */
+    public synchronized void update(GroupRepresentation group) {
+        Snapshot s = snapshot;
+        if (s == null) return;
+        List<GroupRepresentation> roots = copyTree(s.roots());
+        GroupRepresentation target = findById(roots, group.getId());
+        if (target == null) {
+            invalidate();
+            return;
+        }
+        boolean renamed = !Objects.equals(target.getName(), group.getName());
+        target.setName(group.getName());
+        target.setAttributes(copyAttributes(group.getAttributes()));
+        if (renamed && target.getPath() != null) {
+            // 🔹 Chemin = chemin du parent + nom : le groupe renommé et tout son sous-arbre changent de chemin
+            target.setPath(target.getPath().substring(0, target.getPath().lastIndexOf('/')) + "/" + target.getName());
+            updateSubGroupPaths(target);
+        }
+        applyPatch(roots, s.loadedAt());
+    }
+
+    private static void updateSubGroupPaths(GroupRepresentation parent) {
+        for (GroupRepresentation child : parent.getSubGroups()) {
+            child.setPath(parent.getPath() + "/" + child.getName());
+            updateSubGroupPaths(child);
+        }
+    }
+
+    private void applyPatch(List<GroupRepresentation> roots, Instant loadedAt) {
+        writeVersion.incrementAndGet();
+        snapshot = Snapshot.build(roots, loadedAt);
+    }
+
+    private static GroupRepresentation findById(List<GroupRepresentation> roots, String id) {
+        Deque<GroupRepresentation> pending = new ArrayDeque<>(roots);
+        while (!pending.isEmpty()) {
+            GroupRepresentation g = pending.pop();
+            if (g.getId().equals(id)) return g;
+            g.getSubGroups().forEach(pending::push);
+        }
+        return null;
+    }
+
+    private static List<GroupRepresentation> copyTree(List<GroupRepresentation> groups) {
+        List<GroupRepresentation> copies = new ArrayList<>();
+        if (groups != null) groups.forEach(g -> copies.add(copyNode(g)));
+        return copies;
+    }
+
+    private static GroupRepresentation copyNode(GroupRepresentation g) {
+        GroupRepresentation copy = new GroupRepresentation();
+        copy.setId(g.getId());
+        copy.setName(g.getName());
+        copy.setPath(g.getPath());
+        copy.setAttributes(copyAttributes(g.getAttributes()));
+        copy.setSubGroups(copyTree(g.getSubGroups()));
+        return copy;
+    }
+
+    // Copie des attributs et de leurs listes de valeurs : l'arbre en cache ne partage rien avec les appelants
+    private static Map<String, List<String>> copyAttributes(Map<String, List<String>> attributes) {
+        if (attributes == null) return null;
+        Map<String, List<String>> copy = new HashMap<>();
+        attributes.forEach((key, values) -> copy.put(key, values == null ? null : new ArrayList<>(values)));
+        return copy;
+    }
+
+    /* ==================== INSTANTANÉ ==================== */
+
+    /**
+     * Arbre des groupes, index de recherche et vues précalculées : hiérarchie (/hierarchy), liste à plat,
+     * entrées du dropdown. Reconstruit depuis l'arbre en mémoire après chaque correctif.
+     */
+    public record Snapshot(List<GroupRepresentation> roots,
+                           GroupIndex index,
+                           List<Map<String, Object>> hierarchy,
+                           List<Map<String, Object>> flat,
+                           List<Map<String, Object>> dropdownEntries,
+                           Instant loadedAt) {
+
+        boolean isExpired(Duration ttl) {
+            return loadedAt.plus(ttl).isBefore(Instant.now());
+        }
+
+        Snapshot withLoadedAt(Instant at) {
+            return new Snapshot(roots, index, hierarchy, flat, dropdownEntries, at);
+        }
+
+        static Snapshot build(List<GroupRepresentation> roots, Instant loadedAt) {
+            List<GroupRepresentation> tree = roots == null ? List.of() : roots;
+            List<Map<String, Object>> flat = new ArrayList<>();
+            tree.forEach(root -> collectGroupsRecursive(root, flat));
+            return new Snapshot(
+                    Collections.unmodifiableList(tree),
+                    new GroupIndex(tree),
+                    tree.stream().map(Snapshot::mapGroupWithChildren).toList(),
+                    Collections.unmodifiableList(flat),
+                    buildDropdownEntries(flat),
+                    loadedAt);
+        }
+
+        private static void collectGroupsRecursive(GroupRepresentation group, List<Map<String, Object>> list) {
+            list.add(mapGroupToDTO(group));
+            if (group.getSubGroups() != null) {
+                group.getSubGroups().forEach(sub -> collectGroupsRecursive(sub, list));
+            }
+        }
+
+        private static Map<String, Object> mapGroupToDTO(GroupRepresentation group) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", group.getId());
+            map.put("name", group.getName());
+            map.put("code", getAttributeValue(group, "code", ""));
+            map.put("type", getAttributeValue(group, "type", ""));
+            map.put("nom", getAttributeValue(group, "nom", ""));
+            map.put("label", getAttributeValue(group, "nom", ""));
+            return Collections.unmodifiableMap(map);
+        }
+
+        private static Map<String, Object> mapGroupWithChildren(GroupRepresentation group) {
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", group.getId());
+            map.put("code", getAttributeValue(group, "code", ""));
+            map.put("label", getAttributeValue(group, "nom", group.getName())); // nom lisible
+            map.put("children", group.getSubGroups() == null ? List.of() :
+                    group.getSubGroups().stream()
+                            .map(Snapshot::mapGroupWithChildren)
+                            .toList());
+            return Collections.unmodifiableMap(map);
+        }
+
+        /** id / keycloakId / code / label de chaque groupe, tels que renvoyés par /api/groupes/dropdown. */
+        @SuppressWarnings("unchecked")
+        private static List<Map<String, Object>> buildDropdownEntries(List<Map<String, Object>> flat) {
+            int counter = 1;
+            List<Map<String, Object>> entries = new ArrayList<>();
+            for (Map<String, Object> g : flat) {
+                String keycloakId = (String) g.get("id");
+                Map<String, List<String>> attributes = (Map<String, List<String>>) g.get("attributes");
+
+                // 🔹 Générer code = eg01, eg02 ... si absent
+                String code;
+                if (attributes != null && attributes.containsKey("code") && !attributes.get("code").isEmpty()) {
+                    code = attributes.get("code").get(0);
+                } else {
+                    code = String.format("eg%02d", counter++);
+                }
+
+                // 🔹 label = nom lisible (ou name fallback)
+                String label;
+                if (attributes != null && attributes.containsKey("nom") && !attributes.get("nom").isEmpty()) {
+                    label = attributes.get("nom").get(0);
+                } else if (attributes != null && attributes.containsKey("label") && !attributes.get("label").isEmpty()) {
+                    label = attributes.get("label").get(0);
+                } else {
+                    label = (String) g.get("name");
+                }
+
+                Map<String, Object> map = new HashMap<>();
+                map.put("id", keycloakId);
+                map.put("keycloakId", keycloakId);
+                map.put("code", code);
+                map.put("label", label);
+                entries.add(Collections.unmodifiableMap(map));
+            }
+            return Collections.unmodifiableList(entries);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.gestionutilisateur.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.*;
+
+/**
+ * Lecture ligne à ligne d'un fichier d'import utilisateurs, en CSV (en-tête obligatoire, séparateur
+ * {@code ,} ou {@code ;} détecté sur l'en-tête) ou en NDJSON (un objet JSON par ligne).
+ * Une ligne illisible donne une {@link ImportRow} en erreur, sans interrompre la lecture.
+ */
+public final class ImportRowReader {
+
+    /** Colonnes reconnues (casse ignorée) ; les autres sont ignorées. */
+    static final List<String> COLUMNS = List.of(
+            "username", "email", "firstName", "lastName", "phoneNumber", "address", "password", "region");
+
+    private ImportRowReader() {
+    }
+
+    public record ImportRow(int line, String username, String email, String firstName, String lastName,
+                            String phoneNumber, String address, String password, String region, String error) {
+
+        static ImportRow of(int line, Map<String, String> values) {
+            return new ImportRow(line,
+                    clean(values.get("username")), clean(values.get("email")),
+                    clean(values.get("firstname")), clean(values.get("lastname")),
+                    clean(values.get("phonenumber")), clean(values.get("address")),
+                    clean(values.get("password")), clean(values.get("region")), null);
+        }
+
+        static ImportRow failed(int line, String error) {
+            return new ImportRow(line, null, null, null, null, null, null, null, null, error);
+        }
+
+        private static String clean(String value) {
+            return value == null || value.isBlank() ? null : value.trim();
+        }
+    }
+
+    public static List<ImportRow> readNdjson(Reader reader, ObjectMapper objectMapper) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        BufferedReader in = new BufferedReader(reader);
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            try {
+                JsonNode node = objectMapper.readTree(line);
+                if (!node.isObject()) {
+                    rows.add(ImportRow.failed(lineNumber, "Objet JSON attendu"));
+                    continue;
+                }
+                Map<String, String> values = new HashMap<>();
+                node.fields().forEachRemaining(f -> {
+                    if (f.getValue().isValueNode()) {
+                        values.put(f.getKey().toLowerCase(Locale.ROOT), f.getValue().asText());
+                    }
+                });
+                rows.add(ImportRow.of(lineNumber, values));
+            } catch (IOException e) {
+                rows.add(ImportRow.failed(lineNumber, "JSON invalide : " + e.getOriginalMessage()));
+            }
+        }
+        return rows;
+    }
+
+    /** CSV sans champ multiligne ; guillemets doubles pour les valeurs contenant le séparateur. */
+    public static List<ImportRow> readCsv(Reader reader) throws IOException {
+        List<ImportRow> rows = new ArrayList<>();
+        BufferedReader in = new BufferedReader(reader);
+        String headerLine = in.readLine();
+        if (headerLine == null) return rows;
+        if (headerLine.startsWith("\uFEFF")) headerLine = headerLine.substring(1); // BOM Excel
+
+        char separator = headerLine.indexOf(';') >= 0 && headerLine.indexOf(',') < 0 ? ';' : ',';
+        List<String> header = new ArrayList<>();
+        for (String name : splitCsvLine(headerLine, separator)) {
+            header.add(name.trim().toLowerCase(Locale.ROOT));
+        }
+        if (!header.contains("username") || !header.contains("email")) {
+            throw new IllegalArgumentException("En-tête CSV invalide : colonnes attendues " + COLUMNS);
+        }
+
+        String line;
+        int lineNumber = 1;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) continue;
+            List<String> cells = splitCsvLine(line, separator);
+            if (cells == null) {
+                rows.add(ImportRow.failed(lineNumber, "Guillemet non fermé"));
+                continue;
+            }
+            Map<String, String> values = new HashMap<>();
+            for (int i = 0; i < header.size() && i < cells.size(); i++) {
+                values.put(header.get(i), cells.get(i));
+            }
+            rows.add(ImportRow.of(lineNumber, values));
+        }
+        return rows;
+    }
+
+    /** Cellules d'une ligne CSV, null si un guillemet n'est pas refermé. */
+    static List<String> splitCsvLine(String line, char separator) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == separator) {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        if (quoted) return null;
+        cells.add(cell.toString());
+        return cells;
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.SyncCheckpoint;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Repository.SyncCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.ws.rs.NotFoundException;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Synchronisation incrémentale Keycloak → base locale et annuaire, pilotée par les événements Keycloak.
+ * <p>
+ * Chaque passage lit les événements depuis le point de reprise, ne recharge que les utilisateurs touchés
+ * (et les membres des groupes modifiés), puis avance le point de reprise jusqu'au plus récent événement reçu.
+ * Le passage suivant relit {@code keycloak.sync.overlap-ms} avant ce point ; les événements déjà appliqués sont ignorés. Une resynchronisation complète
+ * n'a lieu que si le point de reprise est perdu ou trop ancien, ou si trop d'événements se sont accumulés.
+ */
+@Service
+public class IncrementalSyncService {
+
+    static final String CHECKPOINT_NAME = "keycloak-users";
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final FullSyncService fullSyncService;
+    private final KeycloakEventSource eventSource;
+    private final SyncCheckpointRepository checkpointRepository;
+    private final ReentrantLock pollLock = new ReentrantLock();
+
+    private final Counter appliedChanges;
+    private final Counter fullReconciles;
+
+    // Événements déjà appliqués dans l'intervalle relu au passage suivant (clé → horodatage Keycloak)
+    private final Map<String, Long> appliedKeys = new HashMap<>();
+    private volatile Instant freshAsOf;
+
+    @Value("${keycloak.sync.enabled:true}")
+    private boolean enabled;
+
+    @Value("${keycloak.sync.max-events-per-poll:5000}")
+    private int maxEventsPerPoll;
+
+    // Au-delà, les événements ont pu expirer côté Keycloak : le point de reprise est considéré perdu
+    @Value("${keycloak.sync.max-checkpoint-age-hours:168}")
+    private long maxCheckpointAgeHours;
+
+    @Value("${keycloak.sync.overlap-ms:2000}")
+    private long overlapMs;
+
+    @Value("${keycloak.members.page-size:500}")
+    private int membersPageSize;
+
+    // Écart d'horloge toléré entre ce serveur et Keycloak, pour le seul point de départ après une synchronisation complète
+    @Value("${keycloak.sync.clock-skew-ms:60000}")
+    private long clockSkewMs;
+
+    public IncrementalSyncService(KeycloakService keycloakService, UserDirectory userDirectory,
+                                  FullSyncService fullSyncService, KeycloakEventSource eventSource,
+                                  SyncCheckpointRepository checkpointRepository,
+                                  MeterRegistry meterRegistry) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.fullSyncService = fullSyncService;
+        this.eventSource = eventSource;
+        this.checkpointRepository = checkpointRepository;
+        this.appliedChanges = Counter.builder("keycloak.sync.changes")
+                .description("Utilisateurs recopiés ou supprimés par la synchronisation incrémentale")
+                .register(meterRegistry);
+        this.fullReconciles = Counter.builder("keycloak.sync.reconciles")
+                .description("Resynchronisations complètes déclenchées par la synchronisation incrémentale")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.sync.lag", this, IncrementalSyncService::lagSeconds)
+                .description("Secondes écoulées depuis le dernier état Keycloak entièrement répercuté localement")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(initialDelayString = "${keycloak.sync.initial-delay-ms:30000}",
+            fixedDelayString = "${keycloak.sync.poll-ms:10000}")
+    public void scheduledPoll() {
+        // La synchronisation initiale (tâche de fond) lit déjà tout le realm : inutile de la doubler
+        if (!enabled || !fullSyncService.isInitialSyncCompleted()) return;
+        try {
+            KeycloakPriority.run(KeycloakPriority.ARRIERE_PLAN, this::poll);
+        } catch (Exception e) {
+            System.out.println("⚠️ Synchronisation incrémentale Keycloak échouée : " + e.getMessage());
+        }
+    }
+
+    public void poll() {
+        if (!pollLock.tryLock()) return;
+        try {
+            Instant pollStartedAt = Instant.now();
+            Optional<SyncCheckpoint> checkpoint = checkpointRepository.findById(CHECKPOINT_NAME);
+
+            Long lastEventTime = checkpoint.map(SyncCheckpoint::getLastEventTime).orElse(null);
+            if (lastEventTime == null && fullSyncService.getLastFullSyncStartedAt() != null) {
+                // 🔹 Une synchronisation complète a déjà eu lieu (démarrage) : on repart de son début,
+                // avec une marge pour l'écart d'horloge entre ce serveur et Keycloak
+                lastEventTime = fullSyncService.getLastFullSyncStartedAt().toEpochMilli() - clockSkewMs;
+            }
+            if (lastEventTime == null
+                    || pollStartedAt.toEpochMilli() - lastEventTime > Duration.ofHours(maxCheckpointAgeHours).toMillis()) {
+                fullReconcile(pollStartedAt);
+                return;
+            }
+
+            // 🔹 Relecture d'un court intervalle avant le dernier événement reçu : un événement horodaté
+            // juste avant lui mais publié après le passage précédent n'est pas perdu
+            long since = lastEventTime - overlapMs;
+            KeycloakEventSource.EventBatch batch = eventSource.poll(since, maxEventsPerPoll);
+            if (!batch.complete()) {
+                System.out.println("⚠️ Trop d'événements Keycloak depuis le dernier passage, resynchronisation complète");
+                fullReconcile(pollStartedAt);
+                return;
+            }
+
+            List<KeycloakChangeEvent> fresh = batch.events().stream()
+                    .filter(e -> !appliedKeys.containsKey(e.key()))
+                    .toList();
+            apply(fresh);
+
+            // Le point de reprise n'avance qu'avec les horodatages Keycloak, jamais avec l'horloge locale
+            long newest = batch.events().stream().mapToLong(KeycloakChangeEvent::time).max().orElse(lastEventTime);
+            long next = Math.max(lastEventTime, newest);
+            fresh.forEach(e -> appliedKeys.put(e.key(), e.time()));
+            appliedKeys.values().removeIf(time -> time < next - overlapMs);
+            if (next != lastEventTime || checkpoint.isEmpty()) saveCheckpoint(next);
+            freshAsOf = pollStartedAt;
+        } finally {
+            pollLock.unlock();
+        }
+    }
+
+    private void apply(List<KeycloakChangeEvent> events) {
+        if (events.isEmpty()) return;
+
+        // 🔹 Dernier état connu par utilisateur : plusieurs événements sur un même utilisateur = un seul rechargement
+        Map<String, KeycloakChangeEvent.Type> userChanges = new LinkedHashMap<>();
+        Set<String> changedGroups = new LinkedHashSet<>();
+        for (KeycloakChangeEvent e : events) {
+            if (e.type() == KeycloakChangeEvent.Type.GROUP_CHANGE) {
+                changedGroups.add(e.targetId());
+            } else {
+                userChanges.put(e.targetId(), e.type());
+            }
+        }
+        for (String groupId : changedGroups) {
+            membersOf(groupId).forEach(id -> userChanges.putIfAbsent(id, KeycloakChangeEvent.Type.USER_UPSERT));
+        }
+
+        List<UserWithGroups> upserts = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        userChanges.forEach((userId, type) -> {
+            Optional<UserWithGroups> current = type == KeycloakChangeEvent.Type.USER_DELETE
+                    ? Optional.empty()
+                    : keycloakService.getUserWithGroups(userId);
+            if (current.isPresent()) {
+                keycloakService.syncUserToLocalDatabase(current.get().user(), current.get().groups());
+                upserts.add(current.get());
+            } else {
+                keycloakService.deleteLocalUser(userId);
+                removed.add(userId);
+            }
+        });
+
+        userDirectory.applyChanges(upserts, removed);
+        appliedChanges.increment(userChanges.size());
+    }
+
+    /** Membres actuels (Keycloak) et anciens (annuaire) d'un groupe modifié ou supprimé. */
+    private Set<String> membersOf(String groupId) {
+        Set<String> ids = new LinkedHashSet<>();
+        userDirectory.getMembersOfGroup(groupId).forEach(u -> ids.add(u.getId()));
+        try {
+            int first = 0;
+            while (true) {
+                List<UserRepresentation> page = keycloakService.getGroupMembersPage(groupId, first, membersPageSize);
+                page.forEach(u -> ids.add(u.getId()));
+                if (page.size() < membersPageSize) break;
+                first += membersPageSize;
+            }
+        } catch (NotFoundException e) {
+            // Groupe supprimé : seuls les anciens membres connus de l'annuaire sont à recharger
+        }
+        return ids;
+    }
+
+    private void fullReconcile(Instant startedAt) {
+        fullReconciles.increment();
+        fullSyncService.run();
+        appliedKeys.clear();
+        // Aucun horodatage Keycloak connu : départ au début de la synchronisation complète, marge d'horloge déduite
+        saveCheckpoint(startedAt.toEpochMilli() - clockSkewMs);
+        freshAsOf = startedAt;
+    }
+
+    private void saveCheckpoint(long lastEventTime) {
+        SyncCheckpoint checkpoint = checkpointRepository.findById(CHECKPOINT_NAME).orElseGet(() -> {
+            SyncCheckpoint c = new SyncCheckpoint();
+            c.setName(CHECKPOINT_NAME);
+            return c;
+        });
+        checkpoint.setLastEventTime(lastEventTime);
+        checkpoint.setUpdatedAt(Instant.now());
+        checkpointRepository.save(checkpoint);
+    }
+
+    private double lagSeconds() {
+        Instant asOf = freshAsOf != null ? freshAsOf : fullSyncService.getLastFullSyncStartedAt();
+        return asOf == null ? Double.NaN : Duration.between(asOf, Instant.now()).toMillis() / 1000.0;
+    }
+}
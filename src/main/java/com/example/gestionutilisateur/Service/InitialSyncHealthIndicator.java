@@ -0,0 +1,37 @@
+package com.example.gestionutilisateur.Service;
+
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Indicateur "initialSync", inclus dans le groupe readiness : OUT_OF_SERVICE tant que la première
+ * synchronisation complète n'a pas abouti, avec l'avancement en détail.
+ */
+@Component
+public class InitialSyncHealthIndicator implements HealthIndicator {
+
+    private final FullSyncService fullSyncService;
+
+    public InitialSyncHealthIndicator(FullSyncService fullSyncService) {
+        this.fullSyncService = fullSyncService;
+    }
+
+    @Override
+    public Health health() {
+        SyncProgress progress = fullSyncService.getProgress();
+        Health.Builder builder = fullSyncService.isInitialSyncCompleted() ? Health.up() : Health.outOfService();
+        builder.withDetail("state", progress.getState())
+                .withDetail("processed", progress.getProcessed())
+                .withDetail("total", progress.getTotal())
+                .withDetail("rowsPerSecond", Math.round(progress.getRowsPerSecond()));
+        if (progress.getStartedAt() != null) builder.withDetail("startedAt", progress.getStartedAt());
+        if (progress.getFinishedAt() != null) builder.withDetail("finishedAt", progress.getFinishedAt());
+        Duration eta = progress.getEta();
+        if (eta != null) builder.withDetail("etaSeconds", eta.toSeconds());
+        if (progress.getError() != null) builder.withDetail("error", progress.getError());
+        return builder.build();
+    }
+}
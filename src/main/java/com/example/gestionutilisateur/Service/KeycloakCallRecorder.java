@@ -0,0 +1,118 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.ws.rs.NotFoundException;
+import jakarta.ws.rs.ProcessingException;
+import jakarta.ws.rs.WebApplicationException;
+import jakarta.ws.rs.core.Response;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Point de passage de tous les appels à l'API d'administration Keycloak : durée et nombre d'appels
+ * dans le timer {@code keycloak.admin.calls}, étiqueté par opération et par issue
+ * (success, not_found, conflict, client_error, server_error, io_error, error, rejected).
+ * Chaque appel passe d'abord par {@link KeycloakGuard} (limite adaptative par priorité, disjoncteur).
+ */
+@Component
+public class KeycloakCallRecorder {
+
+    public static final String METRIC = "keycloak.admin.calls";
+
+    private final MeterRegistry meterRegistry;
+    private final KeycloakGuard guard;
+
+    @Autowired
+    public KeycloakCallRecorder(MeterRegistry meterRegistry, KeycloakGuard guard) {
+        this.meterRegistry = meterRegistry;
+        this.guard = guard;
+        Gauge.builder("keycloak.circuit.state", guard, g -> g.getState().ordinal())
+                .description("Disjoncteur Keycloak : 0 fermé, 1 ouvert, 2 demi-ouvert")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.bulkhead.available", guard, KeycloakGuard::getAvailablePermits)
+                .description("Places libres pour des appels Keycloak simultanés")
+                .register(meterRegistry);
+        AdaptiveLimiter limiter = guard.getLimiter();
+        Gauge.builder("keycloak.limiter.limit", limiter, AdaptiveLimiter::getLimit)
+                .description("Limite adaptative d'appels Keycloak simultanés")
+                .register(meterRegistry);
+        Gauge.builder("keycloak.limiter.in-flight", limiter, AdaptiveLimiter::getInFlight)
+                .description("Appels Keycloak en cours")
+                .register(meterRegistry);
+        for (KeycloakPriority priority : KeycloakPriority.values()) {
+            Gauge.builder("keycloak.limiter.queued", limiter, l -> l.getQueued(priority))
+                    .description("Appels Keycloak en attente d'une place, par priorité")
+                    .tag("priority", priority.name().toLowerCase())
+                    .register(meterRegistry);
+        }
+    }
+
+    /** Sans bulkhead ni disjoncteur (tests). */
+    public KeycloakCallRecorder(MeterRegistry meterRegistry) {
+        this(meterRegistry, KeycloakGuard.permissive());
+    }
+
+    public <T> T call(String operation, Supplier<T> call) {
+        long start = System.nanoTime();
+        KeycloakGuard.Permit permit;
+        try {
+            permit = guard.acquire(operation);
+        } catch (KeycloakUnavailableException e) {
+            record(operation, "rejected", System.nanoTime() - start);
+            throw e;
+        }
+        String outcome = "success";
+        try {
+            T result = call.get();
+            if (result instanceof Response response) outcome = outcomeOf(response.getStatus());
+            return result;
+        } catch (RuntimeException e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            guard.release(permit, isFailure(outcome));
+            record(operation, outcome, System.nanoTime() - start);
+        }
+    }
+
+    // 🔹 Seules les pannes de Keycloak comptent pour le disjoncteur, pas les 404 / 409 métier
+    private static boolean isFailure(String outcome) {
+        return outcome.equals("server_error") || outcome.equals("io_error") || outcome.equals("error");
+    }
+
+    public void run(String operation, Runnable call) {
+        call(operation, () -> {
+            call.run();
+            return null;
+        });
+    }
+
+    private void record(String operation, String outcome, long nanos) {
+        RemoteCallTrace.record(RemoteCallTrace.KEYCLOAK, operation, nanos);
+        Timer.builder(METRIC)
+                .description("Appels à l'API d'administration Keycloak")
+                .tag("operation", operation)
+                .tag("outcome", outcome)
+                .register(meterRegistry)
+                .record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    static String outcomeOf(RuntimeException e) {
+        if (e instanceof NotFoundException) return "not_found";
+        if (e instanceof WebApplicationException wae) return outcomeOf(wae.getResponse().getStatus());
+        if (e instanceof ProcessingException) return "io_error";
+        return "error";
+    }
+
+    static String outcomeOf(int status) {
+        if (status < 400) return "success";
+        if (status == 404) return "not_found";
+        if (status == 409) return "conflict";
+        return status < 500 ? "client_error" : "server_error";
+    }
+}
@@ -0,0 +1,22 @@
+package com.example.gestionutilisateur.Service;
+
+/**
+ * Changement Keycloak à répercuter localement, quelle que soit sa source (événements admin, utilisateurs, bouchon).
+ *
+ * @param time     horodatage Keycloak en millisecondes
+ * @param type     nature du changement
+ * @param targetId id de l'utilisateur ou du groupe concerné
+ * @param detail   information d'origine (chemin de ressource, type d'événement), pour dédoublonner
+ */
+public record KeycloakChangeEvent(long time, Type type, String targetId, String detail) {
+
+    public enum Type {
+        USER_UPSERT,
+        USER_DELETE,
+        GROUP_CHANGE
+    }
+
+    public String key() {
+        return time + "|" + type + "|" + targetId + "|" + detail;
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.gestionutilisateur.Service;
+
+import java.util.List;
+
+/**
+ * Source d'événements Keycloak interrogée par la synchronisation incrémentale.
+ */
+public interface KeycloakEventSource {
+
+    /**
+     * Événements survenus à partir de {@code sinceMillis} inclus, du plus ancien au plus récent.
+     *
+     * @param maxEvents au-delà, le lot est marqué incomplet et une resynchronisation complète est préférable
+     */
+    EventBatch poll(long sinceMillis, int maxEvents);
+
+    record EventBatch(List<KeycloakChangeEvent> events, boolean complete) {
+    }
+}
@@ -0,0 +1,196 @@
+package com.example.gestionutilisateur.Service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Protège les threads de l'application quand Keycloak ralentit ou tombe.
+ * <ul>
+ *     <li>Bulkhead adaptatif ({@link AdaptiveLimiter}) : limite d'appels simultanés entre
+ *     {@code keycloak.limiter.min-limit} et {@code max-concurrent-calls}, abaissée quand Keycloak ralentit.
+ *     Les requêtes interactives passent avant les jobs de fond ({@link KeycloakPriority}) et n'attendent
+ *     que {@code bulkhead-wait-ms} ; les jobs attendent jusqu'à {@code keycloak.limiter.background-wait-ms}.</li>
+ *     <li>Disjoncteur : sur les {@code window-size} derniers appels, au-delà de {@code failure-rate} d'échecs
+ *     (erreurs 5xx, réseau, ou appels plus lents que {@code slow-call-ms}), les appels sont refusés
+ *     pendant {@code open-ms}, puis un seul appel d'essai décide de la réouverture.</li>
+ * </ul>
+ * Un refus lève {@link KeycloakUnavailableException} immédiatement : les lectures servies par les caches
+ * (annuaire, arbre des groupes) continuent sans attendre Keycloak.
+ */
+@Component
+public class KeycloakGuard {
+
+    public enum State { FERME, OUVERT, DEMI_OUVERT }
+
+    private final AdaptiveLimiter limiter;
+    private final Duration bulkheadWait;
+    private final Duration backgroundWait;
+    private final Duration slowCall;
+    private final Duration openDuration;
+    private final double failureRate;
+    private final int minCalls;
+
+    // 🔹 Fenêtre glissante des derniers résultats (true = échec), protégée par "this"
+    private final boolean[] window;
+    private int windowPos;
+    private int windowCount;
+    private int windowFailures;
+
+    private volatile State state = State.FERME;
+    private volatile long openedAt;
+    private boolean probeInFlight;
+
+    @Autowired
+    public KeycloakGuard(@Value("${keycloak.resilience.max-concurrent-calls:16}") int maxConcurrentCalls,
+                         @Value("${keycloak.limiter.initial-limit:16}") int initialLimit,
+                         @Value("${keycloak.limiter.min-limit:2}") int minLimit,
+                         @Value("${keycloak.limiter.latency-target-ms:1000}") long latencyTargetMs,
+                         @Value("${keycloak.limiter.backoff:0.9}") double backoff,
+                         @Value("${keycloak.resilience.bulkhead-wait-ms:100}") long bulkheadWaitMs,
+                         @Value("${keycloak.limiter.background-wait-ms:30000}") long backgroundWaitMs,
+                         @Value("${keycloak.resilience.window-size:20}") int windowSize,
+                         @Value("${keycloak.resilience.min-calls:10}") int minCalls,
+                         @Value("${keycloak.resilience.failure-rate:0.5}") double failureRate,
+                         @Value("${keycloak.resilience.slow-call-ms:3000}") long slowCallMs,
+                         @Value("${keycloak.resilience.open-ms:10000}") long openMs) {
+        this(new AdaptiveLimiter(initialLimit, minLimit, maxConcurrentCalls, Duration.ofMillis(latencyTargetMs), backoff),
+                Duration.ofMillis(bulkheadWaitMs), Duration.ofMillis(backgroundWaitMs),
+                windowSize, minCalls, failureRate, slowCallMs, openMs);
+    }
+
+    /** Limite fixe de {@code maxConcurrentCalls} appels, même attente pour toutes les priorités (tests). */
+    public KeycloakGuard(int maxConcurrentCalls, long bulkheadWaitMs, int windowSize, int minCalls,
+                         double failureRate, long slowCallMs, long openMs) {
+        this(AdaptiveLimiter.fixed(Math.max(1, maxConcurrentCalls)), Duration.ofMillis(bulkheadWaitMs),
+                Duration.ofMillis(bulkheadWaitMs), windowSize, minCalls, failureRate, slowCallMs, openMs);
+    }
+
+    public KeycloakGuard(AdaptiveLimiter limiter, Duration bulkheadWait, Duration backgroundWait,
+                         int windowSize, int minCalls, double failureRate, long slowCallMs, long openMs) {
+        this.limiter = limiter;
+        this.bulkheadWait = bulkheadWait;
+        this.backgroundWait = backgroundWait;
+        this.window = new boolean[Math.max(1, windowSize)];
+        this.minCalls = Math.max(1, Math.min(minCalls, window.length));
+        this.failureRate = failureRate;
+        this.slowCall = Duration.ofMillis(slowCallMs);
+        this.openDuration = Duration.ofMillis(openMs);
+    }
+
+    /** Sans limite ni disjoncteur (tests, outils). */
+    public static KeycloakGuard permissive() {
+        return new KeycloakGuard(Integer.MAX_VALUE / 2, 0, 1, 1, 2.0, Long.MAX_VALUE / 2_000_000, 0);
+    }
+
+    /** Réserve une place pour un appel ; à rendre par {@link #release}. */
+    public Permit acquire(String operation) {
+        boolean probe = admit(operation);
+        KeycloakPriority priority = KeycloakPriority.current();
+        Duration maxWait = priority == KeycloakPriority.INTERACTIF ? bulkheadWait : backgroundWait;
+        boolean acquired;
+        try {
+            acquired = limiter.acquire(priority, maxWait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            if (probe) abandonProbe();
+            throw new KeycloakUnavailableException(
+                    "Keycloak : trop d'appels en cours (limite " + limiter.getLimit() + ", priorité " + priority + "), "
+                            + operation + " refusé", maxWait);
+        }
+        return new Permit(probe, System.nanoTime());
+    }
+
+    public record Permit(boolean probe, long startedAt) {
+    }
+
+    /** Rend la place et enregistre le résultat ; {@code failed} = erreur serveur ou réseau. */
+    public void release(Permit permit, boolean failed) {
+        long latency = System.nanoTime() - permit.startedAt();
+        limiter.release(latency, failed);
+        boolean slow = latency > slowCall.toNanos();
+        onResult(permit.probe(), failed || slow);
+    }
+
+    private synchronized boolean admit(String operation) {
+        if (state == State.FERME) return false;
+        long openFor = System.nanoTime() - openedAt;
+        if (state == State.OUVERT && openFor >= openDuration.toNanos()) {
+            state = State.DEMI_OUVERT;
+        }
+        if (state == State.DEMI_OUVERT && !probeInFlight) {
+            probeInFlight = true;
+            return true;
+        }
+        throw new KeycloakUnavailableException("Keycloak indisponible (disjoncteur ouvert), " + operation + " refusé",
+                Duration.ofNanos(Math.max(0, openDuration.toNanos() - openFor)));
+    }
+
+    private synchronized void abandonProbe() {
+        probeInFlight = false;
+    }
+
+    private synchronized void onResult(boolean probe, boolean failed) {
+        if (probe) {
+            probeInFlight = false;
+            if (failed) {
+                open();
+            } else {
+                System.out.println("✅ Keycloak répond de nouveau : disjoncteur refermé");
+                state = State.FERME;
+                resetWindow();
+            }
+            return;
+        }
+        if (state != State.FERME) return;
+
+        if (windowCount == window.length) {
+            if (window[windowPos]) windowFailures--;
+        } else {
+            windowCount++;
+        }
+        window[windowPos] = failed;
+        if (failed) windowFailures++;
+        windowPos = (windowPos + 1) % window.length;
+
+        if (windowCount >= minCalls && (double) windowFailures / windowCount >= failureRate) {
+            System.out.println("⚠️ Keycloak en échec (" + windowFailures + "/" + windowCount
+                    + " appels) : disjoncteur ouvert pour " + openDuration.toMillis() + " ms");
+            open();
+        }
+    }
+
+    private void open() {
+        state = State.OUVERT;
+        openedAt = System.nanoTime();
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        windowPos = 0;
+        windowCount = 0;
+        windowFailures = 0;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /** Vrai si les appels passent normalement (disjoncteur fermé). */
+    public boolean isHealthy() {
+        return state == State.FERME;
+    }
+
+    public int getAvailablePermits() {
+        return limiter.getAvailable();
+    }
+
+    public AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+}
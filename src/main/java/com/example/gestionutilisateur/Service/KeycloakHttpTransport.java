@@ -0,0 +1,110 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.client.Client;
+import jakarta.ws.rs.client.ClientBuilder;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolStats;
+import org.jboss.resteasy.client.jaxrs.ResteasyClientBuilder;
+import org.jboss.resteasy.client.jaxrs.engines.ApacheHttpClient43Engine;
+import org.keycloak.admin.client.JacksonProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToIntFunction;
+
+/**
+ * Transport HTTP du client d'administration Keycloak : pool de connexions persistantes (Apache HttpClient),
+ * délais de connexion, de lecture et d'attente d'une connexion libre, compression gzip optionnelle.
+ * <p>
+ * Par défaut {@code KeycloakBuilder} crée un pool de 10 connexions sans délai : les appels parallèles
+ * (fan-out, import, réaffectation) se sérialisent sur le pool et un Keycloak figé bloque les threads sans fin.
+ * Le pool doit rester au moins aussi grand que {@code keycloak.resilience.max-concurrent-calls}.
+ * Métriques : {@code keycloak.http.pool.leased}, {@code .pending}, {@code .available}, {@code .max}.
+ * <p>
+ * Pas d'HTTP/2 : le moteur Apache HttpClient 4 de RESTEasy ne parle qu'HTTP/1.1, le keep-alive en tient lieu.
+ */
+@Component
+public class KeycloakHttpTransport {
+
+    // Connexion inutilisée depuis plus longtemps : revalidée avant d'être reprise du pool
+    private static final int VALIDATE_AFTER_INACTIVITY_MS = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+
+    public KeycloakHttpTransport(MeterRegistry meterRegistry,
+                                 @Value("${keycloak.http.max-connections:64}") int maxConnections,
+                                 @Value("${keycloak.http.max-per-route:32}") int maxPerRoute,
+                                 @Value("${keycloak.http.connect-timeout-ms:2000}") int connectTimeoutMs,
+                                 @Value("${keycloak.http.read-timeout-ms:30000}") int readTimeoutMs,
+                                 @Value("${keycloak.http.pool-timeout-ms:5000}") int poolTimeoutMs,
+                                 @Value("${keycloak.http.keep-alive-ms:60000}") long keepAliveMs,
+                                 @Value("${keycloak.http.connection-ttl-ms:300000}") long connectionTtlMs,
+                                 @Value("${keycloak.http.gzip:true}") boolean gzip) {
+        this.connectionManager = new PoolingHttpClientConnectionManager(connectionTtlMs, TimeUnit.MILLISECONDS);
+        connectionManager.setMaxTotal(Math.max(1, maxConnections));
+        connectionManager.setDefaultMaxPerRoute(Math.max(1, Math.min(maxPerRoute, maxConnections)));
+        connectionManager.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY_MS);
+
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMs)
+                .setSocketTimeout(readTimeoutMs)
+                .setConnectionRequestTimeout(poolTimeoutMs)
+                .build();
+
+        HttpClientBuilder builder = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                // 🔹 Durée annoncée par Keycloak (Keep-Alive: timeout=…), plafonnée par keep-alive-ms
+                .setKeepAliveStrategy((response, context) -> {
+                    long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return announced > 0 ? Math.min(announced, keepAliveMs) : keepAliveMs;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(keepAliveMs, TimeUnit.MILLISECONDS);
+        if (!gzip) builder.disableContentCompression();
+        this.httpClient = builder.build();
+
+        registerPoolGauge(meterRegistry, "leased", "Connexions Keycloak en cours d'utilisation", PoolStats::getLeased);
+        registerPoolGauge(meterRegistry, "pending", "Appels Keycloak en attente d'une connexion", PoolStats::getPending);
+        registerPoolGauge(meterRegistry, "available", "Connexions Keycloak ouvertes et libres", PoolStats::getAvailable);
+        registerPoolGauge(meterRegistry, "max", "Taille maximale du pool de connexions Keycloak", PoolStats::getMax);
+    }
+
+    private void registerPoolGauge(MeterRegistry meterRegistry, String name, String description,
+                                   ToIntFunction<PoolStats> stat) {
+        Gauge.builder("keycloak.http.pool." + name, connectionManager, cm -> stat.applyAsInt(cm.getTotalStats()))
+                .description(description)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Client JAX-RS pour {@code KeycloakBuilder.resteasyClient(...)} : même sérialisation JSON que le client
+     * par défaut de Keycloak (champs inconnus ignorés), connexions prises dans le pool partagé.
+     */
+    public Client newClient() {
+        ResteasyClientBuilder builder = (ResteasyClientBuilder) ClientBuilder.newBuilder();
+        return builder.httpEngine(new ApacheHttpClient43Engine(httpClient, false))
+                .register(new JacksonProvider(), 100)
+                .build();
+    }
+
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
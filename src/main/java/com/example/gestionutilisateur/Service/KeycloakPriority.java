@@ -0,0 +1,57 @@
+package com.example.gestionutilisateur.Service;
+
+import java.util.function.Supplier;
+
+/**
+ * Classe de priorité des appels Keycloak faits par le thread courant, utilisée par {@link AdaptiveLimiter}.
+ * <p>
+ * Par défaut un appel est {@link #INTERACTIF} (requête HTTP d'un utilisateur) ; les synchronisations
+ * et jobs se déclarent avec {@link #run} / {@link #with}. {@link FanOutExecutor} transmet la priorité
+ * à ses threads, comme la trace des appels.
+ */
+public enum KeycloakPriority {
+
+    /** Requête d'un utilisateur : servie en premier, peut prendre toute la limite. */
+    INTERACTIF(1.0),
+    /** Synchronisations, rafraîchissement des caches, écritures différées : au plus la moitié de la limite. */
+    ARRIERE_PLAN(0.5),
+    /** Import en masse, réaffectation de région : au plus un quart de la limite. */
+    MASSE(0.25);
+
+    private static final ThreadLocal<KeycloakPriority> CURRENT = new ThreadLocal<>();
+
+    private final double share;
+
+    KeycloakPriority(double share) {
+        this.share = share;
+    }
+
+    /** Part de la limite courante que cette classe peut occuper à elle seule. */
+    public double share() {
+        return share;
+    }
+
+    public static KeycloakPriority current() {
+        KeycloakPriority priority = CURRENT.get();
+        return priority == null ? INTERACTIF : priority;
+    }
+
+    /** Exécute {@code action} avec la priorité donnée, puis rétablit la précédente. */
+    public static <T> T with(KeycloakPriority priority, Supplier<T> action) {
+        KeycloakPriority previous = CURRENT.get();
+        CURRENT.set(priority);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    public static void run(KeycloakPriority priority, Runnable action) {
+        with(priority, () -> {
+            action.run();
+            return null;
+        });
+    }
+}
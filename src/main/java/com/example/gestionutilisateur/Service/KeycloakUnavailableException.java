@@ -0,0 +1,21 @@
+package com.example.gestionutilisateur.Service;
+
+import java.time.Duration;
+
+/**
+ * Appel Keycloak refusé sans être tenté : trop d'appels en cours (bulkhead) ou disjoncteur ouvert.
+ * {@link #getRetryAfter()} indique quand réessayer.
+ */
+public class KeycloakUnavailableException extends RuntimeException {
+
+    private final Duration retryAfter;
+
+    public KeycloakUnavailableException(String message, Duration retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.gestionutilisateur.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Curseur opaque de pagination : position de la page suivante et id du dernier utilisateur servi.
+ * L'id permet de reprendre juste après le dernier élément vu même si le realm a bougé entre deux pages.
+ */
+public record PageCursor(int offset, String lastId) {
+
+    public String encode() {
+        String raw = offset + ":" + (lastId == null ? "" : lastId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static PageCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int sep = raw.indexOf(':');
+            int offset = Integer.parseInt(raw.substring(0, sep));
+            String lastId = raw.substring(sep + 1);
+            if (offset < 0) throw new IllegalArgumentException("offset négatif");
+            return new PageCursor(offset, lastId.isEmpty() ? null : lastId);
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Curseur de pagination invalide : " + token, e);
+        }
+    }
+}
@@ -0,0 +1,319 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import jakarta.annotation.PreDestroy;
+import jakarta.ws.rs.NotFoundException;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.example.gestionutilisateur.KeycloakService.getAttributeValue;
+
+/**
+ * Réaffectation de région en masse, exécutée en tâche de fond et suivie par identifiant de tâche.
+ * <p>
+ * Les groupes cibles sont résolus une seule fois, avant le lancement. Pour chaque utilisateur, seuls les
+ * changements nécessaires sont appliqués : sortie des autres groupes "region" (et du groupe source pour un
+ * déplacement), entrée dans la cible s'il n'y est pas déjà. Les utilisateurs sont traités en parallèle borné,
+ * avec nouvel essai en cas d'erreur Keycloak. Les nouvelles appartenances sont reportées dans l'annuaire
+ * par lots de {@code DIRECTORY_BATCH}, sans attendre la prochaine synchronisation.
+ */
+@Service
+public class RegionReassignmentService {
+
+    private static final int MAX_KEPT_JOBS = 100;
+    private static final int MAX_REPORTED_ERRORS = 200;
+    // Chaque report reconstruit l'instantané de l'annuaire : un par lot plutôt qu'un par utilisateur
+    private static final int DIRECTORY_BATCH = 200;
+
+    public enum JobStatus { EN_COURS, TERMINEE, ECHEC }
+
+    public record Assignment(String utilisateurId, String regionLabel) {
+    }
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final FanOutExecutor pipeline;
+    private final ExecutorService jobRunner = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "region-reassignment");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Map<String, Job> jobs = new ConcurrentHashMap<>();
+
+    @Value("${keycloak.reassign.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${keycloak.reassign.retry-backoff-ms:200}")
+    private long retryBackoffMs;
+
+    @Value("${keycloak.members.page-size:500}")
+    private int membersPageSize;
+
+    public RegionReassignmentService(KeycloakService keycloakService, UserDirectory userDirectory,
+                                     @Value("${keycloak.reassign.concurrency:4}") int concurrency,
+                                     @Value("${keycloak.reassign.call-timeout-ms:30000}") long callTimeoutMs) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.pipeline = new FanOutExecutor(concurrency, Duration.ofMillis(callTimeoutMs),
+                Duration.ofHours(6), "region-reassignment-call");
+    }
+
+    /** Liste explicite (utilisateur, région) ; IllegalArgumentException si une région est inconnue. */
+    public Job startAssignments(List<Assignment> assignments) {
+        if (assignments == null || assignments.isEmpty()) {
+            throw new IllegalArgumentException("La liste des affectations est vide");
+        }
+        Map<String, GroupRepresentation> targets = resolveTargets(
+                assignments.stream().map(Assignment::regionLabel).toList());
+
+        Map<String, GroupRepresentation> targetByUser = new LinkedHashMap<>();
+        for (Assignment a : assignments) {
+            if (a.utilisateurId() == null || a.utilisateurId().isBlank()) {
+                throw new IllegalArgumentException("utilisateurId manquant dans une affectation");
+            }
+            targetByUser.put(a.utilisateurId(), targets.get(a.regionLabel()));  // la dernière affectation l'emporte
+        }
+        return submit(targetByUser, null);
+    }
+
+    /** Déplace tous les membres directs du groupe {@code fromLabel} vers {@code toLabel}. */
+    public Job startMove(String fromLabel, String toLabel) {
+        Map<String, GroupRepresentation> groups = resolveTargets(List.of(fromLabel, toLabel));
+        GroupRepresentation source = groups.get(fromLabel);
+        GroupRepresentation target = groups.get(toLabel);
+        if (source.getId().equals(target.getId())) {
+            throw new IllegalArgumentException("Les groupes source et cible sont identiques");
+        }
+
+        Map<String, GroupRepresentation> targetByUser = new LinkedHashMap<>();
+        membersOf(source.getId()).forEach(id -> targetByUser.put(id, target));
+        return submit(targetByUser, source);
+    }
+
+    public Optional<Job> getJob(String jobId) {
+        return Optional.ofNullable(jobs.get(jobId));
+    }
+
+    private Map<String, GroupRepresentation> resolveTargets(Collection<String> labels) {
+        Map<String, GroupRepresentation> resolved = new HashMap<>();
+        List<String> unknown = new ArrayList<>();
+        for (String label : new LinkedHashSet<>(labels)) {
+            Optional<GroupRepresentation> group = label == null ? Optional.empty() : keycloakService.findGroupByLabel(label);
+            if (group.isPresent()) {
+                resolved.put(label, group.get());
+            } else {
+                unknown.add(label);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Groupe(s) Keycloak introuvable(s) : " + unknown);
+        }
+        return resolved;
+    }
+
+    private List<String> membersOf(String groupId) {
+        if (userDirectory.isReady()) {
+            return userDirectory.getMembersOfGroup(groupId).stream().map(UserRepresentation::getId).toList();
+        }
+        List<String> ids = new ArrayList<>();
+        int first = 0;
+        while (true) {
+            List<UserRepresentation> page = keycloakService.getGroupMembersPage(groupId, first, membersPageSize);
+            page.forEach(u -> ids.add(u.getId()));
+            if (page.size() < membersPageSize) break;
+            first += membersPageSize;
+        }
+        return ids;
+    }
+
+    private Job submit(Map<String, GroupRepresentation> targetByUser, GroupRepresentation source) {
+        Job job = new Job(UUID.randomUUID().toString(), targetByUser.size());
+        jobs.put(job.getId(), job);
+        evictOldJobs();
+        jobRunner.submit(() -> KeycloakPriority.run(KeycloakPriority.MASSE, () -> run(job, targetByUser, source)));
+        return job;
+    }
+
+    private void run(Job job, Map<String, GroupRepresentation> targetByUser, GroupRepresentation source) {
+        Queue<UserWithGroups> moved = new ConcurrentLinkedQueue<>();
+        try {
+            FanOutExecutor.Result<String, Boolean> result = pipeline.invokeAll(targetByUser.keySet(), userId -> {
+                try {
+                    boolean changed = reassignWithRetry(userId, targetByUser.get(userId), source, moved);
+                    job.succeed(userId, changed);
+                    // Appel terminé après l'échéance (tâche close) : son changement est reporté tout de suite
+                    if (moved.size() >= DIRECTORY_BATCH || job.getStatus() != JobStatus.EN_COURS) {
+                        publishToDirectory(moved);
+                    }
+                    return changed;
+                } catch (RuntimeException e) {
+                    job.fail(userId, e.getMessage());
+                    throw e;
+                }
+            });
+            // Appels hors délai ou non lancés : comptés en échec une seule fois, un résultat tardif est ignoré
+            result.failures().forEach(job::fail);
+            job.finish(JobStatus.TERMINEE);
+        } catch (Exception e) {
+            job.fail("*", e.getMessage());
+            job.finish(JobStatus.ECHEC);
+        } finally {
+            publishToDirectory(moved);
+        }
+        System.out.println("[INFO] Réaffectation " + job.getId() + " : " + job.getChanged() + " modifiés, "
+                + job.getUnchanged() + " inchangés, " + job.getFailed() + " en échec");
+    }
+
+    // 🔹 Appartenances modifiées reportées dans l'annuaire : recherche par région et PUT utilisateur à jour
+    private synchronized void publishToDirectory(Queue<UserWithGroups> moved) {
+        List<UserWithGroups> batch = new ArrayList<>();
+        for (UserWithGroups u; (u = moved.poll()) != null; ) batch.add(u);
+        if (!batch.isEmpty()) userDirectory.applyChanges(batch, List.of());
+    }
+
+    private boolean reassignWithRetry(String userId, GroupRepresentation target, GroupRepresentation source,
+                                      Queue<UserWithGroups> moved) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return reassign(userId, target, source, moved);
+            } catch (NotFoundException e) {
+                throw new IllegalStateException("Utilisateur introuvable");
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) throw e;
+                try {
+                    Thread.sleep(retryBackoffMs * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /** Vrai si un appel d'écriture a été nécessaire ; la nouvelle appartenance est alors ajoutée à {@code moved}. */
+    private boolean reassign(String userId, GroupRepresentation target, GroupRepresentation source,
+                             Queue<UserWithGroups> moved) {
+        List<String> toLeave = new ArrayList<>();
+        List<GroupRepresentation> kept = new ArrayList<>();
+        boolean alreadyMember = false;
+        for (GroupRepresentation g : keycloakService.getUserGroups(userId)) {
+            if (g.getId().equals(target.getId())) {
+                alreadyMember = true;
+                kept.add(g);
+            } else if ("region".equalsIgnoreCase(getAttributeValue(g, "type", ""))
+                    || (source != null && g.getId().equals(source.getId()))) {
+                toLeave.add(g.getId());
+            } else {
+                kept.add(g);
+            }
+        }
+        if (alreadyMember && toLeave.isEmpty()) return false;
+        keycloakService.changeUserGroups(userId, toLeave, alreadyMember ? null : target.getId());
+        if (!alreadyMember) kept.add(target);
+        // Utilisateur absent de l'annuaire (pas encore chargé) : le prochain chargement lira Keycloak
+        userDirectory.findById(userId).ifPresent(user -> moved.add(new UserWithGroups(user, kept)));
+        return true;
+    }
+
+    private void evictOldJobs() {
+        if (jobs.size() <= MAX_KEPT_JOBS) return;
+        jobs.values().stream()
+                .filter(j -> j.getStatus() != JobStatus.EN_COURS)
+                .sorted(Comparator.comparing(Job::getStartedAt))
+                .limit(jobs.size() - MAX_KEPT_JOBS)
+                .forEach(j -> jobs.remove(j.getId()));
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        jobRunner.shutdownNow();
+        pipeline.shutdown();
+    }
+
+    /** Avancement d'une réaffectation ; sérialisé tel quel par GET .../affecter-region/bulk/{jobId}. */
+    public static class Job {
+        private final String id;
+        private final int total;
+        private final Instant startedAt = Instant.now();
+        private final AtomicInteger changed = new AtomicInteger();
+        private final AtomicInteger unchanged = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final Map<String, String> errors = new ConcurrentHashMap<>();
+        // Un utilisateur n'est compté qu'une fois : le premier résultat connu l'emporte
+        private final Set<String> settledIds = ConcurrentHashMap.newKeySet();
+        private volatile JobStatus status = JobStatus.EN_COURS;
+        private volatile Instant finishedAt;
+
+        Job(String id, int total) {
+            this.id = id;
+            this.total = total;
+        }
+
+        void succeed(String userId, boolean wasChanged) {
+            if (!settledIds.add(userId)) return;
+            (wasChanged ? changed : unchanged).incrementAndGet();
+        }
+
+        void fail(String userId, String error) {
+            if (!settledIds.add(userId)) return;
+            failed.incrementAndGet();
+            if (errors.size() < MAX_REPORTED_ERRORS) errors.put(userId, String.valueOf(error));
+        }
+
+        void finish(JobStatus status) {
+            this.finishedAt = Instant.now();
+            this.status = status;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public JobStatus getStatus() {
+            return status;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getChanged() {
+            return changed.get();
+        }
+
+        public int getUnchanged() {
+            return unchanged.get();
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getProcessed() {
+            return changed.get() + unchanged.get() + failed.get();
+        }
+
+        public Instant getStartedAt() {
+            return startedAt;
+        }
+
+        public Instant getFinishedAt() {
+            return finishedAt;
+        }
+
+        public Map<String, String> getErrors() {
+            return errors;
+        }
+    }
+}
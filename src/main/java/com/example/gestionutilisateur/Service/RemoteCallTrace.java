@@ -0,0 +1,150 @@
+package com.example.gestionutilisateur.Service;
+
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Compte et chronomètre les appels distants (Keycloak, JPA) faits pour le compte d'une requête HTTP.
+ * <p>
+ * La trace courante est portée par le thread ({@link #current()}) ; {@link FanOutExecutor} la transmet
+ * à ses threads, les appels parallélisés sont donc comptés dans la requête qui les a lancés.
+ * Sans trace active, {@link #record} ne fait rien : jobs planifiés et threads de fond ne sont pas tracés.
+ * La trace retient aussi la date des données servies depuis un cache ({@link #servedFrom}).
+ */
+public final class RemoteCallTrace {
+
+    public static final String KEYCLOAK = "keycloak";
+    public static final String JPA = "jpa";
+
+    private static final ThreadLocal<RemoteCallTrace> CURRENT = new ThreadLocal<>();
+
+    private final String name;
+    private final long startedAt = System.nanoTime();
+    private final Map<String, Counter> byOperation = new ConcurrentHashMap<>();
+    private final AtomicReference<Instant> oldestData = new AtomicReference<>();
+
+    private RemoteCallTrace(String name) {
+        this.name = name;
+    }
+
+    /** Un appel d'un type donné : nombre et durée cumulée. */
+    private static final class Counter {
+        final LongAdder count = new LongAdder();
+        final LongAdder nanos = new LongAdder();
+    }
+
+    public record Stats(long count, double durationMs) {
+    }
+
+    /**
+     * Photographie d'une trace : totaux par système ({@code keycloak}, {@code jpa})
+     * et détail par opération ({@code keycloak:users.get}, {@code jpa:UtilisateurRepository.findAll}).
+     */
+    public record Summary(String name, double elapsedMs, Map<String, Stats> bySystem, Map<String, Stats> byOperation) {
+
+        public long count(String system) {
+            Stats stats = bySystem.get(system);
+            return stats == null ? 0 : stats.count();
+        }
+
+        public long totalCount() {
+            return bySystem.values().stream().mapToLong(Stats::count).sum();
+        }
+
+        public String breakdown() {
+            StringBuilder sb = new StringBuilder();
+            bySystem.forEach((system, stats) -> {
+                if (!sb.isEmpty()) sb.append(" | ");
+                sb.append(system).append(": ").append(stats.count()).append(" appels / ")
+                        .append(String.format(Locale.ROOT, "%.1f", stats.durationMs())).append(" ms (");
+                String prefix = system + ":";
+                StringBuilder ops = new StringBuilder();
+                byOperation.forEach((op, s) -> {
+                    if (!op.startsWith(prefix)) return;
+                    if (!ops.isEmpty()) ops.append(", ");
+                    ops.append(op.substring(prefix.length())).append("×").append(s.count());
+                });
+                sb.append(ops).append(')');
+            });
+            return sb.isEmpty() ? "aucun appel distant" : sb.toString();
+        }
+    }
+
+    public static RemoteCallTrace start(String name) {
+        RemoteCallTrace trace = new RemoteCallTrace(name);
+        CURRENT.set(trace);
+        return trace;
+    }
+
+    public static RemoteCallTrace current() {
+        return CURRENT.get();
+    }
+
+    /** Détache la trace du thread courant. */
+    public void end() {
+        if (CURRENT.get() == this) {
+            CURRENT.remove();
+        }
+    }
+
+    /** Exécute {@code action} avec {@code trace} comme trace courante (ex. thread d'un pool). */
+    public static <T> T within(RemoteCallTrace trace, Supplier<T> action) {
+        if (trace == null) {
+            return action.get();
+        }
+        RemoteCallTrace previous = CURRENT.get();
+        CURRENT.set(trace);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) CURRENT.remove();
+            else CURRENT.set(previous);
+        }
+    }
+
+    /** Ajoute un appel à la trace courante, s'il y en a une. */
+    public static void record(String system, String operation, long nanos) {
+        RemoteCallTrace trace = CURRENT.get();
+        if (trace != null) {
+            trace.add(system, operation, nanos);
+        }
+    }
+
+    /** Note la date de chargement des données servies depuis un cache (annuaire, arbre des groupes). */
+    public static void servedFrom(Instant loadedAt) {
+        RemoteCallTrace trace = CURRENT.get();
+        if (trace != null && loadedAt != null) {
+            trace.oldestData.accumulateAndGet(loadedAt, (a, b) -> a == null || b.isBefore(a) ? b : a);
+        }
+    }
+
+    /** Chargement le plus ancien parmi les données servies depuis un cache, null si aucune. */
+    public Instant getOldestDataLoadedAt() {
+        return oldestData.get();
+    }
+
+    void add(String system, String operation, long nanos) {
+        Counter counter = byOperation.computeIfAbsent(system + ":" + operation, k -> new Counter());
+        counter.count.increment();
+        counter.nanos.add(nanos);
+    }
+
+    public Summary summary() {
+        Map<String, Stats> bySystem = new TreeMap<>();
+        Map<String, Stats> ops = new TreeMap<>();
+        byOperation.forEach((key, counter) -> {
+            Stats stats = new Stats(counter.count.sum(), counter.nanos.sum() / 1_000_000.0);
+            ops.put(key, stats);
+            String system = key.substring(0, key.indexOf(':'));
+            bySystem.merge(system, stats,
+                    (a, b) -> new Stats(a.count() + b.count(), a.durationMs() + b.durationMs()));
+        });
+        return new Summary(name, (System.nanoTime() - startedAt) / 1_000_000.0, bySystem, ops);
+    }
+}
@@ -0,0 +1,50 @@
+package com.example.gestionutilisateur.Service;
+
+import org.aopalliance.intercept.MethodInterceptor;
+import org.springframework.aop.framework.ProxyFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.data.repository.Repository;
+import org.springframework.stereotype.Component;
+import org.springframework.util.ClassUtils;
+
+import java.util.Arrays;
+
+/**
+ * Enveloppe les repositories Spring Data pour compter leurs appels dans la {@link RemoteCallTrace} courante
+ * ({@code jpa:UtilisateurRepository.findByKeycloakId}, ...). Hors requête tracée, l'appel passe directement.
+ */
+@Component
+public class RepositoryCallTracer implements BeanPostProcessor {
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (!(bean instanceof Repository<?, ?>)) {
+            return bean;
+        }
+        Class<?>[] repositoryInterfaces = ClassUtils.getAllInterfacesAsSet(bean).stream()
+                .filter(Repository.class::isAssignableFrom)
+                .toArray(Class<?>[]::new);
+        String repositoryName = Arrays.stream(repositoryInterfaces)
+                .filter(i -> !i.getName().startsWith("org.springframework."))
+                .map(Class::getSimpleName)
+                .findFirst()
+                .orElse(beanName);
+
+        ProxyFactory factory = new ProxyFactory();
+        factory.setTarget(bean);
+        factory.setInterfaces(repositoryInterfaces);
+        factory.addAdvice((MethodInterceptor) invocation -> {
+            if (RemoteCallTrace.current() == null) {
+                return invocation.proceed();
+            }
+            long start = System.nanoTime();
+            try {
+                return invocation.proceed();
+            } finally {
+                RemoteCallTrace.record(RemoteCallTrace.JPA,
+                        repositoryName + "." + invocation.getMethod().getName(), System.nanoTime() - start);
+            }
+        });
+        return factory.getProxy(bean.getClass().getClassLoader());
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Regroupe les lectures Keycloak identiques (même opération, mêmes arguments, même {@link KeycloakPriority})
+ * lancées en même temps :
+ * le premier appelant fait l'appel, les suivants attendent et reçoivent le même résultat (ou la même exception).
+ * <p>
+ * Les objets rendus sont partagés entre appelants : à traiter en lecture seule.
+ * Une requête interactive ne suit jamais la lecture d'un job, qui peut attendre longtemps sa place.
+ * Après une écriture, {@link #forgetAll()} détache les lectures en vol, les lectures suivantes repartent de Keycloak.
+ * Métriques : {@code keycloak.singleflight.calls} (role=leader|follower) — taux de regroupement = follower / total.
+ */
+@Component
+public class SingleFlight {
+
+    private record Key(String operation, KeycloakPriority priority, List<Object> args) {
+    }
+
+    private final Map<Key, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final MeterRegistry meterRegistry;
+
+    @Value("${keycloak.singleflight.enabled:true}")
+    private boolean enabled;
+
+    public SingleFlight(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+        Gauge.builder("keycloak.singleflight.in-flight", inFlight, Map::size)
+                .description("Lectures Keycloak en cours partageables")
+                .register(meterRegistry);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String operation, Supplier<T> read, Object... args) {
+        if (!enabled) {
+            return read.get();
+        }
+        Key key = new Key(operation, KeycloakPriority.current(), Arrays.asList(args));
+        CompletableFuture<Object> mine = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, mine);
+        if (existing != null) {
+            counter(operation, "follower").increment();
+            return (T) await(existing);
+        }
+
+        counter(operation, "leader").increment();
+        try {
+            T value = read.get();
+            mine.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            mine.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /** Les lectures en cours ne sont plus partagées (elles ont pu commencer avant une écriture). */
+    public void forgetAll() {
+        inFlight.clear();
+    }
+
+    private static Object await(CompletableFuture<Object> flight) {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            // Même exception que le premier appelant (NotFoundException, ...), pour les mêmes traitements d'erreur
+            if (e.getCause() instanceof RuntimeException re) throw re;
+            if (e.getCause() instanceof Error err) throw err;
+            throw e;
+        }
+    }
+
+    private Counter counter(String operation, String role) {
+        return Counter.builder("keycloak.singleflight.calls")
+                .description("Lectures Keycloak, faites (leader) ou partagées (follower)")
+                .tag("operation", operation)
+                .tag("role", role)
+                .register(meterRegistry);
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.gestionutilisateur.Service;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Source d'événements en mémoire, pour le développement local et les tests
+ * (keycloak.sync.event-source=stub) : les événements sont publiés par l'appelant.
+ */
+@Component
+@ConditionalOnProperty(name = "keycloak.sync.event-source", havingValue = "stub")
+public class StubEventSource implements KeycloakEventSource {
+
+    private final List<KeycloakChangeEvent> events = new CopyOnWriteArrayList<>();
+
+    public void publish(KeycloakChangeEvent event) {
+        events.add(event);
+    }
+
+    public void clear() {
+        events.clear();
+    }
+
+    @Override
+    public EventBatch poll(long sinceMillis, int maxEvents) {
+        List<KeycloakChangeEvent> batch = events.stream()
+                .filter(e -> e.time() >= sinceMillis)
+                .sorted(Comparator.comparingLong(KeycloakChangeEvent::time))
+                .collect(Collectors.toList());
+        return new EventBatch(batch, batch.size() <= maxEvents);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.gestionutilisateur.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Avancement d'une synchronisation complète : utilisateurs traités, total et estimation du temps restant.
+ */
+public class SyncProgress {
+
+    public enum State { EN_ATTENTE, LECTURE_KEYCLOAK, EN_COURS, TERMINEE, ECHEC }
+
+    private final Instant startedAt;
+    private final AtomicInteger processed = new AtomicInteger();
+    private volatile State state;
+    private volatile int total = -1;
+    private volatile Instant copyStartedAt;
+    private volatile Instant finishedAt;
+    private volatile String error;
+
+    private SyncProgress(State state, Instant startedAt) {
+        this.state = state;
+        this.startedAt = startedAt;
+    }
+
+    public static SyncProgress pending() {
+        return new SyncProgress(State.EN_ATTENTE, null);
+    }
+
+    public static SyncProgress start() {
+        return new SyncProgress(State.LECTURE_KEYCLOAK, Instant.now());
+    }
+
+    /** Fin de la lecture du realm : le total est connu, la recopie commence. */
+    void usersLoaded(int total) {
+        this.total = total;
+        this.copyStartedAt = Instant.now();
+        this.state = State.EN_COURS;
+    }
+
+    int add(int count) {
+        return processed.addAndGet(count);
+    }
+
+    void complete() {
+        finishedAt = Instant.now();
+        state = State.TERMINEE;
+    }
+
+    void fail(Exception e) {
+        finishedAt = Instant.now();
+        error = e.getMessage();
+        state = State.ECHEC;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public Instant getStartedAt() {
+        return startedAt;
+    }
+
+    public Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getProcessed() {
+        return processed.get();
+    }
+
+    /** -1 tant que la lecture du realm n'est pas terminée. */
+    public int getTotal() {
+        return total;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /** Temps restant estimé au rythme de recopie observé (hors lecture du realm), null tant qu'il n'est pas calculable. */
+    public Duration getEta() {
+        int done = processed.get();
+        Instant copyStart = copyStartedAt;
+        if (state != State.EN_COURS || done == 0 || total < 0 || copyStart == null) return null;
+        long elapsedMs = Duration.between(copyStart, Instant.now()).toMillis();
+        return Duration.ofMillis(elapsedMs * (total - done) / done);
+    }
+
+    /** Débit de recopie en base locale (hors lecture du realm). */
+    public double getRowsPerSecond() {
+        if (copyStartedAt == null) return 0;
+        Instant end = finishedAt != null ? finishedAt : Instant.now();
+        long ms = Math.max(1, Duration.between(copyStartedAt, end).toMillis());
+        return processed.get() * 1000.0 / ms;
+    }
+
+    @Override
+    public String toString() {
+        Duration eta = getEta();
+        return processed.get() + "/" + (total < 0 ? "?" : total)
+                + String.format(" (%.0f lignes/s", getRowsPerSecond())
+                + (eta != null ? ", reste ~" + eta.toSeconds() + " s)" : ")");
+    }
+}
@@ -0,0 +1,53 @@
+package com.example.gestionutilisateur.Service;
+
+import java.text.Normalizer;
+import java.util.Locale;
+
+/**
+ * Repli des accents et de la casse, équivalent à NFD + suppression des diacritiques + minuscules.
+ * Les caractères latins (jusqu'à U+024F) passent par une table précalculée, sans Normalizer ni regex ;
+ * les autres chaînes repassent par le chemin complet.
+ */
+public final class TextFolding {
+
+    private static final int TABLE_SIZE = 0x250;
+    private static final char[] TABLE = new char[TABLE_SIZE];
+
+    static {
+        for (char c = 0; c < TABLE_SIZE; c++) {
+            String stripped = slowFold(String.valueOf(c));
+            TABLE[c] = stripped.length() == 1 ? stripped.charAt(0) : Character.toLowerCase(c);
+        }
+    }
+
+    private TextFolding() {
+    }
+
+    /** Caractère replié, ou le caractère lui-même en minuscule hors table. */
+    public static char fold(char c) {
+        return c < TABLE_SIZE ? TABLE[c] : Character.toLowerCase(c);
+    }
+
+    /** Chaîne repliée et sans espaces de bord ; "" pour null. */
+    public static String fold(String s) {
+        if (s == null) return "";
+        int length = s.length();
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(i) >= TABLE_SIZE) {
+                return slowFold(s).trim();
+            }
+        }
+
+        char[] folded = new char[length];
+        for (int i = 0; i < length; i++) {
+            folded[i] = TABLE[s.charAt(i)];
+        }
+        return new String(folded).trim();
+    }
+
+    private static String slowFold(String s) {
+        String n = Normalizer.normalize(s, Normalizer.Form.NFD)
+                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
+        return n.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,335 @@
+package com.example.gestionutilisateur.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Index de trigrammes sur les champs repliés (accents/casse) des utilisateurs :
+ * "prénom nom", username et email.
+ * <p>
+ * Chaque utilisateur est un document numéroté ; les listes de documents par trigramme sont des
+ * tableaux d'entiers triés. Une mise à jour marque l'ancien document comme supprimé et en ajoute un
+ * nouveau ; l'index est compacté quand les documents supprimés deviennent majoritaires.
+ * Les requêtes ne parcourent que les listes les plus sélectives. Leur espace de travail (un compteur par document)
+ * est pris dans un petit pool borné au nombre de cœurs, et non gardé par thread : avec 200 threads Tomcat,
+ * la mémoire retenue ne dépend pas du nombre de threads ayant servi une recherche. Il est libéré au compactage.
+ */
+public class TrigramIndex {
+
+    private static final int MAX_LIMIT = 100;
+    private static final int MIN_COMPACTION_SIZE = 1024;
+    private static final int MAX_BONUS = 50;
+    private static final int SAMPLE_FACTOR = 20;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final BlockingQueue<Scratch> scratchPool =
+            new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private Map<Long, Postings> postings = new HashMap<>();
+    private final Map<String, Integer> docByUserId = new HashMap<>();
+    private String[] userIds = new String[MIN_COMPACTION_SIZE];
+    private String[][] fields = new String[MIN_COMPACTION_SIZE][];
+    private int docCount;
+    private int liveCount;
+
+    public record Match(String userId, int score) {
+    }
+
+    /* ==================== MISES À JOUR ==================== */
+
+    public void put(String userId, String firstName, String lastName, String username, String email) {
+        String fullName = ((firstName == null ? "" : firstName) + " " + (lastName == null ? "" : lastName));
+        String[] folded = {TextFolding.fold(fullName), TextFolding.fold(username), TextFolding.fold(email)};
+
+        lock.writeLock().lock();
+        try {
+            Integer existing = docByUserId.get(userId);
+            if (existing != null) {
+                if (Arrays.equals(fields[existing], folded)) return;
+                delete(existing);
+            }
+            addDocument(userId, folded);
+            if (docCount >= MIN_COMPACTION_SIZE && liveCount < docCount / 2) {
+                compact();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String userId) {
+        lock.writeLock().lock();
+        try {
+            Integer existing = docByUserId.remove(userId);
+            if (existing != null) delete(existing);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void addDocument(String userId, String[] folded) {
+        if (docCount == userIds.length) {
+            userIds = Arrays.copyOf(userIds, docCount * 2);
+            fields = Arrays.copyOf(fields, docCount * 2);
+        }
+        int doc = docCount++;
+        userIds[doc] = userId;
+        fields[doc] = folded;
+        docByUserId.put(userId, doc);
+        liveCount++;
+
+        for (String field : folded) {
+            // 🔹 Bordures de mots : " jean dupont " produit " je" et "nt "
+            int length = field.length() + 2;
+            for (int i = 0; i + 3 <= length; i++) {
+                long key = pack(paddedCharAt(field, i), paddedCharAt(field, i + 1), paddedCharAt(field, i + 2));
+                postings.computeIfAbsent(key, k -> new Postings()).add(doc);
+            }
+        }
+    }
+
+    private void delete(int doc) {
+        userIds[doc] = null;
+        fields[doc] = null;
+        liveCount--;
+    }
+
+    private void compact() {
+        String[] oldIds = userIds;
+        String[][] oldFields = fields;
+        int oldCount = docCount;
+
+        postings = new HashMap<>();
+        docByUserId.clear();
+        // Espaces de travail dimensionnés pour l'ancien nombre de documents
+        scratchPool.clear();
+        userIds = new String[Math.max(MIN_COMPACTION_SIZE, liveCount * 2)];
+        fields = new String[userIds.length][];
+        docCount = 0;
+        liveCount = 0;
+        for (int doc = 0; doc < oldCount; doc++) {
+            if (oldIds[doc] != null) addDocument(oldIds[doc], oldFields[doc]);
+        }
+    }
+
+    /* ==================== REQUÊTES ==================== */
+
+    /**
+     * Utilisateurs dont les champs contiennent tous les trigrammes de la requête : sur-ensemble
+     * des correspondances "contient", à vérifier par l'appelant.
+     *
+     * @return null si l'index n'apporte rien : requête de moins de 3 caractères,
+     * ou trigrammes présents dans plus de la moitié des utilisateurs (un parcours complet coûte autant)
+     */
+    public List<String> candidatesContaining(String query) {
+        String q = TextFolding.fold(query);
+        if (q.length() < 3) return null;
+
+        long[] grams = distinct(innerTrigrams(q));
+        lock.readLock().lock();
+        try {
+            Postings[] lists = lookupBySize(grams);
+            if (lists[0] == null) return List.of();
+            if (liveCount >= MIN_COMPACTION_SIZE && lists[0].size > liveCount / 2) return null;
+
+            // 🔹 Intersection : on parcourt la liste la plus courte, les autres sont interrogées par dichotomie
+            List<String> result = new ArrayList<>();
+            Postings rarest = lists[0];
+            for (int i = 0; i < rarest.size; i++) {
+                int doc = rarest.docs[i];
+                if (userIds[doc] != null && countContaining(lists, 1, doc) == lists.length - 1) {
+                    result.add(userIds[doc]);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Recherche approchée classée : tolère les fautes de frappe (au moins la moitié des trigrammes
+     * en commun) et favorise les débuts de mots. Renvoie au plus {@code limit} résultats.
+     */
+    public List<Match> search(String query, int limit) {
+        String q = TextFolding.fold(query);
+        if (q.length() < 2) return List.of();
+        int k = Math.max(1, Math.min(limit, MAX_LIMIT));
+
+        long[] grams = distinct(queryTrigrams(q));
+        int minHits = grams.length <= 2 ? 1 : (grams.length + 1) / 2;
+        String wordStart = " " + q;
+
+        lock.readLock().lock();
+        try {
+            Postings[] lists = lookupBySize(grams);
+            Scratch s = scratchPool.poll();
+            if (s == null) s = new Scratch();
+            s.ensureCapacity(docCount);
+
+            // 🔹 Les listes sélectives sont parcourues et comptées ; les trigrammes très fréquents
+            // ne sont vérifiés (par dichotomie) que pour les candidats déjà trouvés
+            int stopSize = Math.max(MIN_COMPACTION_SIZE, liveCount / 8);
+            int firstStop = 0;
+            while (firstStop < lists.length && (lists[firstStop] == null || lists[firstStop].size <= stopSize)) {
+                Postings p = lists[firstStop++];
+                if (p == null) continue;
+                for (int i = 0; i < p.size; i++) {
+                    int doc = p.docs[i];
+                    if (s.hits[doc]++ == 0) s.touched[s.touchedCount++] = doc;
+                }
+            }
+            int stopLists = lists.length - firstStop;
+            if (s.touchedCount == 0 && stopLists > 0) {
+                // 🔹 Requête peu sélective : échantillon borné de la liste la moins fréquente
+                Postings p = lists[firstStop++];
+                stopLists--;
+                for (int i = 0; i < p.size && s.touchedCount < k * SAMPLE_FACTOR; i++) {
+                    s.hits[p.docs[i]] = 1;
+                    s.touched[s.touchedCount++] = p.docs[i];
+                }
+            }
+
+            int[] topDocs = new int[k];
+            int[] topScores = new int[k];
+            int found = 0;
+            for (int i = 0; i < s.touchedCount; i++) {
+                int doc = s.touched[i];
+                int hits = s.hits[doc];
+                s.hits[doc] = 0;
+                if (userIds[doc] == null || hits + stopLists < minHits) continue;
+
+                hits += countContaining(lists, firstStop, doc);
+                if (hits < minHits) continue;
+                int score = hits * 100 / grams.length;
+                if (found == k && score + MAX_BONUS <= topScores[k - 1]) continue;
+
+                score += bonus(fields[doc], q, wordStart);
+                if (found < k) {
+                    found++;
+                } else if (score <= topScores[k - 1]) {
+                    continue;
+                }
+                // 🔹 Insertion triée dans le top-K (k petit)
+                int pos = found - 1;
+                while (pos > 0 && topScores[pos - 1] < score) {
+                    topScores[pos] = topScores[pos - 1];
+                    topDocs[pos] = topDocs[pos - 1];
+                    pos--;
+                }
+                topScores[pos] = score;
+                topDocs[pos] = doc;
+            }
+            s.touchedCount = 0;
+            // Rendu seulement après un parcours complet (compteurs remis à zéro) ; pool plein : abandonné
+            scratchPool.offer(s);
+
+            List<Match> result = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                result.add(new Match(userIds[topDocs[i]], topScores[i]));
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** Listes des trigrammes triées par taille croissante ; un trigramme absent donne une liste nulle, en tête. */
+    private Postings[] lookupBySize(long[] grams) {
+        Postings[] lists = new Postings[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            lists[i] = postings.get(grams[i]);
+        }
+        Arrays.sort(lists, Comparator.comparingInt(p -> p == null ? 0 : p.size));
+        return lists;
+    }
+
+    /** Nombre de listes (à partir de {@code from}) contenant le document ; les listes sont triées par numéro. */
+    private static int countContaining(Postings[] lists, int from, int doc) {
+        int count = 0;
+        for (int l = from; l < lists.length; l++) {
+            Postings p = lists[l];
+            if (p != null && Arrays.binarySearch(p.docs, 0, p.size, doc) >= 0) count++;
+        }
+        return count;
+    }
+
+    private static int bonus(String[] docFields, String q, String wordStart) {
+        int bonus = 0;
+        for (String field : docFields) {
+            if (field.startsWith(q)) return MAX_BONUS;
+            if (field.contains(wordStart)) bonus = Math.max(bonus, 40);
+            else if (field.contains(q)) bonus = Math.max(bonus, 25);
+        }
+        return bonus;
+    }
+
+    /* ==================== TRIGRAMMES ==================== */
+
+    private static long pack(char a, char b, char c) {
+        return ((long) a << 32) | ((long) b << 16) | c;
+    }
+
+    private static char paddedCharAt(String field, int i) {
+        return i == 0 || i == field.length() + 1 ? ' ' : field.charAt(i - 1);
+    }
+
+    private static long[] innerTrigrams(String q) {
+        long[] grams = new long[q.length() - 2];
+        for (int i = 0; i < grams.length; i++) {
+            grams[i] = pack(q.charAt(i), q.charAt(i + 1), q.charAt(i + 2));
+        }
+        return grams;
+    }
+
+    /** Trigrammes internes plus le trigramme de début de mot (" xy"). */
+    private static long[] queryTrigrams(String q) {
+        long start = pack(' ', q.charAt(0), q.charAt(1));
+        if (q.length() < 3) return new long[]{start};
+        long[] inner = innerTrigrams(q);
+        long[] grams = Arrays.copyOf(inner, inner.length + 1);
+        grams[inner.length] = start;
+        return grams;
+    }
+
+    private static long[] distinct(long[] grams) {
+        return Arrays.stream(grams).distinct().toArray();
+    }
+
+    private static final class Postings {
+        private int[] docs = new int[4];
+        private int size;
+
+        void add(int doc) {
+            if (size > 0 && docs[size - 1] == doc) return;
+            if (size == docs.length) docs = Arrays.copyOf(docs, size * 2);
+            docs[size++] = doc;
+        }
+    }
+
+    private static final class Scratch {
+        private int[] hits = new int[0];
+        private int[] touched = new int[0];
+        private int touchedCount;
+
+        void ensureCapacity(int docCount) {
+            // Agrandi avec une marge, réduit si l'index a beaucoup rétréci
+            if (hits.length < docCount || hits.length > 4 * (docCount + MIN_COMPACTION_SIZE)) {
+                int size = docCount + docCount / 2 + 16;
+                hits = new int[size];
+                touched = new int[size];
+            }
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Annuaire local des utilisateurs Keycloak, servi depuis la mémoire.
+ * Les index (id, username, email, appartenance aux groupes) sont reconstruits en arrière-plan
+ * et publiés d'un seul coup : les lectures ne bloquent jamais pendant un rafraîchissement.
+ */
+@Service
+public class UserDirectory {
+
+    private final KeycloakService keycloakService;
+    private final ReentrantLock refreshLock = new ReentrantLock();
+    private final TrigramIndex textIndex = new TrigramIndex();
+
+    @Value("${keycloak.directory.enabled:true}")
+    private boolean enabled;
+
+    private volatile DirectorySnapshot snapshot = DirectorySnapshot.EMPTY;
+
+    public UserDirectory(KeycloakService keycloakService) {
+        this.keycloakService = keycloakService;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** Vrai quand l'annuaire est activé et qu'un premier chargement a réussi. */
+    public boolean isReady() {
+        return enabled && snapshot.loadedAt() != null;
+    }
+
+    public Instant getLoadedAt() {
+        return snapshot.loadedAt();
+    }
+
+    @Scheduled(initialDelayString = "${keycloak.directory.initial-delay-ms:${keycloak.directory.refresh-ms:300000}}",
+            fixedDelayString = "${keycloak.directory.refresh-ms:300000}")
+    public void scheduledRefresh() {
+        if (!enabled) return;
+        try {
+            KeycloakPriority.run(KeycloakPriority.ARRIERE_PLAN, this::refresh);
+        } catch (Exception e) {
+            System.out.println("⚠️ Rafraîchissement de l'annuaire utilisateurs échoué : " + e.getMessage());
+        }
+    }
+
+    /** Recharge tout le realm ; ignoré si un rafraîchissement est déjà en cours. */
+    public void refresh() {
+        if (!refreshLock.tryLock()) return;
+        try {
+            Map<String, List<GroupRepresentation>> groupsByUser = keycloakService.getAllUserGroups();
+            publish(keycloakService.getAllUsers(groupsByUser), groupsByUser);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /** Remplace le contenu de l'annuaire par un realm déjà lu (synchronisation complète). */
+    public void load(List<UserRepresentation> users, Map<String, List<GroupRepresentation>> groupsByUser) {
+        if (!enabled) return;
+        refreshLock.lock();
+        try {
+            publish(users, groupsByUser);
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private void publish(List<UserRepresentation> users, Map<String, List<GroupRepresentation>> groupsByUser) {
+        DirectorySnapshot next = DirectorySnapshot.build(users, groupsByUser, Instant.now());
+        updateTextIndex(snapshot, next);
+        snapshot = next;
+    }
+
+    /**
+     * Applique des changements ponctuels (synchronisation incrémentale) sans relire le realm.
+     * Sans premier chargement, il n'y a rien à corriger : le prochain rafraîchissement lira tout.
+     */
+    public void applyChanges(Collection<UserWithGroups> upserts, Collection<String> removedIds) {
+        if (!enabled || (upserts.isEmpty() && removedIds.isEmpty())) return;
+        refreshLock.lock();
+        try {
+            DirectorySnapshot current = snapshot;
+            if (current.loadedAt() == null) return;
+
+            Map<String, UserRepresentation> users = new LinkedHashMap<>();
+            current.users().forEach(u -> users.put(u.getId(), u));
+            Map<String, List<GroupRepresentation>> groupsByUser = new HashMap<>(current.groupsByUser());
+
+            for (UserWithGroups change : upserts) {
+                users.put(change.user().getId(), change.user());
+                groupsByUser.put(change.user().getId(), change.groups());
+            }
+            for (String id : removedIds) {
+                users.remove(id);
+                groupsByUser.remove(id);
+            }
+
+            DirectorySnapshot next = DirectorySnapshot.build(new ArrayList<>(users.values()), groupsByUser, current.loadedAt());
+            updateTextIndex(current, next);
+            snapshot = next;
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    /** Ne réindexe que les utilisateurs ajoutés, modifiés ou supprimés depuis le snapshot précédent. */
+    private void updateTextIndex(DirectorySnapshot previous, DirectorySnapshot next) {
+        for (UserRepresentation user : next.users()) {
+            UserRepresentation old = previous.byId().get(user.getId());
+            if (old == null || !sameIndexedFields(old, user)) {
+                textIndex.put(user.getId(), user.getFirstName(), user.getLastName(), user.getUsername(), user.getEmail());
+            }
+        }
+        for (String id : previous.byId().keySet()) {
+            if (!next.byId().containsKey(id)) textIndex.remove(id);
+        }
+    }
+
+    private static boolean sameIndexedFields(UserRepresentation a, UserRepresentation b) {
+        return Objects.equals(a.getFirstName(), b.getFirstName())
+                && Objects.equals(a.getLastName(), b.getLastName())
+                && Objects.equals(a.getUsername(), b.getUsername())
+                && Objects.equals(a.getEmail(), b.getEmail());
+    }
+
+    /* ==================== LECTURES ==================== */
+
+    // 🔹 Snapshot courant ; son âge est noté pour l'en-tête Age de la réponse
+    private DirectorySnapshot read() {
+        DirectorySnapshot current = snapshot;
+        RemoteCallTrace.servedFrom(current.loadedAt());
+        return current;
+    }
+
+    public List<UserRepresentation> getAll() {
+        return read().users();
+    }
+
+    public Optional<UserRepresentation> findById(String id) {
+        return Optional.ofNullable(id).map(read().byId()::get);
+    }
+
+    public Optional<UserRepresentation> findByUsername(String username) {
+        return Optional.ofNullable(username).map(DirectorySnapshot::key).map(read().byUsername()::get);
+    }
+
+    public Optional<UserRepresentation> findByEmail(String email) {
+        return Optional.ofNullable(email).map(DirectorySnapshot::key).map(read().byEmail()::get);
+    }
+
+    /** Sous-liste [offset, offset + size) du snapshot courant, dans l'ordre Keycloak. */
+    public List<UserRepresentation> getPage(int offset, int size) {
+        List<UserRepresentation> users = read().users();
+        if (offset >= users.size()) return List.of();
+        return users.subList(offset, Math.min(users.size(), offset + size));
+    }
+
+    /** Position d'un utilisateur dans le snapshot courant, -1 s'il n'y est plus. */
+    public int positionOf(String userId) {
+        Integer position = userId == null ? null : read().positionById().get(userId);
+        return position == null ? -1 : position;
+    }
+
+    /**
+     * Candidats pour les filtres texte (nom, username, email), dans l'ordre de l'annuaire :
+     * l'index de trigrammes réduit la liste avec le filtre le plus long, le filtrage exact reste à faire.
+     */
+    public List<UserRepresentation> findCandidates(UserSearchCriteria criteria) {
+        String longest = Stream.of(criteria.getNom(), criteria.getUsername(), criteria.getEmail())
+                .filter(Objects::nonNull)
+                .max(Comparator.comparingInt(String::length))
+                .orElse(null);
+        List<String> ids = longest == null ? null : textIndex.candidatesContaining(longest);
+        if (ids == null) return getAll();
+
+        DirectorySnapshot current = read();
+        return ids.stream()
+                .map(current.byId()::get)
+                .filter(Objects::nonNull)
+                .sorted(Comparator.comparingInt(u -> current.positionById().get(u.getId())))
+                .collect(Collectors.toList());
+    }
+
+    /** Suggestions classées pour la saisie semi-automatique (tolère les fautes de frappe). */
+    public List<UserRepresentation> suggest(String query, int limit) {
+        DirectorySnapshot current = read();
+        return textIndex.search(query, limit).stream()
+                .map(match -> current.byId().get(match.userId()))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    public List<GroupRepresentation> getGroupsOf(String userId) {
+        return read().groupsByUser().getOrDefault(userId, List.of());
+    }
+
+    public List<UserRepresentation> getMembersOfGroup(String groupId) {
+        return read().membersByGroupId().getOrDefault(groupId, List.of());
+    }
+
+    /**
+     * Vue immuable de l'annuaire ; une nouvelle instance est publiée à chaque rafraîchissement.
+     */
+    record DirectorySnapshot(List<UserRepresentation> users,
+                             Map<String, UserRepresentation> byId,
+                             Map<String, Integer> positionById,
+                             Map<String, UserRepresentation> byUsername,
+                             Map<String, UserRepresentation> byEmail,
+                             Map<String, List<GroupRepresentation>> groupsByUser,
+                             Map<String, List<UserRepresentation>> membersByGroupId,
+                             Instant loadedAt) {
+
+        static final DirectorySnapshot EMPTY = new DirectorySnapshot(
+                List.of(), Map.of(), Map.of(), Map.of(), Map.of(), Map.of(), Map.of(), null);
+
+        static String key(String value) {
+            return value.trim().toLowerCase(Locale.ROOT);
+        }
+
+        static DirectorySnapshot build(List<UserRepresentation> users,
+                                       Map<String, List<GroupRepresentation>> groupsByUser,
+                                       Instant loadedAt) {
+            Map<String, UserRepresentation> byId = new HashMap<>(users.size() * 2);
+            Map<String, Integer> positionById = new HashMap<>(users.size() * 2);
+            Map<String, UserRepresentation> byUsername = new HashMap<>(users.size() * 2);
+            Map<String, UserRepresentation> byEmail = new HashMap<>(users.size() * 2);
+            Map<String, List<GroupRepresentation>> groups = new HashMap<>(users.size() * 2);
+            Map<String, List<UserRepresentation>> members = new HashMap<>();
+
+            for (int i = 0; i < users.size(); i++) {
+                UserRepresentation user = users.get(i);
+                byId.put(user.getId(), user);
+                positionById.put(user.getId(), i);
+                if (user.getUsername() != null) byUsername.put(key(user.getUsername()), user);
+                if (user.getEmail() != null) byEmail.put(key(user.getEmail()), user);
+
+                List<GroupRepresentation> userGroups = groupsByUser.getOrDefault(user.getId(), List.of());
+                if (!userGroups.isEmpty()) {
+                    groups.put(user.getId(), List.copyOf(userGroups));
+                    for (GroupRepresentation g : userGroups) {
+                        members.computeIfAbsent(g.getId(), id -> new ArrayList<>()).add(user);
+                    }
+                }
+            }
+            members.replaceAll((id, list) -> Collections.unmodifiableList(list));
+
+            return new DirectorySnapshot(List.copyOf(users), byId, positionById, byUsername, byEmail, groups, members, loadedAt);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lecture paginée et en flux des utilisateurs : la pagination est poussée vers
+ * users().list(first, max) quand l'annuaire local n'est pas disponible ; les groupes d'une page viennent alors
+ * des appartenances partagées ({@link KeycloakService#getCachedUserGroups()}), une page coûte donc un appel.
+ */
+@Service
+public class UserPageReader {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+    private final ObjectMapper objectMapper;
+
+    @Value("${keycloak.users.page-size:500}")
+    private int streamPageSize;
+
+    public UserPageReader(KeycloakService keycloakService, UserDirectory userDirectory, ObjectMapper objectMapper) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.objectMapper = objectMapper;
+    }
+
+    public record UserPage(List<UserRepresentation> users, int first, String nextCursor) {
+    }
+
+    /**
+     * Lit une page à partir d'un curseur (prioritaire) ou d'un offset.
+     *
+     * @throws IllegalArgumentException si le curseur est invalide
+     */
+    public UserPage readPage(Integer first, Integer max, String cursor) {
+        int size = max == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(max, MAX_PAGE_SIZE));
+        PageCursor position = cursor != null && !cursor.isBlank()
+                ? PageCursor.decode(cursor)
+                : new PageCursor(first == null ? 0 : Math.max(0, first), null);
+
+        int offset;
+        List<UserRepresentation> users;
+        if (userDirectory.isReady()) {
+            int lastSeen = userDirectory.positionOf(position.lastId());
+            offset = lastSeen >= 0 ? lastSeen + 1 : position.offset();
+            users = userDirectory.getPage(offset, size);
+        } else {
+            offset = position.offset();
+            // 🔹 Appartenances partagées (une lecture par TTL), pas un appel users/{id}/groups par utilisateur ;
+            // pages regroupées entre lecteurs : copies, les représentations partagées ne sont pas modifiées
+            Map<String, List<GroupRepresentation>> groupsByUser = keycloakService.getCachedUserGroups();
+            users = readKeycloakPage(position, size).stream()
+                    .map(u -> keycloakService.withGroupsAttribute(u, groupsByUser.getOrDefault(u.getId(), Collections.emptyList())))
+                    .toList();
+        }
+
+        String next = users.size() == size
+                ? new PageCursor(offset + users.size(), users.get(users.size() - 1).getId()).encode()
+                : null;
+        return new UserPage(users, offset, next);
+    }
+
+    /**
+     * Keycloak ne sait pas reprendre "après l'id X" : on relit un élément avant l'offset
+     * pour se recaler sur le dernier utilisateur servi s'il n'a pas bougé.
+     */
+    private List<UserRepresentation> readKeycloakPage(PageCursor position, int size) {
+        if (position.lastId() == null || position.offset() == 0) {
+            return keycloakService.listUsersPageShared(position.offset(), size);
+        }
+
+        List<UserRepresentation> raw = keycloakService.listUsersPageShared(position.offset() - 1, size + 1);
+        int start = 1;
+        for (int i = 0; i < raw.size(); i++) {
+            if (position.lastId().equals(raw.get(i).getId())) {
+                start = i + 1;
+                break;
+            }
+        }
+        if (start >= raw.size()) return List.of();
+        return new ArrayList<>(raw.subList(start, Math.min(raw.size(), start + size)));
+    }
+
+    /**
+     * Écrit tous les utilisateurs en NDJSON (un objet JSON par ligne), page par page.
+     * Seule la page courante est en mémoire. En mode direct, l'attribut "groups" n'est renseigné que si les
+     * appartenances partagées sont déjà en cache : le flux ne charge pas la table des appartenances du realm
+     * (mémoire en O(realm)) et n'appelle pas users/{id}/groups par utilisateur.
+     */
+    public void streamAll(OutputStream out) throws IOException {
+        if (userDirectory.isReady()) {
+            List<UserRepresentation> users = userDirectory.getAll();
+            for (int i = 0; i < users.size(); i++) {
+                writeLine(out, users.get(i));
+                if ((i + 1) % streamPageSize == 0) out.flush();
+            }
+            out.flush();
+            return;
+        }
+
+        Map<String, List<GroupRepresentation>> groupsByUser = keycloakService.peekCachedUserGroups();
+        int first = 0;
+        while (true) {
+            List<UserRepresentation> page = keycloakService.listUsersPage(first, streamPageSize);
+            for (UserRepresentation user : page) {
+                if (groupsByUser != null) {
+                    keycloakService.applyGroupsAttribute(user, groupsByUser.getOrDefault(user.getId(), Collections.emptyList()));
+                }
+                writeLine(out, user);
+            }
+            out.flush();
+            if (page.size() < streamPageSize) return;
+            first += streamPageSize;
+        }
+    }
+
+    private void writeLine(OutputStream out, UserRepresentation user) throws IOException {
+        // writeValueAsBytes : writeValue(out, ...) fermerait le flux de la réponse
+        out.write(objectMapper.writeValueAsBytes(user));
+        out.write(NEW_LINE);
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+
+/**
+ * Filtres de recherche d'utilisateurs, normalisés une seule fois (insensibles aux accents et à la casse).
+ * Les valeurs saisies sont conservées telles quelles pour les requêtes envoyées à Keycloak.
+ */
+public final class UserSearchCriteria {
+
+    private final String nom;
+    private final String username;
+    private final String email;
+    private final String regionCode;
+
+    private final String rawNom;
+    private final String rawUsername;
+    private final String rawEmail;
+
+    public UserSearchCriteria(String nom, String username, String email, String regionCode) {
+        this.rawNom = trimToNull(nom);
+        this.rawUsername = trimToNull(username);
+        this.rawEmail = trimToNull(email);
+        this.nom = rawNom == null ? null : norm(rawNom);
+        this.username = rawUsername == null ? null : norm(rawUsername);
+        this.email = rawEmail == null ? null : norm(rawEmail);
+        this.regionCode = trimToNull(regionCode) == null ? null : norm(regionCode);
+    }
+
+    // 🔹 Normalisation string (recherche insensible accents/casse)
+    public static String norm(String s) {
+        return TextFolding.fold(s);
+    }
+
+    private static String trimToNull(String s) {
+        return s == null || s.isBlank() ? null : s.trim();
+    }
+
+    public String getNom() {
+        return nom;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getEmail() {
+        return email;
+    }
+
+    public String getRegionCode() {
+        return regionCode;
+    }
+
+    public String getRawNom() {
+        return rawNom;
+    }
+
+    public String getRawUsername() {
+        return rawUsername;
+    }
+
+    public String getRawEmail() {
+        return rawEmail;
+    }
+
+    public boolean isEmpty() {
+        return nom == null && username == null && email == null && regionCode == null;
+    }
+
+    /** Filtres portant sur les champs de l'utilisateur (nom, username, email). */
+    public boolean matchesText(UserRepresentation u) {
+        if (nom != null) {
+            String fn = norm(u.getFirstName());
+            String ln = norm(u.getLastName());
+            String un = norm(u.getUsername());
+            String full = (fn + " " + ln).trim();
+            if (!(fn.contains(nom) || ln.contains(nom) || un.contains(nom) || full.contains(nom))) return false;
+        }
+        if (username != null && !norm(u.getUsername()).contains(username)) return false;
+        return email == null || norm(u.getEmail()).contains(email);
+    }
+
+    /** Filtre région : l'utilisateur appartient à un groupe dont le nom normalisé vaut regionCode. */
+    public boolean matchesRegion(List<GroupRepresentation> groups) {
+        return regionCode == null || matchesRegion(groups, regionCode);
+    }
+
+    static boolean matchesRegion(List<GroupRepresentation> groups, String regionCode) {
+        return groups.stream().anyMatch(g -> norm(g.getName()).equals(regionCode));
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * Recherche d'utilisateurs directement sur Keycloak, quand l'annuaire local n'est pas prêt.
+ * <p>
+ * Un seul critère "pilote" réduit les candidats côté Keycloak :
+ * <ol>
+ *     <li>username / email : users().search(username, null, null, email, first, max) ;</li>
+ *     <li>regionCode : membres paginés des groupes dont le nom correspond ;</li>
+ *     <li>nom seul : recherche générale Keycloak {@code *terme*} sur le terme le plus long du nom.</li>
+ * </ol>
+ * Keycloak compare en minuscules mais avec les accents : la forme repliée ({@link TrigramIndex}) et la forme saisie
+ * sont envoyées toutes les deux, une saisie accentuée ("josé") trouve donc "jose" et "josé", mais une saisie sans
+ * accent ("jose") ne trouve pas un "josé" enregistré. Seul l'annuaire local est insensible aux accents des deux côtés.
+ * <p>
+ * Tous les filtres sont ensuite réappliqués en Java. Les groupes ne sont lus que pour les candidats retenus :
+ * appartenances partagées si elles sont en cache, un appel par candidat s'ils sont peu nombreux,
+ * sinon {@link KeycloakService#getCachedUserGroups()}. Les utilisateurs renvoyés sont des copies.
+ */
+@Service
+public class UserSearchPlanner {
+
+    // Au-delà, les groupes des candidats viennent des appartenances partagées plutôt que d'un appel chacun
+    private static final int PER_USER_GROUPS_MAX = 20;
+
+    private final KeycloakService keycloakService;
+
+    @Value("${keycloak.users.page-size:500}")
+    private int pageSize;
+
+    public UserSearchPlanner(KeycloakService keycloakService) {
+        this.keycloakService = keycloakService;
+    }
+
+    public List<UserRepresentation> search(UserSearchCriteria criteria) {
+        if (criteria.isEmpty()) {
+            return keycloakService.getAllUsers();
+        }
+
+        List<UserRepresentation> candidates;
+        boolean candidatesAreRegionMembers = false;
+        if (criteria.getUsername() != null || criteria.getEmail() != null) {
+            candidates = searchByIdentifiers(criteria);
+        } else if (criteria.getRegionCode() != null) {
+            candidates = membersOfRegion(criteria.getRegionCode());
+            candidatesAreRegionMembers = true;
+        } else {
+            candidates = searchByName(criteria);
+        }
+
+        List<UserRepresentation> kept = candidates.stream().filter(criteria::matchesText).toList();
+        Map<String, List<GroupRepresentation>> groupsByUser = groupsOf(kept);
+        List<UserRepresentation> result = new ArrayList<>();
+        for (UserRepresentation user : kept) {
+            List<GroupRepresentation> groups = groupsByUser.getOrDefault(user.getId(), Collections.emptyList());
+            if (!candidatesAreRegionMembers && !criteria.matchesRegion(groups)) continue;
+            result.add(keycloakService.withGroupsAttribute(user, groups));
+        }
+        return result;
+    }
+
+    private Map<String, List<GroupRepresentation>> groupsOf(List<UserRepresentation> users) {
+        if (users.isEmpty()) return Map.of();
+        Map<String, List<GroupRepresentation>> cached = keycloakService.peekCachedUserGroups();
+        if (cached != null) return cached;
+        if (users.size() > PER_USER_GROUPS_MAX) return keycloakService.getCachedUserGroups();
+
+        Map<String, List<GroupRepresentation>> groupsByUser = new HashMap<>();
+        for (UserRepresentation user : users) {
+            groupsByUser.put(user.getId(), keycloakService.getUserGroups(user.getId()));
+        }
+        return groupsByUser;
+    }
+
+    // 🔹 Forme repliée, plus la forme saisie si elle diffère (voir la Javadoc pour les limites)
+    private List<UserRepresentation> searchByIdentifiers(UserSearchCriteria criteria) {
+        Map<String, UserRepresentation> candidates = new LinkedHashMap<>();
+        String username = criteria.getUsername();
+        String email = criteria.getEmail();
+        drain((first, max) -> keycloakService.searchUsers(username, email, first, max))
+                .forEach(u -> candidates.putIfAbsent(u.getId(), u));
+
+        String rawUsername = lower(criteria.getRawUsername());
+        String rawEmail = lower(criteria.getRawEmail());
+        if (!Objects.equals(rawUsername, username) || !Objects.equals(rawEmail, email)) {
+            drain((first, max) -> keycloakService.searchUsers(rawUsername, rawEmail, first, max))
+                    .forEach(u -> candidates.putIfAbsent(u.getId(), u));
+        }
+        return new ArrayList<>(candidates.values());
+    }
+
+    // 🔹 Nom : un seul terme envoyé (le plus long), le nom complet est vérifié ensuite par matchesText
+    private List<UserRepresentation> searchByName(UserSearchCriteria criteria) {
+        Map<String, UserRepresentation> candidates = new LinkedHashMap<>();
+        String term = longestTerm(criteria.getNom());
+        drain((first, max) -> keycloakService.searchUsers("*" + term + "*", first, max))
+                .forEach(u -> candidates.putIfAbsent(u.getId(), u));
+
+        String rawTerm = longestTerm(lower(criteria.getRawNom()));
+        if (!rawTerm.equals(term)) {
+            drain((first, max) -> keycloakService.searchUsers("*" + rawTerm + "*", first, max))
+                    .forEach(u -> candidates.putIfAbsent(u.getId(), u));
+        }
+        return new ArrayList<>(candidates.values());
+    }
+
+    private static String longestTerm(String s) {
+        String longest = "";
+        for (String term : s.trim().split("\\s+")) {
+            if (term.length() > longest.length()) longest = term;
+        }
+        return longest;
+    }
+
+    private static String lower(String s) {
+        return s == null ? null : s.toLowerCase(Locale.ROOT);
+    }
+
+    private List<UserRepresentation> membersOfRegion(String regionCode) {
+        Map<String, UserRepresentation> members = new LinkedHashMap<>();
+        Deque<GroupRepresentation> pending = new ArrayDeque<>(keycloakService.getGroupTree());
+        while (!pending.isEmpty()) {
+            GroupRepresentation group = pending.pop();
+            if (UserSearchCriteria.norm(group.getName()).equals(regionCode)) {
+                drain((first, max) -> keycloakService.getGroupMembersPage(group.getId(), first, max))
+                        .forEach(u -> members.putIfAbsent(u.getId(), u));
+            }
+            if (group.getSubGroups() != null) {
+                group.getSubGroups().forEach(pending::push);
+            }
+        }
+        return new ArrayList<>(members.values());
+    }
+
+    private List<UserRepresentation> drain(BiFunction<Integer, Integer, List<UserRepresentation>> pageLoader) {
+        List<UserRepresentation> all = new ArrayList<>();
+        int first = 0;
+        while (true) {
+            List<UserRepresentation> page = pageLoader.apply(first, pageSize);
+            if (page == null || page.isEmpty()) break;
+            all.addAll(page);
+            if (page.size() < pageSize) break;
+            first += pageSize;
+        }
+        return all;
+    }
+}
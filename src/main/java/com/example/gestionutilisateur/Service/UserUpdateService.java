@@ -0,0 +1,39 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.Utilisateur;
+import com.example.gestionutilisateur.KeycloakService;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Mise à jour d'un utilisateur comparée à son état dans l'annuaire : Keycloak ne reçoit que les changements
+ * réels, puis l'annuaire est corrigé aussitôt pour que la mise à jour suivante compare au bon état.
+ */
+@Service
+public class UserUpdateService {
+
+    private final KeycloakService keycloakService;
+    private final UserDirectory userDirectory;
+
+    public UserUpdateService(KeycloakService keycloakService, UserDirectory userDirectory) {
+        this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+    }
+
+    /** @return vrai si Keycloak a été modifié */
+    public boolean update(Utilisateur utilisateur) {
+        UserWithGroups cached = userDirectory.isReady()
+                ? userDirectory.findById(utilisateur.getKeycloakId())
+                        .map(u -> new UserWithGroups(u, userDirectory.getGroupsOf(u.getId())))
+                        .orElse(null)
+                : null;
+
+        Optional<UserWithGroups> updated = keycloakService.updateUserInKeycloak(utilisateur, cached);
+        if (updated.isPresent() && cached != null) {
+            userDirectory.applyChanges(List.of(updated.get()), List.of());
+        }
+        return updated.isPresent();
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.gestionutilisateur.Service;
+
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.util.List;
+
+/**
+ * Utilisateur Keycloak accompagné de ses groupes directs.
+ */
+public record UserWithGroups(UserRepresentation user, List<GroupRepresentation> groups) {
+}
@@ -0,0 +1,308 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.OperationKeycloak;
+import com.example.gestionutilisateur.Entities.Utilisateur;
+import com.example.gestionutilisateur.Enums.StatutOperation;
+import com.example.gestionutilisateur.Enums.TypeOperation;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Repository.OperationKeycloakRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationStartedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Mode d'écriture asynchrone ({@code keycloak.write-mode=async}) : les mises à jour d'utilisateur, affectations
+ * de région et modifications de groupe sont enregistrées dans la table {@code keycloak_outbox} puis appliquées
+ * à Keycloak en tâche de fond.
+ * <p>
+ * Une nouvelle demande est fusionnée dans la dernière opération de la cible si celle-ci est du même type et
+ * pas encore prise en charge (les derniers champs fournis l'emportent) : une rafale de modifications donne une
+ * seule écriture. Sinon, y compris quand une opération d'un autre type a été mise en file entre-temps,
+ * une nouvelle opération est créée. Les opérations d'une même cible sont appliquées dans l'ordre ; un échec
+ * est réessayé avec un délai exponentiel, jusqu'à {@code keycloak.outbox.max-attempts}. Un refus du disjoncteur
+ * ou du bulkhead ({@link KeycloakUnavailableException}) ne compte pas comme tentative : l'opération attend
+ * {@code keycloak.outbox.unavailable-retry-ms} et une panne de Keycloak, même longue, ne la fait pas échouer.
+ * <p>
+ * La file ne survit à un redémarrage que si la base est persistante : le mode async refuse de démarrer sur
+ * une base H2 en mémoire ({@code jdbc:h2:mem:}), où les écritures en attente seraient perdues.
+ * <p>
+ * Plusieurs instances peuvent partager la table : fusion et prise en charge passent par le verrou optimiste
+ * de la ligne ({@code @Version}), une écriture concurrente fait échouer l'autre, qui relit l'état en base.
+ * Une opération prise en charge depuis plus de {@code keycloak.outbox.lease-ms} (instance arrêtée en cours
+ * d'application) est remise en file ; une opération en cours sur une autre instance n'est pas rejouée.
+ */
+@Service
+public class WriteBehindService {
+
+    private static final List<StatutOperation> UNFINISHED = List.of(StatutOperation.EN_ATTENTE, StatutOperation.EN_COURS);
+
+    private final OperationKeycloakRepository repository;
+    private final KeycloakService keycloakService;
+    private final UserUpdateService userUpdateService;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${keycloak.write-mode:sync}")
+    private String writeMode;
+
+    @Value("${keycloak.outbox.batch-size:50}")
+    private int batchSize;
+
+    @Value("${keycloak.outbox.max-attempts:8}")
+    private int maxAttempts;
+
+    @Value("${keycloak.outbox.retry-base-ms:1000}")
+    private long retryBaseMs;
+
+    @Value("${keycloak.outbox.retry-max-ms:300000}")
+    private long retryMaxMs;
+
+    @Value("${keycloak.outbox.unavailable-retry-ms:5000}")
+    private long unavailableRetryMs;
+
+    @Value("${keycloak.outbox.lease-ms:300000}")
+    private long leaseMs;
+
+    @Value("${spring.datasource.url:}")
+    private String datasourceUrl;
+
+    public WriteBehindService(OperationKeycloakRepository repository, KeycloakService keycloakService,
+                              UserUpdateService userUpdateService, ObjectMapper objectMapper,
+                              TransactionTemplate transactionTemplate) {
+        this.repository = repository;
+        this.keycloakService = keycloakService;
+        this.userUpdateService = userUpdateService;
+        this.objectMapper = objectMapper;
+        this.transactionTemplate = transactionTemplate;
+    }
+
+    public boolean isAsync() {
+        return "async".equalsIgnoreCase(writeMode);
+    }
+
+    @PostConstruct
+    public void checkDatasource() {
+        if (isAsync() && datasourceUrl.startsWith("jdbc:h2:mem:")) {
+            throw new IllegalStateException("❌ keycloak.write-mode=async exige une base persistante (spring.datasource.url) :"
+                    + " avec " + datasourceUrl + " les écritures en attente seraient perdues au redémarrage");
+        }
+    }
+
+    /* ==================== MISE EN FILE ==================== */
+
+    public OperationKeycloak enqueueUserUpdate(Utilisateur utilisateur) {
+        ObjectNode fields = objectMapper.valueToTree(utilisateur);
+        // La mise à jour n'écrit jamais le mot de passe : inutile de le conserver dans la table
+        fields.remove(List.of("password", "keycloakId", "id"));
+        return enqueue(TypeOperation.MISE_A_JOUR_UTILISATEUR, utilisateur.getKeycloakId(), fields);
+    }
+
+    public OperationKeycloak enqueueRegionAssignment(String keycloakId, String regionLabel) {
+        ObjectNode fields = objectMapper.createObjectNode().put("regionLabel", regionLabel);
+        return enqueue(TypeOperation.AFFECTATION_REGION, keycloakId, fields);
+    }
+
+    public OperationKeycloak enqueueGroupUpdate(String groupId, String name, String type, String code, String nom) {
+        ObjectNode fields = objectMapper.createObjectNode()
+                .put("name", name).put("type", type).put("code", code).put("nom", nom);
+        return enqueue(TypeOperation.MISE_A_JOUR_GROUPE, groupId, fields);
+    }
+
+    private synchronized OperationKeycloak enqueue(TypeOperation type, String cibleId, ObjectNode fields) {
+        if (cibleId == null || cibleId.isBlank()) {
+            throw new IllegalArgumentException("Identifiant Keycloak manquant");
+        }
+        fields.properties().removeIf(e -> e.getValue().isNull());
+        Instant now = Instant.now();
+
+        for (int attempt = 0; ; attempt++) {
+            // 🔹 Fusion seulement dans la dernière opération non terminée de la cible : l'ordre des écritures est conservé
+            Optional<OperationKeycloak> pending = repository.findFirstByCibleIdAndStatutInOrderByIdDesc(cibleId, UNFINISHED)
+                    .filter(o -> o.getType() == type && o.getStatut() == StatutOperation.EN_ATTENTE);
+            OperationKeycloak op = pending.orElseGet(() -> {
+                OperationKeycloak o = new OperationKeycloak();
+                o.setType(type);
+                o.setCibleId(cibleId);
+                o.setStatut(StatutOperation.EN_ATTENTE);
+                o.setContenu("{}");
+                o.setProchainEssai(now);
+                o.setCreeLe(now);
+                return o;
+            });
+            ObjectNode merged = (ObjectNode) readContenu(op);
+            merged.setAll(fields);
+            op.setContenu(merged.toString());
+            op.setFusions(op.getFusions() + 1);
+            op.setMajLe(now);
+            try {
+                return repository.save(op);
+            } catch (ObjectOptimisticLockingFailureException e) {
+                // Prise en charge ou fusionnée entre-temps (ici ou par une autre instance) : on relit la file
+                if (attempt >= 2) throw e;
+            }
+        }
+    }
+
+    /* ==================== APPLICATION ==================== */
+
+    /** Reprise après arrêt : les opérations prises en charge dont le bail a expiré sont rejouées. */
+    @EventListener(ApplicationStartedEvent.class)
+    public void recoverInterrupted() {
+        Instant leaseStart = Instant.now().minusMillis(leaseMs);
+        Integer recovered = transactionTemplate.execute(status ->
+                repository.requeueExpired(StatutOperation.EN_COURS, StatutOperation.EN_ATTENTE, leaseStart));
+        if (recovered != null && recovered > 0) {
+            System.out.println("[INFO] " + recovered + " écriture(s) Keycloak en attente reprise(s)");
+        }
+    }
+
+    @Scheduled(initialDelayString = "${keycloak.outbox.initial-delay-ms:5000}",
+            fixedDelayString = "${keycloak.outbox.poll-ms:1000}")
+    public void scheduledDrain() {
+        try {
+            // Même en mode synchrone, on termine les opérations déjà en file
+            // Bail expiré d'une autre instance (arrêtée sans redémarrer) : repris ici aussi
+            recoverInterrupted();
+            KeycloakPriority.run(KeycloakPriority.ARRIERE_PLAN, () -> {
+                while (drain() == batchSize) {
+                    // Lot plein : il en reste probablement, on enchaîne
+                }
+            });
+        } catch (Exception e) {
+            System.out.println("⚠️ Application des écritures Keycloak en attente échouée : " + e.getMessage());
+        }
+    }
+
+    /** Applique un lot d'opérations échues ; renvoie le nombre d'opérations traitées (réussies ou non). */
+    public int drain() {
+        List<OperationKeycloak> due = repository.findByStatutAndProchainEssaiLessThanEqualOrderByIdAsc(
+                StatutOperation.EN_ATTENTE, Instant.now(), PageRequest.of(0, batchSize));
+
+        Set<String> blocked = new HashSet<>();
+        int processed = 0;
+        for (OperationKeycloak candidate : due) {
+            if (blocked.contains(candidate.getCibleId())
+                    || repository.existsByCibleIdAndStatutInAndIdLessThan(candidate.getCibleId(), UNFINISHED, candidate.getId())) {
+                blocked.add(candidate.getCibleId());
+                continue;
+            }
+            Optional<OperationKeycloak> claimed = claim(candidate.getId());
+            if (claimed.isEmpty()) continue;
+
+            OperationKeycloak op = claimed.get();
+            processed++;
+            try {
+                apply(op);
+                op.setStatut(StatutOperation.APPLIQUEE);
+                op.setDerniereErreur(null);
+            } catch (Exception e) {
+                KeycloakUnavailableException unavailable = unavailableCause(e);
+                if (unavailable != null) {
+                    // Disjoncteur ouvert ou bulkhead plein : pas une tentative, et inutile d'essayer la suite du lot
+                    long waitMs = unavailable.getRetryAfter() == null ? unavailableRetryMs
+                            : Math.max(unavailableRetryMs, unavailable.getRetryAfter().toMillis());
+                    op.setStatut(StatutOperation.EN_ATTENTE);
+                    op.setDerniereErreur(truncate(e.getMessage()));
+                    op.setProchainEssai(Instant.now().plusMillis(waitMs));
+                    op.setMajLe(Instant.now());
+                    repository.save(op);
+                    break;
+                }
+                op.setTentatives(op.getTentatives() + 1);
+                op.setDerniereErreur(truncate(e.getMessage()));
+                if (op.getTentatives() >= maxAttempts) {
+                    op.setStatut(StatutOperation.ECHEC);
+                } else {
+                    op.setStatut(StatutOperation.EN_ATTENTE);
+                    op.setProchainEssai(Instant.now().plusMillis(backoffMs(op.getTentatives())));
+                }
+                blocked.add(op.getCibleId());
+            }
+            op.setMajLe(Instant.now());
+            repository.save(op);
+        }
+        return processed;
+    }
+
+    // Le verrou optimiste départage deux instances qui prennent la même opération
+    private Optional<OperationKeycloak> claim(Long id) {
+        Optional<OperationKeycloak> op = repository.findById(id)
+                .filter(o -> o.getStatut() == StatutOperation.EN_ATTENTE);
+        if (op.isEmpty()) return op;
+        op.get().setStatut(StatutOperation.EN_COURS);
+        op.get().setMajLe(Instant.now());
+        try {
+            return Optional.of(repository.save(op.get()));
+        } catch (ObjectOptimisticLockingFailureException e) {
+            return Optional.empty();
+        }
+    }
+
+    private void apply(OperationKeycloak op) throws JsonProcessingException {
+        JsonNode fields = readContenu(op);
+        switch (op.getType()) {
+            case MISE_A_JOUR_UTILISATEUR -> {
+                Utilisateur utilisateur = objectMapper.treeToValue(fields, Utilisateur.class);
+                utilisateur.setKeycloakId(op.getCibleId());
+                userUpdateService.update(utilisateur);
+            }
+            case AFFECTATION_REGION ->
+                    keycloakService.affecterUtilisateurAuGroupeRegion(op.getCibleId(), text(fields, "regionLabel"));
+            case MISE_A_JOUR_GROUPE -> keycloakService.updateGroupAttributes(op.getCibleId(),
+                    text(fields, "name"), text(fields, "type"), text(fields, "code"), text(fields, "nom"));
+        }
+    }
+
+    private static KeycloakUnavailableException unavailableCause(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t instanceof KeycloakUnavailableException unavailable) return unavailable;
+        }
+        return null;
+    }
+
+    private long backoffMs(int attempts) {
+        long delay = retryBaseMs << Math.min(attempts - 1, 20);
+        return Math.min(delay, retryMaxMs);
+    }
+
+    private JsonNode readContenu(OperationKeycloak op) {
+        try {
+            return objectMapper.readTree(op.getContenu() == null ? "{}" : op.getContenu());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Contenu d'opération illisible : " + op.getId(), e);
+        }
+    }
+
+    private static String text(JsonNode fields, String name) {
+        JsonNode value = fields.get(name);
+        return value == null || value.isNull() ? null : value.asText();
+    }
+
+    private static String truncate(String message) {
+        if (message == null) return null;
+        return message.length() <= 1000 ? message : message.substring(0, 1000);
+    }
+
+    /* ==================== SUIVI ==================== */
+
+    public Optional<OperationKeycloak> getOperation(Long id) {
+        return repository.findById(id);
+    }
+
+    public List<OperationKeycloak> getOperationsOf(String cibleId, int limit) {
+        return repository.findByCibleIdOrderByIdDesc(cibleId, PageRequest.of(0, Math.max(1, Math.min(limit, 100))));
+    }
+}
@@ -4,13 +4,15 @@ import com.example.gestionutilisateur.Entities.Groupe;
 import com.example.gestionutilisateur.KeycloakService;
 import com.example.gestionutilisateur.Repository.GroupeRepository;
 import com.example.gestionutilisateur.Repository.UtilisateurRepository;
+import com.example.gestionutilisateur.Service.GroupDropdownService;
+import com.example.gestionutilisateur.Service.KeycloakUnavailableException;
+import com.example.gestionutilisateur.Service.UserDirectory;
+import com.example.gestionutilisateur.Service.WriteBehindService;
 import org.keycloak.representations.idm.GroupRepresentation;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 @RestController
 @RequestMapping("/api/groupes")
@@ -20,11 +22,19 @@ public class GroupeRestController {
     private final KeycloakService keycloakService;
     private final UtilisateurRepository utilisateurRepository;
     private final GroupeRepository groupeRepository;
+    private final GroupDropdownService groupDropdownService;
+    private final WriteBehindService writeBehindService;
+    private final UserDirectory userDirectory;
 
-    public GroupeRestController(KeycloakService keycloakService, UtilisateurRepository utilisateurRepository, GroupeRepository groupeRepository) {
+    public GroupeRestController(KeycloakService keycloakService, UtilisateurRepository utilisateurRepository,
+                                GroupeRepository groupeRepository, GroupDropdownService groupDropdownService,
+                                WriteBehindService writeBehindService, UserDirectory userDirectory) {
         this.keycloakService = keycloakService;
         this.utilisateurRepository = utilisateurRepository;
         this.groupeRepository = groupeRepository;
+        this.groupDropdownService = groupDropdownService;
+        this.writeBehindService = writeBehindService;
+        this.userDirectory = userDirectory;
     }
 
     // 🔹 Récupère tous les groupes avec hiérarchie (code + label + enfants)
@@ -33,6 +43,8 @@ public class GroupeRestController {
         try {
             List<Map<String, Object>> hierarchy = keycloakService.getGroupHierarchy();
             return ResponseEntity.ok(hierarchy);
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(null);
         }
@@ -52,6 +64,8 @@ public class GroupeRestController {
                     "message", "Groupe créé avec succès",
                     "id", id
             ));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
                     "error", "Erreur lors de la création du groupe",
@@ -69,8 +83,14 @@ public class GroupeRestController {
             String code = body.get("code");
             String nom = body.get("nom");
 
+            if (writeBehindService.isAsync()) {
+                return OperationRestController.accepted(
+                        writeBehindService.enqueueGroupUpdate(groupId, name, type, code, nom));
+            }
             keycloakService.updateGroupAttributes(groupId, name, type, code, nom);
             return ResponseEntity.ok(Map.of("message", "Groupe mis à jour avec succès"));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
                     "error", "Erreur lors de la mise à jour du groupe",
@@ -90,6 +110,8 @@ public class GroupeRestController {
 
             keycloakService.addChildGroup(parentId, name, type, code, nom);
             return ResponseEntity.ok(Map.of("message", "Sous-groupe créé avec succès"));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
                     "error", "Erreur lors de la création du sous-groupe",
@@ -98,54 +120,18 @@ public class GroupeRestController {
         }
     }
 
-    // 🔹 Récupérer tous les groupes pour dropdown avec utilisateurs
+    // 🔹 Récupérer tous les groupes pour dropdown avec utilisateurs (mode=count : nombre de membres seulement)
     @GetMapping("/dropdown")
-    public ResponseEntity<List<Map<String, Object>>> getGroupesDropdown() {
+    public ResponseEntity<List<Map<String, Object>>> getGroupesDropdown(
+            @RequestParam(defaultValue = "full") String mode) {
         try {
-            List<Map<String, Object>> keycloakGroups = keycloakService.getAllGroupsFromKeycloak();
-
-            AtomicInteger counter = new AtomicInteger(1);
-
-            List<Map<String, Object>> result = keycloakGroups.stream().map(g -> {
-                Map<String, Object> map = new HashMap<>();
-                String keycloakId = (String) g.get("id");
-                Map<String, List<String>> attributes = (Map<String, List<String>>) g.get("attributes");
-
-                // 🔹 Générer code = eg01, eg02 ... si absent
-                String code;
-                if (attributes != null && attributes.containsKey("code") && !attributes.get("code").isEmpty()) {
-                    code = attributes.get("code").get(0);
-                } else {
-                    code = String.format("eg%02d", counter.getAndIncrement());
-                }
-
-                // 🔹 label = nom lisible (ou name fallback)
-                String label;
-                if (attributes != null && attributes.containsKey("nom") && !attributes.get("nom").isEmpty()) {
-                    label = attributes.get("nom").get(0);
-                } else if (attributes != null && attributes.containsKey("label") && !attributes.get("label").isEmpty()) {
-                    label = attributes.get("label").get(0);
-                } else {
-                    label = (String) g.get("name");
-                }
-
-                map.put("id", keycloakId);
-                map.put("keycloakId", keycloakId);
-                map.put("code", code);
-                map.put("label", label);
-
-                // 🔹 utilisateurs du groupe
-                List<Map<String, Object>> users = keycloakService.getUsersOfGroup(keycloakId);
-                if (users == null || users.isEmpty()) {
-                    users = List.of(Map.of("username", "Aucun utilisateur n'est affecté"));
-                }
-                map.put("utilisateurs", users);
-
-                return map;
-            }).collect(Collectors.toList());
-
-            return ResponseEntity.ok(result);
+            GroupDropdownService.Dropdown dropdown = groupDropdownService.build("count".equalsIgnoreCase(mode));
+            return ResponseEntity.ok()
+                    .header("X-Partial-Result", String.valueOf(dropdown.partial()))
+                    .body(dropdown.groups());
 
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(null);
@@ -156,11 +142,19 @@ public class GroupeRestController {
     @GetMapping("/{groupId}")
     public ResponseEntity<Map<String, Object>> getGroupeById(@PathVariable String groupId) {
         try {
-            Map<String, Object> group = keycloakService.getGroupById(groupId);
+            // Membres lus dans l'annuaire local s'il est chargé : répond même si Keycloak est indisponible
+            Map<String, Object> group = userDirectory.isReady()
+                    ? keycloakService.findGroupById(groupId)
+                    .map(g -> KeycloakService.toGroupDto(g,
+                            KeycloakService.toGroupMemberRows(userDirectory.getMembersOfGroup(g.getId()))))
+                    .orElse(null)
+                    : keycloakService.getGroupById(groupId);
             if (group == null) {
                 return ResponseEntity.notFound().build();
             }
             return ResponseEntity.ok(group);
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(500).body(Map.of(
                     "error", "Erreur lors de la récupération du groupe",
@@ -0,0 +1,26 @@
+package com.example.gestionutilisateur.Web;
+
+import com.example.gestionutilisateur.Service.KeycloakUnavailableException;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.Map;
+
+/**
+ * Keycloak indisponible (bulkhead plein ou disjoncteur ouvert) et aucune donnée en cache pour répondre :
+ * 503 avec Retry-After plutôt qu'un 500 ou un thread bloqué.
+ */
+@RestControllerAdvice
+public class KeycloakUnavailableHandler {
+
+    @ExceptionHandler(KeycloakUnavailableException.class)
+    public ResponseEntity<Map<String, Object>> keycloakUnavailable(KeycloakUnavailableException e) {
+        long retryAfterSeconds = Math.max(1, (e.getRetryAfter().toMillis() + 999) / 1000);
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                .body(Map.of("error", "Keycloak indisponible", "details", e.getMessage()));
+    }
+}
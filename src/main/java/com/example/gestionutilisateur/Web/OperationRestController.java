@@ -0,0 +1,49 @@
+package com.example.gestionutilisateur.Web;
+
+import com.example.gestionutilisateur.Entities.OperationKeycloak;
+import com.example.gestionutilisateur.Service.WriteBehindService;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Suivi des écritures Keycloak en mode asynchrone ({@code keycloak.write-mode=async}).
+ */
+@RestController
+@RequestMapping("/api/operations")
+@CrossOrigin(origins = "*")
+public class OperationRestController {
+
+    private final WriteBehindService writeBehindService;
+
+    public OperationRestController(WriteBehindService writeBehindService) {
+        this.writeBehindService = writeBehindService;
+    }
+
+    // 🔹 Réponse 202 des endpoints d'écriture en mode asynchrone
+    static ResponseEntity<?> accepted(OperationKeycloak op) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(Map.of(
+                "message", "Modification enregistrée, application à Keycloak en cours",
+                "operationId", op.getId(),
+                "statut", op.getStatut()
+        ));
+    }
+
+    // ✅ État d'une opération
+    @GetMapping("/{id}")
+    public ResponseEntity<OperationKeycloak> getOperation(@PathVariable Long id) {
+        return writeBehindService.getOperation(id)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    // ✅ Dernières opérations d'un utilisateur (keycloakId) ou d'un groupe
+    @GetMapping
+    public List<OperationKeycloak> getOperationsOf(@RequestParam String cibleId,
+                                                   @RequestParam(defaultValue = "20") int limit) {
+        return writeBehindService.getOperationsOf(cibleId, limit);
+    }
+}
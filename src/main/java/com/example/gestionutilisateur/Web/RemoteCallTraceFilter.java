@@ -0,0 +1,145 @@
+package com.example.gestionutilisateur.Web;
+
+import com.example.gestionutilisateur.Service.KeycloakGuard;
+import com.example.gestionutilisateur.Service.RemoteCallTrace;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+/**
+ * Trace les appels Keycloak et JPA de chaque requête {@code /api/**} :
+ * en-tête {@code Server-Timing} (keycloak, jpa, total) et log des requêtes lentes avec le détail par opération.
+ * <p>
+ * L'en-tête est posé juste avant l'envoi du corps. Réponse asynchrone ({@code StreamingResponseBody}, comme
+ * {@code /all/stream}) : le filtre se termine dès le démarrage du traitement asynchrone, l'en-tête et le log
+ * des requêtes lentes ne couvrent que la partie synchrone ; les appels faits par le thread qui écrit le flux
+ * ne sont pas tracés.
+ * <p>
+ * Réponses servies depuis un cache (annuaire, arbre des groupes) : {@code Age} (secondes depuis le chargement)
+ * et {@code X-Data-Stale: true} si les données ont plus de {@code api.trace.stale-after-ms}
+ * ou si Keycloak est indisponible (disjoncteur ouvert) et qu'elles ne peuvent pas être rafraîchies.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE + 10)
+public class RemoteCallTraceFilter extends OncePerRequestFilter {
+
+    @Value("${api.trace.server-timing:true}")
+    private boolean serverTiming;
+
+    @Value("${api.trace.slow-request-ms:1000}")
+    private long slowRequestMs;
+
+    @Value("${api.trace.stale-after-ms:600000}")
+    private long staleAfterMs;
+
+    private final KeycloakGuard keycloakGuard;
+
+    public RemoteCallTraceFilter(KeycloakGuard keycloakGuard) {
+        this.keycloakGuard = keycloakGuard;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !request.getRequestURI().startsWith("/api/");
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        RemoteCallTrace trace = RemoteCallTrace.start(request.getMethod() + " " + request.getRequestURI());
+        ServerTimingResponse wrapped = new ServerTimingResponse(response, trace);
+        try {
+            chain.doFilter(request, wrapped);
+        } finally {
+            trace.end();
+            wrapped.writeServerTiming();
+            RemoteCallTrace.Summary summary = trace.summary();
+            if (summary.elapsedMs() >= slowRequestMs) {
+                System.out.printf(Locale.ROOT, "🐢 Requête lente %s -> %d en %.0f ms : %s%n",
+                        summary.name(), response.getStatus(), summary.elapsedMs(), summary.breakdown());
+            }
+        }
+    }
+
+    static String serverTimingHeader(RemoteCallTrace.Summary summary) {
+        StringBuilder header = new StringBuilder();
+        summary.bySystem().forEach((system, stats) -> header
+                .append(system)
+                .append(String.format(Locale.ROOT, ";dur=%.1f", stats.durationMs()))
+                .append(";desc=\"").append(stats.count()).append(" appels\", "));
+        header.append(String.format(Locale.ROOT, "total;dur=%.1f", summary.elapsedMs()));
+        return header.toString();
+    }
+
+    /** Pose {@code Server-Timing} une seule fois, au premier accès au corps ou en fin de requête. */
+    private final class ServerTimingResponse extends HttpServletResponseWrapper {
+
+        private final RemoteCallTrace trace;
+        private boolean written;
+
+        ServerTimingResponse(HttpServletResponse response, RemoteCallTrace trace) {
+            super(response);
+            this.trace = trace;
+        }
+
+        void writeServerTiming() {
+            if (written) return;
+            written = true;
+            if (isCommitted()) return;
+            if (serverTiming) {
+                setHeader("Server-Timing", serverTimingHeader(trace.summary()));
+            }
+            Instant loadedAt = trace.getOldestDataLoadedAt();
+            if (loadedAt != null) {
+                Duration age = Duration.between(loadedAt, Instant.now());
+                boolean stale = age.toMillis() > staleAfterMs || !keycloakGuard.isHealthy();
+                setHeader("Age", String.valueOf(Math.max(0, age.toSeconds())));
+                setHeader("X-Data-Stale", String.valueOf(stale));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            writeServerTiming();
+            return super.getOutputStream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            writeServerTiming();
+            return super.getWriter();
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            writeServerTiming();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int sc, String msg) throws IOException {
+            writeServerTiming();
+            super.sendError(sc, msg);
+        }
+
+        @Override
+        public void sendError(int sc) throws IOException {
+            writeServerTiming();
+            super.sendError(sc);
+        }
+    }
+}
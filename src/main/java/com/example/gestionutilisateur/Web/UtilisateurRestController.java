@@ -2,13 +2,30 @@ package com.example.gestionutilisateur.Web;
 
 import com.example.gestionutilisateur.Entities.Utilisateur;
 import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Service.BulkImportService;
+import com.example.gestionutilisateur.Service.ImportRowReader;
+import com.example.gestionutilisateur.Service.KeycloakUnavailableException;
+import com.example.gestionutilisateur.Service.RegionReassignmentService;
+import com.example.gestionutilisateur.Service.UserDirectory;
+import com.example.gestionutilisateur.Service.UserPageReader;
+import com.example.gestionutilisateur.Service.UserSearchCriteria;
+import com.example.gestionutilisateur.Service.UserSearchPlanner;
+import com.example.gestionutilisateur.Service.UserUpdateService;
+import com.example.gestionutilisateur.Service.WriteBehindService;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.keycloak.representations.idm.UserRepresentation;
-import org.keycloak.representations.idm.GroupRepresentation;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import java.text.Normalizer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -18,26 +35,71 @@ import java.util.stream.Collectors;
 public class UtilisateurRestController {
 
     private final KeycloakService keycloakService;
-
-    public UtilisateurRestController(KeycloakService keycloakService) {
+    private final UserDirectory userDirectory;
+    private final UserPageReader userPageReader;
+    private final UserSearchPlanner userSearchPlanner;
+    private final BulkImportService bulkImportService;
+    private final RegionReassignmentService regionReassignmentService;
+    private final UserUpdateService userUpdateService;
+    private final WriteBehindService writeBehindService;
+    private final ObjectMapper objectMapper;
+
+    public UtilisateurRestController(KeycloakService keycloakService, UserDirectory userDirectory,
+                                     UserPageReader userPageReader, UserSearchPlanner userSearchPlanner,
+                                     BulkImportService bulkImportService,
+                                     RegionReassignmentService regionReassignmentService,
+                                     UserUpdateService userUpdateService, WriteBehindService writeBehindService,
+                                     ObjectMapper objectMapper) {
         this.keycloakService = keycloakService;
+        this.userDirectory = userDirectory;
+        this.userPageReader = userPageReader;
+        this.userSearchPlanner = userSearchPlanner;
+        this.bulkImportService = bulkImportService;
+        this.regionReassignmentService = regionReassignmentService;
+        this.userUpdateService = userUpdateService;
+        this.writeBehindService = writeBehindService;
+        this.objectMapper = objectMapper;
     }
 
-    // 🔹 Normalisation string (recherche insensible accents/casse)
-    private static String norm(String s) {
-        if (s == null) return "";
-        String n = Normalizer.normalize(s, Normalizer.Form.NFD)
-                .replaceAll("\\p{InCombiningDiacriticalMarks}+", "");
-        return n.toLowerCase(Locale.ROOT).trim();
+    // 🔹 Lectures servies par l'annuaire local, ou directement par Keycloak s'il est désactivé / pas encore chargé
+    private List<UserRepresentation> allUsers() {
+        return userDirectory.isReady() ? userDirectory.getAll() : keycloakService.getAllUsers();
     }
 
-    // ✅ Liste brute des utilisateurs (direct Keycloak)
+    // ✅ Liste brute des utilisateurs (paginée si first/max/cursor sont fournis)
     @GetMapping("/all")
-    public ResponseEntity<List<UserRepresentation>> getAllUtilisateurs() {
-        return ResponseEntity.ok(keycloakService.getAllUsers());
+    public ResponseEntity<List<UserRepresentation>> getAllUtilisateurs(
+            @RequestParam(required = false) Integer first,
+            @RequestParam(required = false) Integer max,
+            @RequestParam(required = false) String cursor
+    ) {
+        if (first == null && max == null && cursor == null) {
+            return ResponseEntity.ok(allUsers());
+        }
+
+        try {
+            UserPageReader.UserPage page = userPageReader.readPage(first, max, cursor);
+            ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                    .header("X-First", String.valueOf(page.first()));
+            if (page.nextCursor() != null) {
+                response.header("X-Next-Cursor", page.nextCursor());
+            }
+            return response.body(page.users());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    // ✅ Tous les utilisateurs en flux NDJSON, écrits au fur et à mesure des pages
+    @GetMapping(value = "/all/stream", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> streamUtilisateurs() {
+        StreamingResponseBody body = userPageReader::streamAll;
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType("application/x-ndjson"))
+                .body(body);
     }
 
-    // ✅ Recherche avec filtres (toujours sur Keycloak)
+    // ✅ Recherche avec filtres (annuaire local, sinon requêtes poussées vers Keycloak)
     @GetMapping
     public ResponseEntity<List<UserRepresentation>> searchUtilisateurs(
             @RequestParam(required = false) String nom,
@@ -45,44 +107,32 @@ public class UtilisateurRestController {
             @RequestParam(required = false) String email,
             @RequestParam(required = false) String regionCode
     ) {
-        List<UserRepresentation> result = keycloakService.getAllUsers();
-
-        if (nom != null && !nom.isBlank()) {
-            final String q = norm(nom);
-            result = result.stream()
-                    .filter(u -> {
-                        String fn = norm(u.getFirstName());
-                        String ln = norm(u.getLastName());
-                        String un = norm(u.getUsername());
-                        String full = (fn + " " + ln).trim();
-                        return fn.contains(q) || ln.contains(q) || un.contains(q) || full.contains(q);
-                    })
-                    .collect(Collectors.toList());
+        UserSearchCriteria criteria = new UserSearchCriteria(nom, username, email, regionCode);
+        if (!userDirectory.isReady()) {
+            return ResponseEntity.ok(userSearchPlanner.search(criteria));
         }
 
-        if (username != null && !username.isBlank()) {
-            final String q = norm(username);
-            result = result.stream()
-                    .filter(u -> norm(u.getUsername()).contains(q))
-                    .collect(Collectors.toList());
-        }
+        List<UserRepresentation> result = userDirectory.findCandidates(criteria).stream()
+                .filter(criteria::matchesText)
+                .filter(u -> criteria.matchesRegion(userDirectory.getGroupsOf(u.getId())))
+                .collect(Collectors.toList());
+        return ResponseEntity.ok(result);
+    }
 
-        if (email != null && !email.isBlank()) {
-            final String q = norm(email);
-            result = result.stream()
-                    .filter(u -> norm(u.getEmail()).contains(q))
-                    .collect(Collectors.toList());
+    // ✅ Suggestions pour la saisie semi-automatique (classées, tolérantes aux fautes)
+    @GetMapping("/suggest")
+    public ResponseEntity<List<UserRepresentation>> suggestUtilisateurs(
+            @RequestParam String q,
+            @RequestParam(defaultValue = "10") int limit
+    ) {
+        if (q.isBlank()) {
+            return ResponseEntity.ok(List.of());
         }
-
-        if (regionCode != null && !regionCode.isBlank()) {
-            final String q = norm(regionCode);
-            result = result.stream()
-                    .filter(u -> keycloakService.getUserGroups(u.getId()).stream()
-                            .anyMatch(g -> norm(g.getName()).equals(q)))
-                    .collect(Collectors.toList());
+        if (userDirectory.isReady()) {
+            return ResponseEntity.ok(userDirectory.suggest(q, limit));
         }
-
-        return ResponseEntity.ok(result);
+        List<UserRepresentation> result = userSearchPlanner.search(new UserSearchCriteria(q, null, null, null));
+        return ResponseEntity.ok(result.subList(0, Math.min(result.size(), Math.max(1, limit))));
     }
 
     // ✅ Créer utilisateur (dans Keycloak)
@@ -92,18 +142,52 @@ public class UtilisateurRestController {
             String id = keycloakService.createUserInKeycloak(utilisateur);
             return ResponseEntity.status(HttpStatus.CREATED)
                     .body(Map.of("message", "Utilisateur créé avec succès", "id", id));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
 
+    // ✅ Import en masse (CSV avec en-tête ou NDJSON) : tâche de fond suivie via GET .../import/{jobId},
+    //    rapport ligne par ligne immédiat pour une simple validation (dryRun)
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<?> importUtilisateurs(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            @RequestParam(defaultValue = "false") boolean dryRun,
+            InputStream body
+    ) {
+        try {
+            Reader reader = new InputStreamReader(body, StandardCharsets.UTF_8);
+            List<ImportRowReader.ImportRow> rows = contentType.startsWith("text/csv")
+                    ? ImportRowReader.readCsv(reader)
+                    : ImportRowReader.readNdjson(reader, objectMapper);
+            if (dryRun) return ResponseEntity.ok(bulkImportService.validateUsers(rows));
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(bulkImportService.startImport(rows));
+        } catch (IllegalArgumentException | IOException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/import/{jobId}")
+    public ResponseEntity<BulkImportService.ImportJob> getImport(@PathVariable String jobId) {
+        return bulkImportService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
     // ✅ Mise à jour utilisateur
     @PutMapping("/{id}")
     public ResponseEntity<?> updateUtilisateur(@PathVariable String id, @RequestBody Utilisateur utilisateur) {
         try {
             utilisateur.setKeycloakId(id); // on injecte l'id dans l'objet
-            keycloakService.updateUserInKeycloak(utilisateur);
-            return ResponseEntity.ok(Map.of("message", "Utilisateur mis à jour"));
+            if (writeBehindService.isAsync()) {
+                return OperationRestController.accepted(writeBehindService.enqueueUserUpdate(utilisateur));
+            }
+            boolean changed = userUpdateService.update(utilisateur);
+            return ResponseEntity.ok(Map.of("message", "Utilisateur mis à jour", "modifie", changed));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -112,9 +196,10 @@ public class UtilisateurRestController {
     // ✅ Récupération d’un utilisateur
     @GetMapping("/{id}")
     public ResponseEntity<UserRepresentation> getUtilisateurById(@PathVariable String id) {
-        return keycloakService.getAllUsers().stream()
-                .filter(u -> u.getId().equals(id))
-                .findFirst()
+        Optional<UserRepresentation> user = userDirectory.isReady()
+                ? userDirectory.findById(id)
+                : keycloakService.getUserById(id);
+        return user
                 .map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
@@ -126,12 +211,42 @@ public class UtilisateurRestController {
             @RequestParam String regionLabel
     ) {
         try {
+            if (writeBehindService.isAsync()) {
+                return OperationRestController.accepted(writeBehindService.enqueueRegionAssignment(utilisateurId, regionLabel));
+            }
             keycloakService.affecterUtilisateurAuGroupeRegion(utilisateurId, regionLabel);
             return ResponseEntity.ok(Map.of("message", "Utilisateur affecté à la région"));
+        } catch (KeycloakUnavailableException e) {
+            throw e;
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                     .body(Map.of("error", e.getMessage()));
         }
     }
 
-}
\ No newline at end of file
+    // ✅ Réaffectation en masse : {"affectations": [{"utilisateurId", "regionLabel"}]}
+    //    ou {"depuisGroupe": "A", "versGroupe": "B"} ; tâche de fond suivie via GET .../bulk/{jobId}
+    @PostMapping("/affecter-region/bulk")
+    public ResponseEntity<?> affecterRegionEnMasse(@RequestBody BulkReassignmentRequest request) {
+        try {
+            RegionReassignmentService.Job job = request.depuisGroupe() != null
+                    ? regionReassignmentService.startMove(request.depuisGroupe(), request.versGroupe())
+                    : regionReassignmentService.startAssignments(request.affectations());
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(job);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+
+    @GetMapping("/affecter-region/bulk/{jobId}")
+    public ResponseEntity<RegionReassignmentService.Job> getReaffectation(@PathVariable String jobId) {
+        return regionReassignmentService.getJob(jobId)
+                .map(ResponseEntity::ok)
+                .orElse(ResponseEntity.notFound().build());
+    }
+
+    public record BulkReassignmentRequest(List<RegionReassignmentService.Assignment> affectations,
+                                          String depuisGroupe, String versGroupe) {
+    }
+
+}
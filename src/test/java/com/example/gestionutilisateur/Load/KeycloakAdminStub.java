@@ -0,0 +1,477 @@
+package com.example.gestionutilisateur.Load;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Faux serveur Keycloak en mémoire (JDK HttpServer) pour les tests de charge : jeton admin et
+ * endpoints d'administration utilisés par le client Keycloak de l'application
+ * (utilisateurs, groupes, membres, join/leave, événements).
+ * <p>
+ * Taille du realm, latence et taux d'erreur (503) sont réglables, y compris pendant un test.
+ * Le nombre d'appels reçus par route ("GET users/{id}/groups", ...) est compté, ainsi que les demandes
+ * de jeton par grant ("POST token/password", "POST token/refresh_token", ...).
+ */
+public class KeycloakAdminStub implements AutoCloseable {
+
+    private static final String[] FIRST_NAMES = {
+            "Hélène", "Youssef", "Kholoud", "Amine", "Zoé", "François", "Inès", "Mehdi", "Léa", "Noël"
+    };
+    private static final String[] LAST_NAMES = {
+            "Benali", "El Amrani", "Allam", "Lefèvre", "Ouazzani", "Boucher", "Tazi", "Haddad", "Dupré", "Chraïbi"
+    };
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // 🔹 Realm : toutes les lectures / écritures se font sous le verrou "this"
+    private final Map<String, UserRepresentation> users = new LinkedHashMap<>();
+    private final Map<String, GroupRepresentation> groups = new HashMap<>();
+    private final List<GroupRepresentation> roots = new ArrayList<>();
+    private final Map<String, Set<String>> membersByGroup = new HashMap<>();
+    private final Map<String, Set<String>> groupsByUser = new HashMap<>();
+
+    private final Map<String, LongAdder> callsByRoute = new ConcurrentHashMap<>();
+
+    private volatile Duration latency = Duration.ZERO;
+    private volatile Duration jitter = Duration.ZERO;
+    private volatile double errorRate;
+    private volatile Predicate<String> faultyRoutes = route -> true;
+
+    // 🔹 Endpoint token : chaque jeton émis est distinct ("stub-token-1", "stub-token-2", ...)
+    private final AtomicInteger issuedTokens = new AtomicInteger();
+    private volatile int tokenLifetimeSeconds = 3600;
+    private volatile boolean refreshAccepted = true;
+    private volatile int tokenStatus = 200;
+
+    public KeycloakAdminStub() throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        this.executor = Executors.newFixedThreadPool(32, r -> {
+            Thread t = new Thread(r, "keycloak-stub");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    // ------------------------------------------------------------------ configuration
+
+    /** Latence ajoutée à chaque appel d'administration : {@code base} + aléa uniforme dans [0, jitter]. */
+    public KeycloakAdminStub withLatency(Duration base, Duration jitter) {
+        this.latency = base;
+        this.jitter = jitter;
+        return this;
+    }
+
+    /** Proportion d'appels d'administration rejetés en 503, éventuellement limitée à certaines routes. */
+    public KeycloakAdminStub withErrorRate(double errorRate, Predicate<String> routes) {
+        this.errorRate = errorRate;
+        this.faultyRoutes = routes == null ? route -> true : routes;
+        return this;
+    }
+
+    /** Durée de vie des jetons émis et acceptation du grant refresh_token (refusé en 400 sinon). */
+    public KeycloakAdminStub withTokens(Duration lifetime, boolean refreshAccepted) {
+        this.tokenLifetimeSeconds = (int) lifetime.toSeconds();
+        this.refreshAccepted = refreshAccepted;
+        return this;
+    }
+
+    /** Statut renvoyé par l'endpoint token quel que soit le grant (200 = fonctionnement normal). */
+    public KeycloakAdminStub withTokenStatus(int status) {
+        this.tokenStatus = status;
+        return this;
+    }
+
+    /**
+     * Realm synthétique : {@code zones} groupes racines ("zone") contenant chacun {@code regionsPerZone}
+     * régions ("region"), et {@code userCount} utilisateurs répartis sur les régions.
+     */
+    public synchronized KeycloakAdminStub populate(int userCount, int zones, int regionsPerZone) {
+        List<GroupRepresentation> regions = new ArrayList<>();
+        for (int z = 0; z < zones; z++) {
+            GroupRepresentation zone = newGroup("Zone " + (z + 1), "Z" + (z + 1), "zone", null);
+            for (int r = 0; r < regionsPerZone; r++) {
+                String code = "R" + (z + 1) + "-" + (r + 1);
+                regions.add(newGroup("Region " + code, code, "region", zone));
+            }
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < userCount; i++) {
+            String first = FIRST_NAMES[random.nextInt(FIRST_NAMES.length)];
+            String last = LAST_NAMES[random.nextInt(LAST_NAMES.length)];
+            UserRepresentation user = new UserRepresentation();
+            user.setUsername((first.charAt(0) + last.replace(" ", "")).toLowerCase(Locale.ROOT) + i);
+            user.setEmail(user.getUsername() + "@example.com");
+            user.setFirstName(first);
+            user.setLastName(last);
+            user.setEnabled(true);
+            user.setAttributes(new HashMap<>(Map.of("phoneNumber", List.of("06" + (10_000_000 + i)))));
+            addUser(user);
+            if (!regions.isEmpty()) {
+                join(user.getId(), regions.get(random.nextInt(regions.size())).getId());
+            }
+        }
+        return this;
+    }
+
+    public synchronized List<String> userIds() {
+        return new ArrayList<>(users.keySet());
+    }
+
+    public synchronized List<GroupRepresentation> regionGroups() {
+        return groups.values().stream()
+                .filter(g -> "region".equals(attribute(g, "type")))
+                .map(this::brief)
+                .collect(Collectors.toList());
+    }
+
+    public long callCount(String route) {
+        LongAdder count = callsByRoute.get(route);
+        return count == null ? 0 : count.sum();
+    }
+
+    public Map<String, Long> callCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        callsByRoute.forEach((route, count) -> counts.put(route, count.sum()));
+        return counts;
+    }
+
+    public void resetCallCounts() {
+        callsByRoute.clear();
+    }
+
+    // ------------------------------------------------------------------ HTTP
+
+    private record Reply(int status, Object body, String location) {
+        static Reply json(Object body) {
+            return new Reply(200, body, null);
+        }
+
+        static Reply status(int status) {
+            return new Reply(status, null, null);
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+            Reply reply;
+            if (path.endsWith("/protocol/openid-connect/token")) {
+                String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+                reply = token(parseQuery(body).get("grant_type"));
+            } else if (path.startsWith("/admin/realms/")) {
+                String[] segments = path.substring("/admin/realms/".length()).split("/");
+                String route = method + " " + routeOf(segments);
+                callsByRoute.computeIfAbsent(route, k -> new LongAdder()).increment();
+                pause();
+                if (errorRate > 0 && faultyRoutes.test(route) && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                    reply = new Reply(503, Map.of("error", "injected"), null);
+                } else {
+                    String base = "http://" + exchange.getRequestHeaders().getFirst("Host") + path;
+                    byte[] body = exchange.getRequestBody().readAllBytes();
+                    reply = admin(method, Arrays.copyOfRange(segments, 1, segments.length), query, body, base);
+                }
+            } else {
+                reply = Reply.status(404);
+            }
+            write(exchange, reply);
+        } catch (Exception e) {
+            write(exchange, new Reply(500, Map.of("error", String.valueOf(e.getMessage())), null));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private Reply token(String grantType) {
+        callsByRoute.computeIfAbsent("POST token/" + grantType, k -> new LongAdder()).increment();
+        if (tokenStatus != 200) return new Reply(tokenStatus, Map.of("error", "injected"), null);
+        if ("refresh_token".equals(grantType) && !refreshAccepted) {
+            return new Reply(400, Map.of("error", "invalid_grant"), null);
+        }
+        return Reply.json(Map.of(
+                "access_token", "stub-token-" + issuedTokens.incrementAndGet(), "expires_in", tokenLifetimeSeconds,
+                "refresh_token", "stub-refresh", "refresh_expires_in", 3600, "token_type", "Bearer"));
+    }
+
+    /** "users/{id}/groups/{id}" : identifiants remplacés pour compter les appels par route. */
+    private static String routeOf(String[] segments) {
+        StringBuilder route = new StringBuilder();
+        for (int i = 1; i < segments.length; i++) {
+            if (route.length() > 0) route.append('/');
+            route.append(i % 2 == 0 && !"count".equals(segments[i]) ? "{id}" : segments[i]);
+        }
+        return route.toString();
+    }
+
+    private void pause() {
+        long millis = latency.toMillis();
+        if (!jitter.isZero()) {
+            millis += ThreadLocalRandom.current().nextLong(jitter.toMillis() + 1);
+        }
+        if (millis <= 0) return;
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized Reply admin(String method, String[] s, Map<String, String> q, byte[] body, String base)
+            throws IOException {
+        if (s.length == 0) return Reply.status(404);
+        switch (s[0]) {
+            case "users":
+                if (s.length == 1 && method.equals("GET")) return Reply.json(searchUsers(q));
+                if (s.length == 1 && method.equals("POST")) return createUser(body, base);
+                if (s.length == 2 && s[1].equals("count")) return Reply.json(searchUsers(Map.of()).size());
+                UserRepresentation user = s.length > 1 ? users.get(s[1]) : null;
+                if (user == null) return Reply.status(404);
+                if (s.length == 2 && method.equals("GET")) return Reply.json(user);
+                if (s.length == 2 && method.equals("PUT")) return updateUser(user, body);
+                if (s.length == 2 && method.equals("DELETE")) {
+                    removeUser(user.getId());
+                    return Reply.status(204);
+                }
+                if (s.length == 3 && s[2].equals("groups")) {
+                    return Reply.json(groupsByUser.getOrDefault(user.getId(), Set.of()).stream()
+                            .map(groups::get).map(this::brief)
+                            .sorted(Comparator.comparing(GroupRepresentation::getName))
+                            .collect(Collectors.toList()));
+                }
+                if (s.length == 4 && s[2].equals("groups")) {
+                    if (!groups.containsKey(s[3])) return Reply.status(404);
+                    if (method.equals("PUT")) join(user.getId(), s[3]);
+                    else leave(user.getId(), s[3]);
+                    return Reply.status(204);
+                }
+                return Reply.status(404);
+            case "groups":
+                if (s.length == 1 && method.equals("GET")) return Reply.json(roots);
+                if (s.length == 1 && method.equals("POST")) return createGroup(body, null, base);
+                GroupRepresentation group = groups.get(s[1]);
+                if (group == null) return Reply.status(404);
+                if (s.length == 2 && method.equals("GET")) return Reply.json(group);
+                if (s.length == 2 && method.equals("PUT")) {
+                    GroupRepresentation update = mapper.readValue(body, GroupRepresentation.class);
+                    if (update.getName() != null) group.setName(update.getName());
+                    if (update.getAttributes() != null) group.setAttributes(update.getAttributes());
+                    return Reply.status(204);
+                }
+                if (s.length == 3 && s[2].equals("children")) {
+                    return method.equals("POST") ? createGroup(body, group, base) : Reply.json(group.getSubGroups());
+                }
+                if (s.length == 3 && s[2].equals("members")) {
+                    List<UserRepresentation> members = membersByGroup.getOrDefault(group.getId(), Set.of()).stream()
+                            .map(users::get).collect(Collectors.toList());
+                    return Reply.json(page(members, q));
+                }
+                return Reply.status(404);
+            case "admin-events":
+            case "events":
+                return Reply.json(List.of());
+            default:
+                return Reply.status(404);
+        }
+    }
+
+    private List<UserRepresentation> searchUsers(Map<String, String> q) {
+        boolean exact = Boolean.parseBoolean(q.get("exact"));
+        String search = q.get("search") == null ? null : q.get("search").replace("*", "").toLowerCase(Locale.ROOT);
+        List<UserRepresentation> matches = users.values().stream()
+                .filter(u -> search == null || search.isEmpty()
+                        || contains(u.getUsername(), search) || contains(u.getEmail(), search)
+                        || contains(u.getFirstName(), search) || contains(u.getLastName(), search))
+                .filter(u -> matches(u.getUsername(), q.get("username"), exact))
+                .filter(u -> matches(u.getEmail(), q.get("email"), exact))
+                .filter(u -> matches(u.getFirstName(), q.get("firstName"), exact))
+                .filter(u -> matches(u.getLastName(), q.get("lastName"), exact))
+                .collect(Collectors.toList());
+        return page(matches, q);
+    }
+
+    private static boolean contains(String value, String lowerNeedle) {
+        return value != null && value.toLowerCase(Locale.ROOT).contains(lowerNeedle);
+    }
+
+    private static boolean matches(String value, String filter, boolean exact) {
+        if (filter == null) return true;
+        if (value == null) return false;
+        return exact ? value.equalsIgnoreCase(filter) : contains(value, filter.toLowerCase(Locale.ROOT));
+    }
+
+    private static <T> List<T> page(List<T> all, Map<String, String> q) {
+        int first = q.get("first") == null ? 0 : Integer.parseInt(q.get("first"));
+        int max = q.get("max") == null ? 100 : Integer.parseInt(q.get("max"));
+        if (first >= all.size()) return List.of();
+        return new ArrayList<>(all.subList(first, Math.min(all.size(), first + Math.max(0, max))));
+    }
+
+    private Reply createUser(byte[] body, String base) throws IOException {
+        UserRepresentation user = mapper.readValue(body, UserRepresentation.class);
+        boolean duplicate = users.values().stream().anyMatch(u ->
+                u.getUsername().equalsIgnoreCase(user.getUsername())
+                        || (user.getEmail() != null && user.getEmail().equalsIgnoreCase(u.getEmail())));
+        if (duplicate) return new Reply(409, Map.of("errorMessage", "User exists with same username or email"), null);
+
+        List<String> groupPaths = user.getGroups();
+        user.setGroups(null);
+        user.setCredentials(null);
+        addUser(user);
+        if (groupPaths != null) {
+            groupPaths.forEach(path -> groups.values().stream()
+                    .filter(g -> path.equals(g.getPath()))
+                    .findFirst()
+                    .ifPresent(g -> join(user.getId(), g.getId())));
+        }
+        return new Reply(201, null, base + "/" + user.getId());
+    }
+
+    private Reply updateUser(UserRepresentation user, byte[] body) throws IOException {
+        UserRepresentation update = mapper.readValue(body, UserRepresentation.class);
+        if (update.getUsername() != null) user.setUsername(update.getUsername());
+        if (update.getEmail() != null) user.setEmail(update.getEmail());
+        if (update.getFirstName() != null) user.setFirstName(update.getFirstName());
+        if (update.getLastName() != null) user.setLastName(update.getLastName());
+        if (update.isEnabled() != null) user.setEnabled(update.isEnabled());
+        if (update.getAttributes() != null) user.setAttributes(update.getAttributes());
+        return Reply.status(204);
+    }
+
+    private Reply createGroup(byte[] body, GroupRepresentation parent, String base) throws IOException {
+        GroupRepresentation group = mapper.readValue(body, GroupRepresentation.class);
+        List<GroupRepresentation> siblings = parent == null ? roots : parent.getSubGroups();
+        if (siblings.stream().anyMatch(g -> g.getName().equals(group.getName()))) {
+            return Reply.status(409);
+        }
+        GroupRepresentation created = newGroup(group.getName(), null, null, parent);
+        created.setAttributes(group.getAttributes() == null ? new HashMap<>() : group.getAttributes());
+        String location = parent == null ? base + "/" + created.getId()
+                : base.substring(0, base.indexOf("/groups/") + "/groups/".length()) + created.getId();
+        return new Reply(201, null, location);
+    }
+
+    private GroupRepresentation newGroup(String name, String code, String type, GroupRepresentation parent) {
+        GroupRepresentation group = new GroupRepresentation();
+        group.setId(UUID.randomUUID().toString());
+        group.setName(name);
+        group.setPath((parent == null ? "" : parent.getPath()) + "/" + name);
+        Map<String, List<String>> attributes = new HashMap<>();
+        if (code != null) attributes.put("code", List.of(code));
+        if (type != null) attributes.put("type", List.of(type));
+        if (code != null) attributes.put("nom", List.of(name));
+        group.setAttributes(attributes);
+        group.setSubGroups(new ArrayList<>());
+        groups.put(group.getId(), group);
+        if (parent == null) roots.add(group);
+        else parent.getSubGroups().add(group);
+        return group;
+    }
+
+    private void addUser(UserRepresentation user) {
+        user.setId(UUID.randomUUID().toString());
+        user.setCreatedTimestamp(System.currentTimeMillis());
+        if (user.isEnabled() == null) user.setEnabled(true);
+        users.put(user.getId(), user);
+    }
+
+    private void removeUser(String userId) {
+        users.remove(userId);
+        Set<String> memberships = groupsByUser.remove(userId);
+        if (memberships != null) memberships.forEach(g -> membersByGroup.get(g).remove(userId));
+    }
+
+    private void join(String userId, String groupId) {
+        groupsByUser.computeIfAbsent(userId, k -> new LinkedHashSet<>()).add(groupId);
+        membersByGroup.computeIfAbsent(groupId, k -> new LinkedHashSet<>()).add(userId);
+    }
+
+    private void leave(String userId, String groupId) {
+        groupsByUser.getOrDefault(userId, new HashSet<>()).remove(groupId);
+        membersByGroup.getOrDefault(groupId, new HashSet<>()).remove(userId);
+    }
+
+    /** Groupe sans sous-groupes, comme dans users/{id}/groups. */
+    private GroupRepresentation brief(GroupRepresentation group) {
+        GroupRepresentation copy = new GroupRepresentation();
+        copy.setId(group.getId());
+        copy.setName(group.getName());
+        copy.setPath(group.getPath());
+        copy.setAttributes(group.getAttributes());
+        return copy;
+    }
+
+    private static String attribute(GroupRepresentation group, String key) {
+        List<String> values = group.getAttributes() == null ? null : group.getAttributes().get(key);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    private static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return query;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            query.put(key, value);
+        }
+        return query;
+    }
+
+    private void write(HttpExchange exchange, Reply reply) throws IOException {
+        byte[] bytes;
+        synchronized (this) {
+            // Sérialisé sous le verrou : les objets du realm peuvent être modifiés par d'autres appels
+            bytes = reply.body() == null ? new byte[0] : mapper.writeValueAsBytes(reply.body());
+        }
+        if (reply.location() != null) {
+            exchange.getResponseHeaders().add("Location", reply.location());
+        }
+        if (bytes.length > 0) {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+        }
+        exchange.sendResponseHeaders(reply.status(), bytes.length == 0 ? -1 : bytes.length);
+        if (bytes.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.gestionutilisateur.Load;
+
+import com.example.gestionutilisateur.Service.FullSyncService;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test de charge de bout en bout : l'application complète contre {@link KeycloakAdminStub}.
+ * Exclu du build normal, lancé par {@code mvn -Pload-test test}. Réglages (propriétés système) :
+ * load.users, load.latency-ms, load.jitter-ms, load.error-rate, load.concurrency, load.duration-s.
+ * Le rapport est affiché et écrit dans target/load-report.txt.
+ */
+@Tag("load")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class KeycloakLoadTest {
+
+    private static final int USERS = Integer.getInteger("load.users", 20_000);
+    private static final KeycloakAdminStub STUB = startStub();
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private FullSyncService fullSyncService;
+
+    private static KeycloakAdminStub startStub() {
+        try {
+            KeycloakAdminStub stub = new KeycloakAdminStub().populate(USERS, 4, 6);
+            stub.withLatency(Duration.ofMillis(Long.getLong("load.latency-ms", 5)),
+                    Duration.ofMillis(Long.getLong("load.jitter-ms", 5)));
+            double errorRate = Double.parseDouble(System.getProperty("load.error-rate", "0"));
+            return stub.withErrorRate(errorRate, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.auth-server-url", STUB::getUrl);
+        registry.add("keycloak.sync.enabled", () -> "false");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    /** Jetons acceptés sans vérification : le test mesure l'application, pas la validation JWT. */
+    @TestConfiguration
+    static class AcceptAnyToken {
+        @Bean
+        @Primary
+        JwtDecoder jwtDecoder() {
+            return token -> Jwt.withTokenValue(token)
+                    .header("alg", "none")
+                    .subject("load-test")
+                    .claim("preferred_username", "load-test")
+                    .claim("realm_access", Map.of("roles", List.of("ADMIN")))
+                    .issuedAt(Instant.now())
+                    .expiresAt(Instant.now().plusSeconds(3600))
+                    .build();
+        }
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @Test
+    void restEndpointsUnderLoad() throws Exception {
+        awaitInitialSync();
+        List<String> userIds = STUB.userIds();
+        String region = STUB.regionGroups().get(0).getName();
+
+        List<LoadTestHarness.Scenario> scenarios = List.of(
+                get("GET /utilisateurs/all?max=100", () -> "/api/utilisateurs/all?max=100"),
+                get("GET /utilisateurs/{id}", () -> "/api/utilisateurs/" + random(userIds)),
+                get("GET /utilisateurs?nom=", () -> "/api/utilisateurs?nom=benali"),
+                get("GET /utilisateurs?regionCode=", () -> "/api/utilisateurs?regionCode=" + encode(region)),
+                get("GET /utilisateurs/suggest", () -> "/api/utilisateurs/suggest?q=helene"),
+                get("GET /groupes/hierarchy", () -> "/api/groupes/hierarchy"),
+                get("GET /groupes/dropdown?mode=count", () -> "/api/groupes/dropdown?mode=count"),
+                get("GET /groupes/dropdown", () -> "/api/groupes/dropdown"),
+                new LoadTestHarness.Scenario("PUT /utilisateurs/{id}", () -> request("/api/utilisateurs/" + random(userIds))
+                        .header("Content-Type", "application/json")
+                        .PUT(HttpRequest.BodyPublishers.ofString(
+                                "{\"phoneNumber\":\"07" + ThreadLocalRandom.current().nextInt(10_000_000, 99_999_999) + "\"}"))
+                        .build()));
+
+        LoadTestHarness harness = new LoadTestHarness(Integer.getInteger("load.concurrency", 16),
+                Duration.ofSeconds(2), Duration.ofSeconds(Long.getLong("load.duration-s", 10)));
+        List<LoadTestHarness.EndpointStats> results = harness.run(scenarios);
+
+        String report = "Realm : " + USERS + " utilisateurs\n" + LoadTestHarness.format(results)
+                + "\nAppels Keycloak reçus par route : " + STUB.callCounts() + "\n";
+        System.out.println(report);
+        Files.createDirectories(Path.of("target"));
+        Files.writeString(Path.of("target", "load-report.txt"), report);
+
+        double maxErrorRate = Double.parseDouble(System.getProperty("load.error-rate", "0")) > 0 ? 1.0 : 0.01;
+        for (LoadTestHarness.EndpointStats r : results) {
+            assertTrue(r.requests() > 0, r.name() + " : aucune requête aboutie");
+            assertTrue(r.errorRate() <= maxErrorRate, r.name() + " : " + r.errors() + " erreurs");
+        }
+    }
+
+    private void awaitInitialSync() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofMinutes(5).toNanos();
+        while (!fullSyncService.isInitialSyncCompleted()) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Synchronisation initiale non terminée : " + fullSyncService.getProgress());
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private LoadTestHarness.Scenario get(String name, Supplier<String> path) {
+        return new LoadTestHarness.Scenario(name, () -> request(path.get()).GET().build());
+    }
+
+    private HttpRequest.Builder request(String path) {
+        return HttpRequest.newBuilder(URI.create("http://localhost:" + port + path))
+                .timeout(Duration.ofSeconds(30))
+                .header("Authorization", "Bearer load-test");
+    }
+
+    private static String random(List<String> values) {
+        return values.get(ThreadLocalRandom.current().nextInt(values.size()));
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
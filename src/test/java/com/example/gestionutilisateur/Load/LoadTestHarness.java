@@ -0,0 +1,115 @@
+package com.example.gestionutilisateur.Load;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Injecteur de charge minimal : chaque scénario est joué seul pendant une durée fixe par {@code concurrency}
+ * clients en boucle fermée, puis résumé en débit, taux d'erreur et latences p50 / p99 / max.
+ */
+public class LoadTestHarness {
+
+    /** Un endpoint à charger ; {@code request} est appelé à chaque itération (paramètres variables). */
+    public record Scenario(String name, Supplier<HttpRequest> request) {
+    }
+
+    public record EndpointStats(String name, long requests, long errors, double requestsPerSecond,
+                                double p50Ms, double p99Ms, double maxMs) {
+        public double errorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+    }
+
+    private final HttpClient client;
+    private final int concurrency;
+    private final Duration warmup;
+    private final Duration duration;
+
+    public LoadTestHarness(int concurrency, Duration warmup, Duration duration) {
+        this.concurrency = concurrency;
+        this.warmup = warmup;
+        this.duration = duration;
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    public List<EndpointStats> run(List<Scenario> scenarios) throws InterruptedException {
+        List<EndpointStats> results = new ArrayList<>();
+        for (Scenario scenario : scenarios) {
+            drive(scenario, warmup);
+            results.add(drive(scenario, duration));
+        }
+        return results;
+    }
+
+    private EndpointStats drive(Scenario scenario, Duration length) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long start = System.nanoTime();
+        long end = start + length.toNanos();
+        List<Future<long[]>> futures = new ArrayList<>();
+        List<long[]> errorCounts = Collections.synchronizedList(new ArrayList<>());
+
+        for (int i = 0; i < concurrency; i++) {
+            futures.add(workers.submit(() -> {
+                long[] latencies = new long[1024];
+                int count = 0;
+                long errors = 0;
+                while (System.nanoTime() < end) {
+                    long t0 = System.nanoTime();
+                    try {
+                        HttpResponse<Void> response = client.send(scenario.request().get(),
+                                HttpResponse.BodyHandlers.discarding());
+                        if (response.statusCode() >= 400) errors++;
+                    } catch (Exception e) {
+                        errors++;
+                    }
+                    if (count == latencies.length) latencies = Arrays.copyOf(latencies, count * 2);
+                    latencies[count++] = System.nanoTime() - t0;
+                }
+                errorCounts.add(new long[]{errors});
+                return Arrays.copyOf(latencies, count);
+            }));
+        }
+
+        long[] all = new long[0];
+        for (Future<long[]> future : futures) {
+            try {
+                long[] part = future.get();
+                long[] merged = Arrays.copyOf(all, all.length + part.length);
+                System.arraycopy(part, 0, merged, all.length, part.length);
+                all = merged;
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        workers.shutdown();
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+        long errors = errorCounts.stream().mapToLong(e -> e[0]).sum();
+
+        Arrays.sort(all);
+        return new EndpointStats(scenario.name(), all.length, errors, all.length / elapsedSeconds,
+                percentileMs(all, 0.50), percentileMs(all, 0.99), all.length == 0 ? 0 : all[all.length - 1] / 1e6);
+    }
+
+    private static double percentileMs(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+    }
+
+    public static String format(List<EndpointStats> results) {
+        StringBuilder sb = new StringBuilder(String.format(Locale.ROOT,
+                "%-40s %9s %7s %9s %9s %9s %9s%n", "endpoint", "requêtes", "erreurs", "req/s", "p50 ms", "p99 ms", "max ms"));
+        for (EndpointStats r : results) {
+            sb.append(String.format(Locale.ROOT, "%-40s %9d %7d %9.1f %9.1f %9.1f %9.1f%n",
+                    r.name(), r.requests(), r.errors(), r.requestsPerSecond(), r.p50Ms(), r.p99Ms(), r.maxMs()));
+        }
+        return sb.toString();
+    }
+}
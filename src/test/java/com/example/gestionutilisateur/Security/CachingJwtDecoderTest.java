@@ -0,0 +1,62 @@
+package com.example.gestionutilisateur.Security;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.security.oauth2.jwt.BadJwtException;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CachingJwtDecoderTest {
+
+    private final JwtDecoder delegate = mock(JwtDecoder.class);
+    private final CachingJwtDecoder decoder = new CachingJwtDecoder(delegate, 100);
+
+    @Test
+    void acceptedTokenIsVerifiedOnce() {
+        Jwt jwt = jwt("jeton-valide", Instant.now().plusSeconds(300));
+        when(delegate.decode("jeton-valide")).thenReturn(jwt);
+
+        assertSame(jwt, decoder.decode("jeton-valide"));
+        assertSame(jwt, decoder.decode("jeton-valide"));
+
+        verify(delegate, times(1)).decode("jeton-valide");
+    }
+
+    @Test
+    void rejectedTokenIsVerifiedAgain() {
+        when(delegate.decode("jeton-forge")).thenThrow(new BadJwtException("signature invalide"));
+
+        assertThrows(BadJwtException.class, () -> decoder.decode("jeton-forge"));
+        assertThrows(BadJwtException.class, () -> decoder.decode("jeton-forge"));
+
+        verify(delegate, times(2)).decode("jeton-forge");
+    }
+
+    @Test
+    void expiredEntryIsDecodedAgain() throws InterruptedException {
+        when(delegate.decode("jeton-court")).thenReturn(jwt("jeton-court", Instant.now().plusMillis(100)));
+
+        decoder.decode("jeton-court");
+        Thread.sleep(150);
+        decoder.decode("jeton-court");
+
+        verify(delegate, times(2)).decode("jeton-court");
+    }
+
+    private static Jwt jwt(String token, Instant expiresAt) {
+        return Jwt.withTokenValue(token)
+                .header("alg", "RS256")
+                .subject("u1")
+                .issuedAt(expiresAt.minusSeconds(600))
+                .expiresAt(expiresAt)
+                .build();
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.gestionutilisateur.Security;
+
+import com.nimbusds.jose.KeySourceException;
+import com.nimbusds.jose.jwk.JWK;
+import com.nimbusds.jose.jwk.JWKMatcher;
+import com.nimbusds.jose.jwk.JWKSelector;
+import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.RSAKey;
+import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JwkSetCacheTest {
+
+    private HttpServer server;
+    private final AtomicInteger fetches = new AtomicInteger();
+    private volatile JWKSet served;
+    private volatile int status = 200;
+
+    private RSAKey k1;
+    private RSAKey k2;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        k1 = new RSAKeyGenerator(2048).keyID("k1").generate().toPublicJWK();
+        k2 = new RSAKeyGenerator(2048).keyID("k2").generate().toPublicJWK();
+        served = new JWKSet(k1);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/certs", exchange -> {
+            fetches.incrementAndGet();
+            byte[] body = served.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void knownKeyIsServedWithoutFetching() throws Exception {
+        JwkSetCache cache = newCache(0);
+        cache.scheduledRefresh();
+
+        assertEquals(List.of("k1"), keyIds(cache.get(selector("k1"), null)));
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void unknownKeyTriggersAReload() throws Exception {
+        JwkSetCache cache = newCache(0);
+        cache.scheduledRefresh();
+
+        // Rotation des clés dans Keycloak
+        served = new JWKSet(List.of(k1, k2));
+
+        assertEquals(List.of("k2"), keyIds(cache.get(selector("k2"), null)));
+        assertEquals(2, fetches.get());
+    }
+
+    @Test
+    void reloadsForUnknownKeysAreRateLimited() throws Exception {
+        JwkSetCache cache = newCache(60_000);
+        cache.scheduledRefresh();
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(cache.get(selector("inconnue-" + i), null).isEmpty());
+        }
+        assertEquals(1, fetches.get());
+    }
+
+    @Test
+    void loadedKeysSurviveAnUnavailableKeycloak() throws Exception {
+        JwkSetCache cache = newCache(0);
+        cache.scheduledRefresh();
+        status = 503;
+
+        assertTrue(cache.get(selector("k2"), null).isEmpty());
+        assertEquals(List.of("k1"), keyIds(cache.get(selector("k1"), null)));
+    }
+
+    @Test
+    void noKeysAndKeycloakUnavailableFails() {
+        status = 503;
+        JwkSetCache cache = newCache(0);
+
+        assertThrows(KeySourceException.class, () -> cache.get(selector("k1"), null));
+    }
+
+    private JwkSetCache newCache(long minRefetchMs) {
+        return new JwkSetCache("http://127.0.0.1:" + server.getAddress().getPort() + "/certs", 1000, minRefetchMs);
+    }
+
+    private static JWKSelector selector(String keyId) {
+        return new JWKSelector(new JWKMatcher.Builder().keyID(keyId).build());
+    }
+
+    private static List<String> keyIds(List<JWK> keys) {
+        return keys.stream().map(JWK::getKeyID).toList();
+    }
+}
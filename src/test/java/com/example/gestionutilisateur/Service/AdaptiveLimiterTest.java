@@ -0,0 +1,83 @@
+package com.example.gestionutilisateur.Service;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveLimiterTest {
+
+    @Test
+    void decreasesOnFailureAndGrowsBackOnFastCalls() throws Exception {
+        AdaptiveLimiter limiter = new AdaptiveLimiter(4, 1, 8, Duration.ofMillis(50), 0.5);
+        assertTrue(limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO));
+        assertTrue(limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO));
+        limiter.release(0, true);
+        // Deuxième échec dans la même rafale : une seule baisse
+        limiter.release(0, true);
+        assertEquals(2, limiter.getLimit());
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO));
+            limiter.release(Duration.ofMillis(1).toNanos(), false);
+        }
+        assertEquals(3, limiter.getLimit());
+    }
+
+    @Test
+    void backgroundWorkLeavesRoomForInteractiveCalls() throws Exception {
+        AdaptiveLimiter limiter = AdaptiveLimiter.fixed(2);
+        assertTrue(limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO));
+        assertFalse(limiter.acquire(KeycloakPriority.MASSE, Duration.ZERO));
+        assertFalse(limiter.acquire(KeycloakPriority.ARRIERE_PLAN, Duration.ZERO));
+        assertTrue(limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO));
+        assertEquals(0, limiter.getAvailable());
+    }
+
+    @Test
+    void releasedPlaceGoesToInteractiveWaiterFirst() throws Exception {
+        AdaptiveLimiter limiter = AdaptiveLimiter.fixed(2);
+        limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO);
+        limiter.acquire(KeycloakPriority.INTERACTIF, Duration.ZERO);
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            CompletableFuture<Boolean> bulk =
+                    CompletableFuture.supplyAsync(() -> acquire(limiter, KeycloakPriority.MASSE), callers);
+            waitUntilQueued(limiter, KeycloakPriority.MASSE);
+            CompletableFuture<Boolean> interactive =
+                    CompletableFuture.supplyAsync(() -> acquire(limiter, KeycloakPriority.INTERACTIF), callers);
+            waitUntilQueued(limiter, KeycloakPriority.INTERACTIF);
+
+            limiter.release(0, false);
+            assertTrue(interactive.get(5, TimeUnit.SECONDS));
+            assertFalse(bulk.isDone());
+
+            limiter.release(0, false);
+            limiter.release(0, false);
+            assertTrue(bulk.get(5, TimeUnit.SECONDS));
+        } finally {
+            callers.shutdownNow();
+        }
+    }
+
+    private static boolean acquire(AdaptiveLimiter limiter, KeycloakPriority priority) {
+        try {
+            return limiter.acquire(priority, Duration.ofSeconds(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void waitUntilQueued(AdaptiveLimiter limiter, KeycloakPriority priority) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (limiter.getQueued(priority) == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+}
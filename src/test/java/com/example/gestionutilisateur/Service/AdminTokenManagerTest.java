@@ -0,0 +1,156 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Load.KeycloakAdminStub;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.ws.rs.client.ClientRequestContext;
+import jakarta.ws.rs.client.ClientResponseContext;
+import jakarta.ws.rs.core.HttpHeaders;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class AdminTokenManagerTest {
+
+    private static final String PASSWORD_GRANT = "POST token/password";
+    private static final String REFRESH_GRANT = "POST token/refresh_token";
+
+    private KeycloakAdminStub stub;
+    private KeycloakHttpTransport transport;
+    private AdminTokenManager tokens;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        stub = new KeycloakAdminStub();
+        transport = new KeycloakHttpTransport(new SimpleMeterRegistry(), 4, 4, 1000, 2000, 1000, 60_000, 300_000, false);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (tokens != null) tokens.shutdown();
+        transport.close();
+        stub.close();
+    }
+
+    @Test
+    void refreshIsScheduledAheadOfExpiryAndCappedAtHalfTheLifetime() {
+        stub.withTokens(Duration.ofSeconds(60), true);
+
+        tokens = newManager(15_000, 5000);
+        tokens.getAccessToken();
+        assertBetween(Duration.ofSeconds(44), Duration.ofSeconds(46), tokens.nextRefreshDelay());
+        tokens.shutdown();
+
+        // Marge supérieure à la moitié de la durée de vie : renouvellement à mi-vie
+        tokens = newManager(120_000, 5000);
+        tokens.getAccessToken();
+        assertBetween(Duration.ofSeconds(29), Duration.ofSeconds(31), tokens.nextRefreshDelay());
+    }
+
+    @Test
+    void backgroundRenewalUsesTheRefreshToken() throws InterruptedException {
+        stub.withTokens(Duration.ofSeconds(2), true);
+        tokens = newManager(15_000, 5000);
+
+        tokens.getAccessToken();
+        awaitCalls(REFRESH_GRANT, 1);
+
+        assertEquals(1, stub.callCount(PASSWORD_GRANT));
+    }
+
+    @Test
+    void rejectedRefreshFallsBackToCredentials() {
+        // Durée de vie inférieure à la marge d'expiration : chaque appel redemande un jeton
+        stub.withTokens(Duration.ofSeconds(2), false);
+        tokens = newManager(15_000, 5000);
+
+        assertEquals("stub-token-1", tokens.getAccessToken());
+        assertEquals("stub-token-2", tokens.getAccessToken());
+
+        assertEquals(1, stub.callCount(REFRESH_GRANT));
+        assertEquals(2, stub.callCount(PASSWORD_GRANT));
+    }
+
+    @Test
+    void unauthorizedResponseInvalidatesTheTokenUsed() throws Exception {
+        tokens = newManager(15_000, 5000);
+        String first = tokens.getAccessToken();
+
+        tokens.invalidateOnUnauthorized().filter(request("Bearer " + first), response(403));
+        assertEquals(first, tokens.getAccessToken());
+
+        // Jeton déjà remplacé : un 401 tardif ne relance pas de demande
+        tokens.invalidateOnUnauthorized().filter(request("Bearer stub-token-0"), response(401));
+        assertEquals(first, tokens.getAccessToken());
+
+        tokens.invalidateOnUnauthorized().filter(request("Bearer " + first), response(401));
+        assertNotEquals(first, tokens.getAccessToken());
+        assertEquals(2, stub.callCount(PASSWORD_GRANT));
+    }
+
+    @Test
+    void failureIsSharedWithWaitersUntilRetryDelay() throws Exception {
+        stub.withTokenStatus(503);
+        tokens = newManager(15_000, 300);
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) results.add(pool.submit(tokens::getAccessToken));
+            for (Future<String> result : results) {
+                Exception e = assertThrows(Exception.class, () -> result.get(5, TimeUnit.SECONDS));
+                assertTrue(e.getCause().getMessage().contains("HTTP 503"));
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        assertEquals(1, stub.callCount(PASSWORD_GRANT));
+
+        // Passé retry-ms, l'appel suivant redemande un jeton
+        stub.withTokenStatus(200);
+        Thread.sleep(400);
+        assertEquals("stub-token-1", tokens.getAccessToken());
+        assertEquals(2, stub.callCount(PASSWORD_GRANT));
+    }
+
+    private AdminTokenManager newManager(long refreshAheadMs, long retryMs) {
+        return new AdminTokenManager(transport, new SimpleMeterRegistry(), stub.getUrl(), "master", "password",
+                "admin-cli", "", "admin", "admin", refreshAheadMs, retryMs);
+    }
+
+    private void awaitCalls(String route, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (stub.callCount(route) < expected) {
+            if (System.nanoTime() > deadline) fail(route + " : " + stub.callCounts());
+            Thread.sleep(20);
+        }
+    }
+
+    private static void assertBetween(Duration min, Duration max, Duration actual) {
+        assertNotNull(actual);
+        assertTrue(actual.compareTo(min) >= 0 && actual.compareTo(max) <= 0, actual.toString());
+    }
+
+    private static ClientRequestContext request(String authorization) {
+        ClientRequestContext request = mock(ClientRequestContext.class);
+        when(request.getHeaderString(HttpHeaders.AUTHORIZATION)).thenReturn(authorization);
+        return request;
+    }
+
+    private static ClientResponseContext response(int status) {
+        ClientResponseContext response = mock(ClientResponseContext.class);
+        when(response.getStatus()).thenReturn(status);
+        return response;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Service.ImportRowReader.ImportRow;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.io.StringReader;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ImportRowReaderTest {
+
+    @Test
+    void quotedCellsKeepSeparatorsAndEscapedQuotes() throws Exception {
+        List<ImportRow> rows = ImportRowReader.readCsv(new StringReader(
+                "username,email,address,lastName\n"
+                        + "jdupont,j.dupont@example.com,\"12, rue de la Paix\",\"Dupont dit \"\"Jo\"\"\"\n"));
+
+        assertEquals(1, rows.size());
+        ImportRow row = rows.get(0);
+        assertNull(row.error());
+        assertEquals("12, rue de la Paix", row.address());
+        assertEquals("Dupont dit \"Jo\"", row.lastName());
+        assertEquals(2, row.line());
+    }
+
+    @Test
+    void semicolonSeparatorAndExcelBomAreDetected() throws Exception {
+        List<ImportRow> rows = ImportRowReader.readCsv(new StringReader(
+                "\uFEFFUsername;Email;Region\njdupont;j.dupont@example.com;\"Nord; Est\"\n"));
+
+        assertEquals("jdupont", rows.get(0).username());
+        assertEquals("Nord; Est", rows.get(0).region());
+    }
+
+    @Test
+    void unclosedQuoteFailsOnlyItsLine() throws Exception {
+        List<ImportRow> rows = ImportRowReader.readCsv(new StringReader("""
+                username,email
+                "jdupont,j.dupont@example.com
+                amartin,a.martin@example.com
+                """));
+
+        assertEquals(2, rows.size());
+        assertEquals("Guillemet non fermé", rows.get(0).error());
+        assertEquals("amartin", rows.get(1).username());
+        assertEquals(3, rows.get(1).line());
+    }
+
+    @Test
+    void missingCellsAndUnknownColumns() throws Exception {
+        List<ImportRow> rows = ImportRowReader.readCsv(new StringReader("""
+                username,email,firstName,lastName,commentaire
+                jdupont,j.dupont@example.com
+                amartin,,  ,Martin,ignoré
+                """));
+
+        assertNull(rows.get(0).firstName());
+        assertNull(rows.get(0).lastName());
+        // Cellules vides ou blanches = valeur absente
+        assertNull(rows.get(1).email());
+        assertNull(rows.get(1).firstName());
+        assertEquals("Martin", rows.get(1).lastName());
+    }
+
+    @Test
+    void headerWithoutRequiredColumnsIsRejected() {
+        assertThrows(IllegalArgumentException.class,
+                () -> ImportRowReader.readCsv(new StringReader("nom,prenom\nDupont,Jean\n")));
+    }
+
+    @Test
+    void duplicateRowsAreReportedWithoutCreation() throws Exception {
+        List<ImportRow> rows = ImportRowReader.readCsv(new StringReader("""
+                username,email,firstName,lastName
+                jdupont,j.dupont@example.com,Jean,Dupont
+                JDupont,autre@example.com,Jean,Dupont
+                jmartin,J.Dupont@example.com,Jean,Martin
+                amartin,a.martin@example.com,Anne,Martin
+                """));
+
+        KeycloakService keycloakService = mock(KeycloakService.class);
+        when(keycloakService.buildNewUserRepresentation(any())).thenAnswer(call -> new UserRepresentation());
+        BulkImportService importService = new BulkImportService(keycloakService, mock(UserDirectory.class), 2, 1000, 1000);
+        try {
+            BulkImportService.ImportReport report = importService.validateUsers(rows);
+
+            List<BulkImportService.RowStatus> statuses = report.lignes().stream().map(BulkImportService.RowResult::statut).toList();
+            assertEquals(List.of(BulkImportService.RowStatus.VALIDE, BulkImportService.RowStatus.DOUBLON,
+                    BulkImportService.RowStatus.DOUBLON, BulkImportService.RowStatus.VALIDE), statuses);
+            assertEquals(3, report.lignes().get(1).ligne());
+            verify(keycloakService, never()).createPreparedUser(any());
+        } finally {
+            importService.shutdown();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.SyncCheckpoint;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Repository.SyncCheckpointRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IncrementalSyncServiceTest {
+
+    private static final long OVERLAP_MS = 2000;
+
+    private final KeycloakService keycloakService = mock(KeycloakService.class);
+    private final UserDirectory userDirectory = mock(UserDirectory.class);
+    private final FullSyncService fullSyncService = mock(FullSyncService.class);
+    private final SyncCheckpointRepository checkpoints = mock(SyncCheckpointRepository.class);
+    private final StubEventSource events = new StubEventSource();
+    private final Map<String, SyncCheckpoint> stored = new HashMap<>();
+
+    private IncrementalSyncService sync;
+
+    @BeforeEach
+    void setUp() {
+        when(checkpoints.findById(anyString())).thenAnswer(call -> Optional.ofNullable(stored.get(call.<String>getArgument(0))));
+        when(checkpoints.save(any(SyncCheckpoint.class))).thenAnswer(call -> {
+            SyncCheckpoint c = call.getArgument(0);
+            stored.put(c.getName(), c);
+            return c;
+        });
+        when(keycloakService.getUserWithGroups(anyString())).thenAnswer(call -> {
+            UserRepresentation user = new UserRepresentation();
+            user.setId(call.getArgument(0));
+            return Optional.of(new UserWithGroups(user, List.of()));
+        });
+
+        sync = new IncrementalSyncService(keycloakService, userDirectory, fullSyncService, events, checkpoints,
+                new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(sync, "maxEventsPerPoll", 100);
+        ReflectionTestUtils.setField(sync, "maxCheckpointAgeHours", 168L);
+        ReflectionTestUtils.setField(sync, "overlapMs", OVERLAP_MS);
+        ReflectionTestUtils.setField(sync, "clockSkewMs", 60_000L);
+        ReflectionTestUtils.setField(sync, "membersPageSize", 500);
+    }
+
+    @Test
+    void checkpointAdvancesToTheNewestEventTime() {
+        long start = Instant.now().toEpochMilli() - 60_000;
+        saveCheckpoint(start);
+        events.publish(upsert(start + 100, "u1"));
+        events.publish(upsert(start + 500, "u2"));
+
+        sync.poll();
+
+        assertEquals(start + 500, checkpoint());
+        verify(keycloakService).getUserWithGroups("u1");
+        verify(keycloakService).getUserWithGroups("u2");
+
+        // Aucun nouvel événement : le point de reprise ne suit pas l'horloge locale
+        sync.poll();
+        assertEquals(start + 500, checkpoint());
+    }
+
+    @Test
+    void lateEventInsideTheOverlapIsNotLost() {
+        long start = Instant.now().toEpochMilli() - 60_000;
+        saveCheckpoint(start);
+        events.publish(upsert(start + 1000, "u1"));
+        sync.poll();
+
+        // Horodaté avant le point de reprise mais publié après le passage précédent
+        events.publish(upsert(start + 1000 - OVERLAP_MS / 2, "u2"));
+        sync.poll();
+
+        verify(keycloakService).getUserWithGroups("u2");
+        assertEquals(start + 1000, checkpoint());
+    }
+
+    @Test
+    void duplicatedEventsAreAppliedOnce() {
+        long start = Instant.now().toEpochMilli() - 60_000;
+        saveCheckpoint(start);
+        KeycloakChangeEvent event = upsert(start + 100, "u1");
+        events.publish(event);
+        events.publish(event);
+
+        sync.poll();
+        sync.poll();
+
+        verify(keycloakService, times(1)).getUserWithGroups("u1");
+        verify(keycloakService, times(1)).syncUserToLocalDatabase(any(), any());
+    }
+
+    @Test
+    void expiredCheckpointFallsBackToFullSync() {
+        saveCheckpoint(Instant.now().minus(Duration.ofHours(169)).toEpochMilli());
+        events.publish(upsert(Instant.now().toEpochMilli(), "u1"));
+
+        sync.poll();
+
+        verify(fullSyncService).run();
+        verify(keycloakService, never()).getUserWithGroups(anyString());
+    }
+
+    @Test
+    void missingCheckpointWithoutFullSyncFallsBackToFullSync() {
+        sync.poll();
+
+        verify(fullSyncService).run();
+        assertEquals(1, stored.size());
+    }
+
+    @Test
+    void overflowingBatchFallsBackToFullSync() {
+        ReflectionTestUtils.setField(sync, "maxEventsPerPoll", 1);
+        long start = Instant.now().toEpochMilli() - 60_000;
+        saveCheckpoint(start);
+        events.publish(upsert(start + 100, "u1"));
+        events.publish(upsert(start + 200, "u2"));
+
+        sync.poll();
+
+        verify(fullSyncService).run();
+        verify(keycloakService, never()).getUserWithGroups(anyString());
+    }
+
+    private static KeycloakChangeEvent upsert(long time, String userId) {
+        return new KeycloakChangeEvent(time, KeycloakChangeEvent.Type.USER_UPSERT, userId, "users/" + userId);
+    }
+
+    private void saveCheckpoint(long lastEventTime) {
+        SyncCheckpoint c = new SyncCheckpoint();
+        c.setName(IncrementalSyncService.CHECKPOINT_NAME);
+        c.setLastEventTime(lastEventTime);
+        stored.put(c.getName(), c);
+    }
+
+    private long checkpoint() {
+        return stored.get(IncrementalSyncService.CHECKPOINT_NAME).getLastEventTime();
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.gestionutilisateur.Service;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeycloakGuardTest {
+
+    @Test
+    void opensAfterFailuresThenClosesOnSuccessfulProbe() throws Exception {
+        KeycloakGuard guard = new KeycloakGuard(4, 0, 4, 4, 0.5, 10_000, 50);
+
+        for (int i = 0; i < 4; i++) {
+            guard.release(guard.acquire("users.list"), i % 2 == 0);
+        }
+        assertEquals(KeycloakGuard.State.OUVERT, guard.getState());
+        KeycloakUnavailableException rejected =
+                assertThrows(KeycloakUnavailableException.class, () -> guard.acquire("users.list"));
+        assertTrue(rejected.getRetryAfter().toMillis() <= 50);
+
+        Thread.sleep(60);
+        KeycloakGuard.Permit probe = guard.acquire("users.list");
+        assertTrue(probe.probe());
+        // Un seul appel d'essai à la fois
+        assertThrows(KeycloakUnavailableException.class, () -> guard.acquire("users.list"));
+        guard.release(probe, false);
+        assertEquals(KeycloakGuard.State.FERME, guard.getState());
+    }
+
+    @Test
+    void failedProbeReopens() throws Exception {
+        KeycloakGuard guard = new KeycloakGuard(4, 0, 2, 2, 0.5, 10_000, 20);
+        guard.release(guard.acquire("groups.tree"), true);
+        guard.release(guard.acquire("groups.tree"), true);
+        assertEquals(KeycloakGuard.State.OUVERT, guard.getState());
+
+        Thread.sleep(30);
+        guard.release(guard.acquire("groups.tree"), true);
+        assertEquals(KeycloakGuard.State.OUVERT, guard.getState());
+    }
+
+    @Test
+    void bulkheadRejectsBeyondMaxConcurrentCalls() {
+        KeycloakGuard guard = new KeycloakGuard(2, 10, 20, 10, 0.5, 10_000, 10_000);
+        KeycloakGuard.Permit first = guard.acquire("users.get");
+        KeycloakGuard.Permit second = guard.acquire("users.get");
+        assertThrows(KeycloakUnavailableException.class, () -> guard.acquire("users.get"));
+
+        guard.release(first, false);
+        guard.release(guard.acquire("users.get"), false);
+        guard.release(second, false);
+        assertEquals(2, guard.getAvailablePermits());
+        assertTrue(guard.isHealthy());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.gestionutilisateur.Service;
+
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Budget d'appels distants pour les tests : mesure les appels Keycloak/JPA faits par une action
+ * et échoue si elle dépasse un nombre fixe, ou si ce nombre grandit avec la taille des données (N+1).
+ *
+ * <pre>
+ * RemoteCallTrace.Summary s = RemoteCallBudget.measure(() -> service.getGroupDropdownEntries());
+ * RemoteCallBudget.assertAtMost(s, RemoteCallTrace.KEYCLOAK, 2);
+ * RemoteCallBudget.assertScaling(n -> RemoteCallBudget.measure(() -> scenario(n)), RemoteCallTrace.KEYCLOAK, 10, 1000, 0, 2);
+ * </pre>
+ */
+public final class RemoteCallBudget {
+
+    private RemoteCallBudget() {
+    }
+
+    public static RemoteCallTrace.Summary measure(Runnable action) {
+        RemoteCallTrace trace = RemoteCallTrace.start("test");
+        try {
+            action.run();
+        } finally {
+            trace.end();
+        }
+        return trace.summary();
+    }
+
+    public static void assertAtMost(RemoteCallTrace.Summary summary, String system, long max) {
+        long count = summary.count(system);
+        assertTrue(count <= max, () -> "Budget dépassé : " + count + " appels " + system
+                + " (max " + max + ") — " + summary.breakdown());
+    }
+
+    /**
+     * Vérifie que le nombre d'appels pour {@code large} éléments reste sous {@code fixed + perItem × large}
+     * et ne dépasse pas celui pour {@code small} éléments de plus de {@code perItem × (large - small)}.
+     * Avec {@code perItem = 0}, le nombre d'appels doit être indépendant de la taille.
+     */
+    public static void assertScaling(IntFunction<RemoteCallTrace.Summary> scenario, String system,
+                                     int small, int large, double perItem, long fixed) {
+        RemoteCallTrace.Summary atSmall = scenario.apply(small);
+        RemoteCallTrace.Summary atLarge = scenario.apply(large);
+        assertAtMost(atLarge, system, fixed + (long) Math.floor(perItem * large));
+        long growth = atLarge.count(system) - atSmall.count(system);
+        long allowed = (long) Math.floor(perItem * (large - small));
+        assertTrue(growth <= allowed, () -> "Appels " + system + " en O(N) : " + atSmall.count(system)
+                + " pour " + small + ", " + atLarge.count(system) + " pour " + large
+                + " — " + atLarge.breakdown());
+    }
+}
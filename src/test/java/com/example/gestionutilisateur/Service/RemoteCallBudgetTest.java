@@ -0,0 +1,94 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.keycloak.admin.client.resource.GroupResource;
+import org.keycloak.admin.client.resource.GroupsResource;
+import org.keycloak.admin.client.resource.RealmResource;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RemoteCallBudgetTest {
+
+    private static final int GROUPS = 3;
+    private static final int PAGE_SIZE = 100;
+
+    private final KeycloakCallRecorder calls = new KeycloakCallRecorder(new SimpleMeterRegistry());
+
+    @Test
+    void membershipResolutionCostsOneCallPerMemberPage() {
+        RemoteCallBudget.assertScaling(users -> {
+            RealmResource realm = realmWithMembers(users);
+            return RemoteCallBudget.measure(() ->
+                    new GroupMembershipResolver(PAGE_SIZE, calls).resolve(realm, rootGroups()));
+        }, RemoteCallTrace.KEYCLOAK, 10, 1000, 1.0 / PAGE_SIZE + 0.01, 2 * GROUPS);
+    }
+
+    @Test
+    void fanOutCallsAreCountedInTheCallerTrace() {
+        FanOutExecutor fanOut = new FanOutExecutor(4, Duration.ofSeconds(5), Duration.ofSeconds(5), "test-fanout");
+        try {
+            RemoteCallTrace.Summary summary = RemoteCallBudget.measure(() ->
+                    fanOut.invokeAll(List.of("a", "b", "c", "d", "e"), key -> calls.call("groups.members", () -> key)));
+            assertEquals(5, summary.count(RemoteCallTrace.KEYCLOAK));
+            RemoteCallBudget.assertAtMost(summary, RemoteCallTrace.KEYCLOAK, 5);
+        } finally {
+            fanOut.shutdown();
+        }
+    }
+
+    @Test
+    void callsOutsideATraceAreNotCounted() {
+        calls.call("users.get", () -> "x");
+        RemoteCallTrace.Summary summary = RemoteCallBudget.measure(() -> { });
+        assertEquals(0, summary.totalCount());
+    }
+
+    private static List<GroupRepresentation> rootGroups() {
+        List<GroupRepresentation> roots = new ArrayList<>();
+        for (int g = 0; g < GROUPS; g++) {
+            GroupRepresentation group = new GroupRepresentation();
+            group.setId("g" + g);
+            group.setName("Groupe " + g);
+            roots.add(group);
+        }
+        return roots;
+    }
+
+    /** Realm simulé : {@code users} utilisateurs répartis sur les groupes, pagination respectée. */
+    private static RealmResource realmWithMembers(int users) {
+        RealmResource realm = mock(RealmResource.class);
+        GroupsResource groups = mock(GroupsResource.class);
+        when(realm.groups()).thenReturn(groups);
+        when(groups.group(anyString())).thenAnswer(call -> {
+            int g = Integer.parseInt(call.<String>getArgument(0).substring(1));
+            List<UserRepresentation> members = IntStream.range(0, users)
+                    .filter(u -> u % GROUPS == g)
+                    .mapToObj(u -> {
+                        UserRepresentation user = new UserRepresentation();
+                        user.setId("u" + u);
+                        return user;
+                    })
+                    .toList();
+            GroupResource group = mock(GroupResource.class);
+            when(group.members(anyInt(), anyInt())).thenAnswer(page -> {
+                int first = page.getArgument(0);
+                int max = page.getArgument(1);
+                return members.subList(Math.min(first, members.size()), Math.min(first + max, members.size()));
+            });
+            return group;
+        });
+        return realm;
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.gestionutilisateur.Service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    private SimpleMeterRegistry registry;
+    private SingleFlight singleFlight;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        singleFlight = new SingleFlight(registry);
+        ReflectionTestUtils.setField(singleFlight, "enabled", true);
+    }
+
+    @Test
+    void concurrentIdenticalReadsShareOneCall() throws Exception {
+        AtomicInteger remoteCalls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(pool.submit(() -> singleFlight.execute("users.all", () -> {
+                    remoteCalls.incrementAndGet();
+                    await(release);
+                    return "realm";
+                })));
+            }
+            // Tous les appelants sont entrés (un leader bloqué, sept followers en attente)
+            while (registry.find("keycloak.singleflight.calls").counters().stream()
+                    .mapToDouble(c -> c.count()).sum() < 8) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("realm", result.get(5, TimeUnit.SECONDS));
+            }
+            assertEquals(1, remoteCalls.get());
+            assertEquals(7, registry.get("keycloak.singleflight.calls").tag("role", "follower").counter().count());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void differentArgumentsAreNotShared() {
+        assertEquals("a", singleFlight.execute("users.get", () -> "a", "id-1"));
+        assertEquals("b", singleFlight.execute("users.get", () -> "b", "id-2"));
+    }
+
+    @Test
+    void followersReceiveTheLeaderException() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> leader = pool.submit(() -> singleFlight.execute("groups.tree", () -> {
+                await(release);
+                throw new IllegalStateException("keycloak indisponible");
+            }));
+            while (registry.find("keycloak.singleflight.calls").tag("role", "leader").counter() == null) {
+                Thread.sleep(5);
+            }
+            Future<?> follower = pool.submit(() -> singleFlight.execute("groups.tree", () -> "jamais appelé"));
+            while (registry.find("keycloak.singleflight.calls").tag("role", "follower").counter() == null) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            ExecutionException e = assertThrows(ExecutionException.class, () -> follower.get(5, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertThrows(ExecutionException.class, () -> leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    void forgetAllStartsANewReadAfterAWrite() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> before = pool.submit(() -> singleFlight.execute("users.get", () -> {
+                await(release);
+                return "avant";
+            }, "id-1"));
+            while (registry.find("keycloak.singleflight.calls").counter() == null) {
+                Thread.sleep(5);
+            }
+            singleFlight.forgetAll();
+            assertEquals("après", singleFlight.execute("users.get", () -> "après", "id-1"));
+            release.countDown();
+            assertEquals("avant", before.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
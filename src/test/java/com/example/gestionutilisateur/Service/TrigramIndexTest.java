@@ -0,0 +1,68 @@
+package com.example.gestionutilisateur.Service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private TrigramIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new TrigramIndex();
+        index.put("1", "Hélène", "Benali", "hbenali", "helene.benali@example.com");
+        index.put("2", "Youssef", "El Amrani", "yelamrani", "youssef@example.com");
+        index.put("3", "Kholoud", "Allam", "kallam", "kholoud@example.com");
+    }
+
+    @Test
+    void candidatesContainingIgnoresAccentsAndCase() {
+        assertEquals(List.of("1"), index.candidatesContaining("HELENE"));
+        assertEquals(List.of("2"), index.candidatesContaining("el amr"));
+    }
+
+    @Test
+    void candidatesContainingReturnsNullForShortQueries() {
+        assertNull(index.candidatesContaining("al"));
+    }
+
+    @Test
+    void searchToleratesTypos() {
+        List<TrigramIndex.Match> matches = index.search("kholod", 5);
+        assertFalse(matches.isEmpty());
+        assertEquals("3", matches.get(0).userId());
+    }
+
+    @Test
+    void searchRanksPrefixMatchesFirst() {
+        index.put("4", "Alain", "Bena", "abena", "alain@example.com");
+        List<TrigramIndex.Match> matches = index.search("ben", 5);
+        assertTrue(matches.size() >= 2);
+        assertTrue(matches.get(0).score() >= matches.get(1).score());
+    }
+
+    @Test
+    void putReplacesAndRemoveDeletes() {
+        index.put("3", "Kholoud", "Amrani", "kamrani", "kholoud@example.com");
+        assertEquals(List.of("2", "3"), index.candidatesContaining("amrani").stream().sorted().toList());
+
+        index.remove("2");
+        assertEquals(List.of("3"), index.candidatesContaining("amrani"));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void compactionKeepsLiveDocuments() {
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 1000; i++) {
+                index.put("u" + i, "Prenom" + round, "Nom" + i, "user" + i, "user" + i + "@example.com");
+            }
+        }
+        assertEquals(1003, index.size());
+        assertEquals(List.of("u42"), index.candidatesContaining("user42@example"));
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.Region;
+import com.example.gestionutilisateur.Entities.Utilisateur;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Load.KeycloakAdminStub;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.GroupRepresentation;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Mises à jour par différence contre {@link KeycloakAdminStub}, annuaire prêt : un attribut modifié coûte un PUT,
+ * une mise à jour sans changement aucun appel, un changement de région une sortie et une entrée.
+ */
+@SpringBootTest
+class UserUpdateCallBudgetTest {
+
+    private static final String PUT_USER = "PUT users/{id}";
+    private static final String JOIN = "PUT users/{id}/groups/{id}";
+    private static final String LEAVE = "DELETE users/{id}/groups/{id}";
+    private static final KeycloakAdminStub STUB = startStub();
+
+    @Autowired
+    private UserUpdateService userUpdateService;
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    @Autowired
+    private KeycloakService keycloakService;
+
+    private static KeycloakAdminStub startStub() {
+        try {
+            return new KeycloakAdminStub().populate(50, 2, 2);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.auth-server-url", STUB::getUrl);
+        registry.add("keycloak.sync.enabled", () -> "false");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void awaitDirectory() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!userDirectory.isReady()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Annuaire non chargé");
+            Thread.sleep(100);
+        }
+        keycloakService.getGroupTree();  // arbre des groupes en cache
+    }
+
+    @Test
+    void phoneEditIsOnePutAndRepeatingItIsFree() {
+        String userId = STUB.userIds().get(0);
+        Utilisateur edit = new Utilisateur();
+        edit.setKeycloakId(userId);
+        edit.setPhoneNumber("0611223344");
+
+        long puts = STUB.callCount(PUT_USER);
+        assertBudget(() -> assertTrue(userUpdateService.update(edit)), 1);
+        assertEquals(puts + 1, STUB.callCount(PUT_USER));
+
+        assertBudget(() -> assertFalse(userUpdateService.update(edit)), 0);
+        assertEquals(puts + 1, STUB.callCount(PUT_USER));
+
+        // Les noms de groupes de l'annuaire ne sont pas renvoyés à Keycloak comme attribut stocké
+        UserRepresentation stored = storedUser(userId);
+        assertEquals(List.of("0611223344"), stored.getAttributes().get("phoneNumber"));
+        assertFalse(stored.getAttributes().containsKey("groups"));
+    }
+
+    @Test
+    void regionChangeLeavesAndJoinsOnce() {
+        String userId = STUB.userIds().get(1);
+        Set<String> currentIds = userDirectory.getGroupsOf(userId).stream()
+                .map(GroupRepresentation::getId).collect(Collectors.toSet());
+        GroupRepresentation target = STUB.regionGroups().stream()
+                .filter(g -> !currentIds.contains(g.getId())).findFirst().orElseThrow();
+
+        long joins = STUB.callCount(JOIN);
+        long leaves = STUB.callCount(LEAVE);
+        assertBudget(() -> assertTrue(userUpdateService.update(inRegion(userId, target.getName()))),
+                2 + currentIds.size());
+
+        assertEquals(joins + 1, STUB.callCount(JOIN));
+        assertEquals(leaves + currentIds.size(), STUB.callCount(LEAVE));
+        assertEquals(List.of(target.getId()),
+                userDirectory.getGroupsOf(userId).stream().map(GroupRepresentation::getId).toList());
+    }
+
+    @Test
+    void unknownRegionIsRejectedWithoutAnyWrite() {
+        String userId = STUB.userIds().get(2);
+        long writes = STUB.callCount(PUT_USER) + STUB.callCount(JOIN) + STUB.callCount(LEAVE);
+
+        assertThrows(RuntimeException.class, () -> userUpdateService.update(inRegion(userId, "Region inconnue")));
+
+        assertEquals(writes, STUB.callCount(PUT_USER) + STUB.callCount(JOIN) + STUB.callCount(LEAVE));
+        assertFalse(userDirectory.getGroupsOf(userId).isEmpty());
+    }
+
+    private static Utilisateur inRegion(String userId, String label) {
+        Region region = new Region();
+        region.setLabel(label);
+        Utilisateur edit = new Utilisateur();
+        edit.setKeycloakId(userId);
+        edit.setRegion(region);
+        return edit;
+    }
+
+    private UserRepresentation storedUser(String userId) {
+        String username = userDirectory.findById(userId).orElseThrow().getUsername();
+        return keycloakService.searchUsers(username, null, 0, 10).stream()
+                .filter(u -> u.getId().equals(userId)).findFirst().orElseThrow();
+    }
+
+    private static void assertBudget(Runnable action, long maxKeycloakCalls) {
+        RemoteCallTrace.Summary summary = RemoteCallBudget.measure(action);
+        RemoteCallBudget.assertAtMost(summary, RemoteCallTrace.KEYCLOAK, maxKeycloakCalls);
+    }
+}
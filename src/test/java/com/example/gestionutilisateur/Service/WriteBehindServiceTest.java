@@ -0,0 +1,157 @@
+package com.example.gestionutilisateur.Service;
+
+import com.example.gestionutilisateur.Entities.OperationKeycloak;
+import com.example.gestionutilisateur.Entities.Utilisateur;
+import com.example.gestionutilisateur.Enums.StatutOperation;
+import com.example.gestionutilisateur.KeycloakService;
+import com.example.gestionutilisateur.Repository.OperationKeycloakRepository;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * File {@code keycloak_outbox} sur H2 : fusion dans la dernière opération en attente, ordre par cible,
+ * refus du disjoncteur sans tentative consommée, reprise des baux expirés. Chaque appel au dépôt est validé.
+ */
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class WriteBehindServiceTest {
+
+    @Autowired
+    private OperationKeycloakRepository repository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    private final KeycloakService keycloakService = mock(KeycloakService.class);
+    private final UserUpdateService userUpdateService = mock(UserUpdateService.class);
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private WriteBehindService outbox;
+
+    @BeforeEach
+    void setUp() {
+        repository.deleteAll();
+        outbox = new WriteBehindService(repository, keycloakService, userUpdateService, objectMapper,
+                new TransactionTemplate(transactionManager));
+        ReflectionTestUtils.setField(outbox, "batchSize", 50);
+        ReflectionTestUtils.setField(outbox, "maxAttempts", 3);
+        ReflectionTestUtils.setField(outbox, "retryBaseMs", 0L);
+        ReflectionTestUtils.setField(outbox, "retryMaxMs", 0L);
+        ReflectionTestUtils.setField(outbox, "unavailableRetryMs", 0L);
+        ReflectionTestUtils.setField(outbox, "leaseMs", 60_000L);
+    }
+
+    @Test
+    void burstOfUpdatesIsMergedIntoOneOperation() throws Exception {
+        OperationKeycloak first = outbox.enqueueUserUpdate(user("u1", "0600000001", "Rue A"));
+        OperationKeycloak second = outbox.enqueueUserUpdate(user("u1", "0600000002", null));
+
+        assertEquals(first.getId(), second.getId());
+        assertEquals(1, repository.count());
+        OperationKeycloak merged = repository.findById(first.getId()).orElseThrow();
+        assertEquals(2, merged.getFusions());
+        JsonNode fields = objectMapper.readTree(merged.getContenu());
+        assertEquals("0600000002", fields.get("phoneNumber").asText());
+        assertEquals("Rue A", fields.get("address").asText());
+    }
+
+    @Test
+    void operationOfAnotherTypeInBetweenIsNotSkipped() {
+        OperationKeycloak update = outbox.enqueueUserUpdate(user("u1", "0600000001", null));
+        OperationKeycloak region = outbox.enqueueRegionAssignment("u1", "Region R1-1");
+        OperationKeycloak laterUpdate = outbox.enqueueUserUpdate(user("u1", "0600000002", null));
+
+        assertNotEquals(update.getId(), laterUpdate.getId());
+        assertTrue(region.getId() < laterUpdate.getId());
+        assertEquals(3, repository.count());
+    }
+
+    @Test
+    void claimedOperationIsNotMergedInto() {
+        OperationKeycloak first = outbox.enqueueUserUpdate(user("u1", "0600000001", null));
+        first.setStatut(StatutOperation.EN_COURS);
+        repository.save(first);
+
+        OperationKeycloak second = outbox.enqueueUserUpdate(user("u1", "0600000002", null));
+
+        assertNotEquals(first.getId(), second.getId());
+    }
+
+    @Test
+    void operationsOfATargetAreAppliedInOrder() {
+        OperationKeycloak update = outbox.enqueueUserUpdate(user("u1", "0600000001", null));
+        OperationKeycloak region = outbox.enqueueRegionAssignment("u1", "Region R1-1");
+        when(userUpdateService.update(any())).thenThrow(new RuntimeException("HTTP 500")).thenReturn(true);
+
+        // La première échoue : la suivante de la même cible attend
+        outbox.drain();
+        verify(keycloakService, never()).affecterUtilisateurAuGroupeRegion(anyString(), anyString());
+        assertEquals(1, status(update).getTentatives());
+
+        outbox.drain();
+        InOrder order = inOrder(userUpdateService, keycloakService);
+        order.verify(userUpdateService, times(2)).update(any());
+        order.verify(keycloakService).affecterUtilisateurAuGroupeRegion("u1", "Region R1-1");
+        assertEquals(StatutOperation.APPLIQUEE, status(update).getStatut());
+        assertEquals(StatutOperation.APPLIQUEE, status(region).getStatut());
+    }
+
+    @Test
+    void unavailableKeycloakDoesNotConsumeAttempts() {
+        OperationKeycloak op = outbox.enqueueUserUpdate(user("u1", "0600000001", null));
+        when(userUpdateService.update(any())).thenThrow(new RuntimeException("Erreur lors de la mise à jour",
+                new KeycloakUnavailableException("Keycloak indisponible (disjoncteur ouvert)", null)));
+
+        for (int i = 0; i < 10; i++) outbox.drain();
+
+        OperationKeycloak after = status(op);
+        assertEquals(StatutOperation.EN_ATTENTE, after.getStatut());
+        assertEquals(0, after.getTentatives());
+    }
+
+    @Test
+    void onlyExpiredClaimsAreRequeued() {
+        OperationKeycloak stale = claimed("u1", Instant.now().minusSeconds(600));
+        OperationKeycloak active = claimed("u2", Instant.now());
+
+        outbox.recoverInterrupted();
+
+        assertEquals(StatutOperation.EN_ATTENTE, status(stale).getStatut());
+        assertEquals(StatutOperation.EN_COURS, status(active).getStatut());
+    }
+
+    private OperationKeycloak claimed(String cibleId, Instant majLe) {
+        OperationKeycloak op = repository.findById(outbox.enqueueRegionAssignment(cibleId, "Region R1-1").getId()).orElseThrow();
+        op.setStatut(StatutOperation.EN_COURS);
+        op.setMajLe(majLe);
+        return repository.save(op);
+    }
+
+    private OperationKeycloak status(OperationKeycloak op) {
+        return repository.findById(op.getId()).orElseThrow();
+    }
+
+    private static Utilisateur user(String keycloakId, String phone, String address) {
+        Utilisateur utilisateur = new Utilisateur();
+        utilisateur.setKeycloakId(keycloakId);
+        utilisateur.setPhoneNumber(phone);
+        utilisateur.setAddress(address);
+        return utilisateur;
+    }
+}
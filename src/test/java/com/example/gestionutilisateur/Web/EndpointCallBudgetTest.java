@@ -0,0 +1,125 @@
+package com.example.gestionutilisateur.Web;
+
+import com.example.gestionutilisateur.Load.KeycloakAdminStub;
+import com.example.gestionutilisateur.Service.RemoteCallBudget;
+import com.example.gestionutilisateur.Service.RemoteCallTrace;
+import com.example.gestionutilisateur.Service.UserDirectory;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.keycloak.representations.idm.UserRepresentation;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Budgets d'appels Keycloak des endpoints de lecture, contre {@link KeycloakAdminStub} : annuaire prêt (aucun appel)
+ * et annuaire indisponible (appels directs). Le realm compte {@code USERS} utilisateurs répartis sur {@code GROUPS}
+ * groupes : un budget fixe très inférieur à {@code USERS} fait échouer le build en cas de N+1.
+ */
+@SpringBootTest
+class EndpointCallBudgetTest {
+
+    private static final int USERS = 500;
+    private static final int ZONES = 2;
+    private static final int REGIONS_PER_ZONE = 3;
+    private static final int GROUPS = ZONES + ZONES * REGIONS_PER_ZONE;
+    private static final KeycloakAdminStub STUB = startStub();
+
+    @Autowired
+    private UtilisateurRestController utilisateurs;
+
+    @Autowired
+    private GroupeRestController groupes;
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    private static KeycloakAdminStub startStub() {
+        try {
+            return new KeycloakAdminStub().populate(USERS, ZONES, REGIONS_PER_ZONE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @DynamicPropertySource
+    static void keycloakProperties(DynamicPropertyRegistry registry) {
+        registry.add("keycloak.auth-server-url", STUB::getUrl);
+        registry.add("keycloak.sync.enabled", () -> "false");
+        registry.add("spring.jpa.show-sql", () -> "false");
+    }
+
+    @AfterAll
+    static void stopStub() {
+        STUB.close();
+    }
+
+    @BeforeEach
+    void awaitDirectory() throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofMinutes(1).toNanos();
+        while (!userDirectory.isReady()) {
+            if (System.nanoTime() > deadline) throw new IllegalStateException("Annuaire non chargé");
+            Thread.sleep(100);
+        }
+    }
+
+    @Test
+    void directoryReadsMakeNoKeycloakCall() {
+        String userId = STUB.userIds().get(0);
+        String region = STUB.regionGroups().get(0).getName();
+        groupes.getGroupesDropdown("full");  // arbre des groupes en cache
+
+        assertBudget(() -> assertNotNull(utilisateurs.getUtilisateurById(userId).getBody()), 0);
+        assertBudget(() -> assertFalse(utilisateurs.searchUtilisateurs(null, null, null, region).getBody().isEmpty()), 0);
+        assertBudget(() -> assertEquals(GROUPS, groupes.getGroupesDropdown("full").getBody().size()), 0);
+        assertBudget(() -> groupes.getGroupesDropdown("count"), 0);
+    }
+
+    @Test
+    void directReadsStayIndependentOfRealmSize() {
+        List<String> userIds = STUB.userIds();
+        String region = STUB.regionGroups().get(0).getName();
+        ReflectionTestUtils.setField(userDirectory, "enabled", false);
+        try {
+            // Premier passage : arbre des groupes et appartenances partagées chargés une fois, par pages
+            assertBudget(() -> utilisateurs.searchUtilisateurs(null, null, null, region), 3 * GROUPS + 4);
+
+            // Utilisateur et ses groupes : deux appels, quel que soit le realm
+            assertBudget(() -> assertNotNull(utilisateurs.getUtilisateurById(userIds.get(1)).getBody()), 2);
+
+            // Région : pages de membres du groupe, groupes des membres lus dans les appartenances en cache
+            assertBudget(() -> {
+                ResponseEntity<List<UserRepresentation>> found = utilisateurs.searchUtilisateurs(null, null, null, region);
+                assertFalse(found.getBody().isEmpty());
+            }, 2);
+
+            // Dropdown : un appel par groupe (fan-out), aucun par utilisateur
+            assertBudget(() -> {
+                List<Map<String, Object>> dropdown = groupes.getGroupesDropdown("full").getBody();
+                assertEquals(GROUPS, dropdown.size());
+            }, GROUPS + 1);
+            assertBudget(() -> groupes.getGroupesDropdown("count"), GROUPS + 1);
+        } finally {
+            ReflectionTestUtils.setField(userDirectory, "enabled", true);
+        }
+    }
+
+    private static void assertBudget(Runnable endpoint, long maxKeycloakCalls) {
+        RemoteCallTrace.Summary summary = RemoteCallBudget.measure(endpoint);
+        RemoteCallBudget.assertAtMost(summary, RemoteCallTrace.KEYCLOAK, maxKeycloakCalls);
+    }
+}